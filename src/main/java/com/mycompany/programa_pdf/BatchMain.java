@@ -0,0 +1,109 @@
+package com.mycompany.programa_pdf;
+
+import com.mycompany.programa_pdf.batch.BatchJob;
+import com.mycompany.programa_pdf.batch.BatchRunner;
+import com.mycompany.programa_pdf.pdf.PdfUpdater;
+import com.mycompany.programa_pdf.pdf.Servicio_Convertir;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Punto de entrada sin interfaz gráfica para procesar lotes desde un manifiesto (ver {@link BatchJob}).
+ *
+ * <pre>
+ * java -cp Programa_PDF.jar com.mycompany.programa_pdf.BatchMain trabajos.tsv [--threads N] [--incremental]
+ * java -jar Programa_PDF.jar --batch trabajos.tsv [--threads N] [--incremental]
+ * </pre>
+ */
+public final class BatchMain {
+
+    private BatchMain() {}
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        System.exit(run(args));
+    }
+
+    /** Devuelve el código de salida: 0 todo ok, 1 algún trabajo falló, 2 error de uso/manifiesto. */
+    static int run(String[] args) {
+        File manifest = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean incremental = PdfUpdater.defaultIncremental();
+
+        for (int i = 0; i < args.length; i++) {
+            String a = args[i];
+            if (a.equals("--threads") && i + 1 < args.length) {
+                try { threads = Integer.parseInt(args[++i]); }
+                catch (NumberFormatException e) { return usage("Número de hilos inválido: " + args[i]); }
+            } else if (a.equals("--incremental")) {
+                // rotate/watermark anexan solo los cambios (ver PdfUpdater)
+                incremental = true;
+            } else if (a.equals("--help") || a.equals("-h")) {
+                return usage(null);
+            } else if (manifest == null) {
+                manifest = new File(a);
+            } else {
+                return usage("Argumento inesperado: " + a);
+            }
+        }
+        if (manifest == null) return usage("Falta el manifiesto.");
+        if (!manifest.isFile()) return usage("No existe el manifiesto: " + manifest.getAbsolutePath());
+
+        List<BatchJob> jobs;
+        try {
+            jobs = readManifest(manifest);
+        } catch (IOException ex) {
+            System.err.println("✖ " + ex.getMessage());
+            return 2;
+        }
+        if (jobs.isEmpty()) {
+            System.err.println("⚠ El manifiesto no contiene trabajos.");
+            return 0;
+        }
+
+        BatchRunner runner = new BatchRunner(new Servicio_Convertir(), threads, incremental);
+        System.out.println("ℹ " + jobs.size() + " trabajo(s) con " + runner.getThreads() + " hilo(s)");
+
+        long t0 = System.nanoTime();
+        List<BatchRunner.Result> results;
+        try {
+            results = runner.runAll(jobs, System.out);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            System.err.println("✖ Interrumpido.");
+            return 1;
+        }
+        long wall = (System.nanoTime() - t0) / 1_000_000L;
+
+        BatchRunner.printReport(results, wall, runner.getThreads(), System.out);
+        return results.stream().allMatch(BatchRunner.Result::ok) ? 0 : 1;
+    }
+
+    static List<BatchJob> readManifest(File manifest) throws IOException {
+        File baseDir = manifest.getAbsoluteFile().getParentFile();
+        List<BatchJob> jobs = new ArrayList<>();
+        try (BufferedReader br = Files.newBufferedReader(manifest.toPath(), StandardCharsets.UTF_8)) {
+            String s;
+            int line = 0;
+            while ((s = br.readLine()) != null) {
+                line++;
+                BatchJob job = BatchJob.parse(line, s, baseDir);
+                if (job != null) jobs.add(job);
+            }
+        }
+        return jobs;
+    }
+
+    private static int usage(String error) {
+        if (error != null) System.err.println("✖ " + error);
+        System.err.println("Uso: BatchMain <manifiesto.tsv> [--threads N] [--incremental]");
+        System.err.println("Acciones (campos separados por TAB): " + String.join(", ", BatchJob.ACTIONS));
+        return 2;
+    }
+}
@@ -385,9 +385,10 @@ public class CardsPanel extends JPanel {
 
         mw.runAsync(() -> {
             try {
-                mw.getSvc().pdfToImagesAsZip(current, outZip, fmt, dpi);
+                mw.getSvc().pdfToImagesAsZip(current, outZip, fmt, dpi,
+                        Runtime.getRuntime().availableProcessors());
                 mw.ok("Imágenes exportadas a: " + outZip.getAbsolutePath());
-                mw.getHistory().add(
+                mw.addHistory(
                         "PDF → Imágenes (ZIP)",
                         List.of(current.getAbsolutePath()),
                         outZip.getAbsolutePath()
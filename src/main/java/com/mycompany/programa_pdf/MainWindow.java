@@ -3,7 +3,11 @@ package com.mycompany.programa_pdf;
 import com.formdev.flatlaf.FlatDarkLaf;
 import com.formdev.flatlaf.FlatLightLaf;
 import com.mycompany.programa_pdf.dialogs.HistoryDialog;
+import com.mycompany.programa_pdf.dialogs.SearchDialog;
+import com.mycompany.programa_pdf.images.ImageThumbCache;
+import com.mycompany.programa_pdf.pdf.SearchIndex;
 import com.mycompany.programa_pdf.pdf.Servicio_Convertir;
+import com.mycompany.programa_pdf.pdf.TextCache;
 import com.mycompany.programa_pdf.state.HistoryStore;
 
 import javax.swing.*;
@@ -11,6 +15,7 @@ import java.awt.*;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.prefs.Preferences;
 
 public class MainWindow extends JFrame {
@@ -100,6 +105,11 @@ public class MainWindow extends JFrame {
         SwingUtilities.invokeLater(() ->
                 setExtendedState(getExtendedState() | JFrame.MAXIMIZED_BOTH)
         );
+
+        // Cargar el índice de búsqueda (diccionarios de los segmentos) sin frenar la ventana
+        Thread warm = new Thread(SearchIndex::shared, "search-index-load");
+        warm.setDaemon(true);
+        warm.start();
     }
 
     // ================================= Menú ================================
@@ -112,6 +122,11 @@ public class MainWindow extends JFrame {
         miHist.addActionListener(e -> new HistoryDialog(this, history).setVisible(true));
         mVer.add(miHist);
 
+        JMenuItem miBuscar = new JMenuItem("Buscar en PDFs…");
+        miBuscar.setAccelerator(KeyStroke.getKeyStroke("control F"));
+        miBuscar.addActionListener(e -> new SearchDialog(this, history).setVisible(true));
+        mVer.add(miBuscar);
+
         JMenu mTema = new JMenu("Tema");
         String saved = Preferences.userRoot().node(PREF_NODE).get(PREF_THEME, "light");
         boolean dark = "dark".equalsIgnoreCase(saved);
@@ -132,6 +147,26 @@ public class MainWindow extends JFrame {
         mTema.add(miClaro); mTema.add(miOscuro);
         mVer.add(mTema);
 
+        // Miniaturas en ~/.programa_pdf/thumbs: reabrir los mismos PDF no vuelve a renderizar
+        JCheckBoxMenuItem miThumbsDisk = new JCheckBoxMenuItem("Guardar miniaturas en disco",
+                ImageThumbCache.isDiskEnabled());
+        miThumbsDisk.addActionListener(e -> ImageThumbCache.setDiskEnabled(miThumbsDisk.isSelected()));
+        JMenuItem miThumbsClear = new JMenuItem("Borrar miniaturas guardadas");
+        miThumbsClear.addActionListener(e -> ImageThumbCache.clearDisk());
+        mVer.addSeparator();
+        mVer.add(miThumbsDisk);
+        mVer.add(miThumbsClear);
+
+        // Texto extraído en ~/.programa_pdf/text: reabrir o exportar el mismo PDF no vuelve a extraer
+        JCheckBoxMenuItem miTextDisk = new JCheckBoxMenuItem("Guardar texto extraído en disco",
+                TextCache.isDiskEnabled());
+        miTextDisk.addActionListener(e -> TextCache.setDiskEnabled(miTextDisk.isSelected()));
+        JMenuItem miTextClear = new JMenuItem("Borrar texto guardado");
+        miTextClear.addActionListener(e -> TextCache.clearDisk());
+        mVer.addSeparator();
+        mVer.add(miTextDisk);
+        mVer.add(miTextClear);
+
         mb.add(mVer);
         return mb;
     }
@@ -257,6 +292,20 @@ public class MainWindow extends JFrame {
     public Servicio_Convertir getSvc() { return svc; }
     public HistoryStore getHistory() { return history; }
 
+    /**
+     * Registra una operación en el historial y encola sus PDF (entradas y salida) en el índice de
+     * búsqueda. El índice se toca fuera del hilo que llama, que suele ser el EDT.
+     */
+    public void addHistory(String action, List<String> inputs, String output) {
+        history.add(action, inputs, output);
+        List<String> paths = new ArrayList<>(inputs);
+        if (output != null) paths.add(output);
+        CompletableFuture.runAsync(() -> {
+            SearchIndex idx = SearchIndex.shared();
+            for (String p : paths) idx.submit(new File(p));
+        });
+    }
+
     public File getSelectedFile() { return selectedFile; }
     public void setSelectedFile(File f) {
         selectedFile = f;
@@ -286,6 +335,10 @@ public class MainWindow extends JFrame {
 
     // ================================= Main =================================
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--batch")) {
+            BatchMain.main(java.util.Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         applySavedTheme();
         SwingUtilities.invokeLater(() -> new MainWindow().setVisible(true));
     }
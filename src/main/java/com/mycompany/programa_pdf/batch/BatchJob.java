@@ -0,0 +1,88 @@
+package com.mycompany.programa_pdf.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Un trabajo del manifiesto de lotes. Formato: una línea por trabajo, campos separados por TAB
+ * (así las rutas pueden contener espacios). Las rutas relativas se resuelven contra la carpeta
+ * del manifiesto. Líneas vacías o que empiezan con '#' se ignoran.
+ *
+ * <pre>
+ * img2pdf    salida.pdf  img1.jpg  [img2.png ...]
+ * merge      salida.pdf  a.pdf  b.pdf  [c.pdf ...]
+ * split      entrada.pdf  salida.pdf  desde  hasta
+ * rotate     entrada.pdf  salida.pdf  grados  [desde  hasta]
+ * watermark  entrada.pdf  salida.pdf  texto  [tamaño=48]
+ * text       entrada.pdf  salida.txt  [hilos=1]
+ * pdf2zip    entrada.pdf  salida.zip  [png|jpg=png]  [dpi=150]  [hilos=1]
+ * office     entrada.docx  salida.pdf
+ * </pre>
+ */
+public record BatchJob(int line, String action, List<String> args, File baseDir) {
+
+    public static final List<String> ACTIONS =
+            List.of("img2pdf", "merge", "split", "rotate", "watermark", "text", "pdf2zip", "office");
+
+    /** Parsea una línea del manifiesto; devuelve null si es comentario o está vacía. */
+    public static BatchJob parse(int lineNo, String raw, File baseDir) throws IOException {
+        if (raw == null) return null;
+        String s = raw.strip();
+        if (s.isEmpty() || s.startsWith("#")) return null;
+
+        List<String> fields = new ArrayList<>();
+        for (String f : s.split("\t")) {
+            String t = f.strip();
+            if (!t.isEmpty()) fields.add(t);
+        }
+        String action = fields.remove(0).toLowerCase(Locale.ROOT);
+        if (!ACTIONS.contains(action)) {
+            throw new IOException("Línea " + lineNo + ": acción desconocida '" + action + "' (usa " + ACTIONS + ")");
+        }
+        int min = switch (action) {
+            case "img2pdf", "text", "pdf2zip", "office" -> 2;
+            case "merge", "rotate", "watermark" -> 3;
+            case "split" -> 4;
+            default -> 0;
+        };
+        if (fields.size() < min) {
+            throw new IOException("Línea " + lineNo + ": faltan argumentos para '" + action + "'");
+        }
+        return new BatchJob(lineNo, action, List.copyOf(fields), baseDir);
+    }
+
+    /** Argumento i como archivo (relativo a la carpeta del manifiesto). */
+    public File file(int i) {
+        File f = new File(args.get(i));
+        return f.isAbsolute() ? f : new File(baseDir, args.get(i));
+    }
+
+    /** Argumentos desde i hasta el final como archivos. */
+    public List<File> files(int from) {
+        List<File> out = new ArrayList<>();
+        for (int i = from; i < args.size(); i++) out.add(file(i));
+        return out;
+    }
+
+    public int intArg(int i, int def) throws IOException {
+        if (i >= args.size()) return def;
+        try { return Integer.parseInt(args.get(i)); }
+        catch (NumberFormatException e) { throw new IOException("Línea " + line + ": número inválido '" + args.get(i) + "'"); }
+    }
+
+    public float floatArg(int i, float def) throws IOException {
+        if (i >= args.size()) return def;
+        try { return Float.parseFloat(args.get(i).replace(',', '.')); }
+        catch (NumberFormatException e) { throw new IOException("Línea " + line + ": número inválido '" + args.get(i) + "'"); }
+    }
+
+    public String strArg(int i, String def) { return (i < args.size()) ? args.get(i) : def; }
+
+    /** Descripción corta para el reporte. */
+    public String describe() {
+        return "#" + line + " " + action + " " + String.join(" ", args);
+    }
+}
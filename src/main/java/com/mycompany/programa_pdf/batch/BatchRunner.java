@@ -0,0 +1,171 @@
+package com.mycompany.programa_pdf.batch;
+
+import com.mycompany.programa_pdf.pdf.PdfUpdater;
+import com.mycompany.programa_pdf.pdf.Servicio_Convertir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ejecuta los trabajos de un manifiesto sobre un pool acotado de hilos
+ * (por defecto, uno por núcleo) usando {@link Servicio_Convertir}.
+ */
+public class BatchRunner {
+
+    /** Resultado de un trabajo: tiempo y bytes leídos/escritos para calcular el rendimiento. */
+    public record Result(BatchJob job, boolean ok, String error, long millis, long bytesIn, long bytesOut) {}
+
+    private final Servicio_Convertir svc;
+    private final int threads;
+    private final boolean incremental;
+
+    public BatchRunner(Servicio_Convertir svc, int threads) {
+        this(svc, threads, PdfUpdater.defaultIncremental());
+    }
+
+    /** @param incremental rotate y watermark guardan solo los cambios (ver {@link PdfUpdater}) */
+    public BatchRunner(Servicio_Convertir svc, int threads, boolean incremental) {
+        this.svc = svc;
+        this.threads = Math.max(1, threads);
+        this.incremental = incremental;
+    }
+
+    public int getThreads() { return threads; }
+
+    /** Ejecuta todos los trabajos y devuelve los resultados en el orden del manifiesto. */
+    public List<Result> runAll(List<BatchJob> jobs, PrintStream progress) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "batch-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        AtomicInteger done = new AtomicInteger();
+        try {
+            List<Future<Result>> futures = new ArrayList<>(jobs.size());
+            for (BatchJob job : jobs) {
+                futures.add(pool.submit(() -> {
+                    Result r = runOne(job);
+                    if (progress != null) {
+                        progress.printf("[%d/%d] %s %s (%d ms)%n", done.incrementAndGet(), jobs.size(),
+                                r.ok() ? "✔" : "✖", job.describe(), r.millis());
+                    }
+                    return r;
+                }));
+            }
+            List<Result> out = new ArrayList<>(jobs.size());
+            for (Future<Result> f : futures) {
+                try { out.add(f.get()); }
+                catch (java.util.concurrent.ExecutionException e) { throw new IllegalStateException(e.getCause()); }
+            }
+            return out;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Ejecuta un trabajo; nunca lanza, los errores quedan en el resultado. */
+    public Result runOne(BatchJob job) {
+        long t0 = System.nanoTime();
+        long in = 0;
+        File out = null;
+        try {
+            switch (job.action()) {
+                case "img2pdf" -> {
+                    List<File> imgs = job.files(1);
+                    in = sizeOf(imgs);
+                    out = svc.imagesToPdf(imgs, job.file(0));
+                }
+                case "merge" -> {
+                    List<File> pdfs = job.files(1);
+                    in = sizeOf(pdfs);
+                    out = svc.mergePdfs(pdfs, job.file(0));
+                }
+                case "split" -> {
+                    in = job.file(0).length();
+                    out = svc.splitRange(job.file(0), job.file(1), job.intArg(2, 1), job.intArg(3, 1));
+                }
+                case "rotate" -> {
+                    in = job.file(0).length();
+                    int deg = job.intArg(2, 90);
+                    out = (job.args().size() >= 5)
+                            ? svc.rotateRange(job.file(0), job.file(1), deg, job.intArg(3, 1), job.intArg(4, 1), incremental)
+                            : svc.rotateAll(job.file(0), job.file(1), deg, incremental);
+                }
+                case "watermark" -> {
+                    in = job.file(0).length();
+                    out = svc.watermarkText(job.file(0), job.file(1), job.strArg(2, ""), job.floatArg(3, 48f),
+                            incremental);
+                }
+                case "text" -> {
+                    in = job.file(0).length();
+                    out = svc.extractTextToFile(job.file(0), job.file(1), job.intArg(2, 1));
+                }
+                case "pdf2zip" -> {
+                    in = job.file(0).length();
+                    out = svc.pdfToImagesAsZip(job.file(0), job.file(1), job.strArg(2, "png"), job.floatArg(3, 150f),
+                            job.intArg(4, 1));
+                }
+                case "office" -> {
+                    in = job.file(0).length();
+                    out = svc.officeToPdf(job.file(0), job.file(1), null);
+                }
+                default -> throw new IOException("Acción no soportada: " + job.action());
+            }
+            long ms = (System.nanoTime() - t0) / 1_000_000L;
+            return new Result(job, true, null, ms, in, out != null ? out.length() : 0);
+        } catch (Exception ex) {
+            long ms = (System.nanoTime() - t0) / 1_000_000L;
+            String msg = ex.getClass().getSimpleName() + (ex.getMessage() == null ? "" : ": " + ex.getMessage());
+            return new Result(job, false, msg, ms, in, 0);
+        }
+    }
+
+    /** Imprime el reporte: tiempo por trabajo y rendimiento total. */
+    public static void printReport(List<Result> results, long wallMillis, int threads, PrintStream ps) {
+        long okCount = results.stream().filter(Result::ok).count();
+        long sumMs = 0, sumIn = 0, sumOut = 0;
+
+        ps.println();
+        ps.println("==================== Reporte de lotes ====================");
+        ps.printf("%-5s %-10s %-4s %10s %12s %12s %10s%n", "Línea", "Acción", "OK", "ms", "Entrada", "Salida", "MB/s");
+        for (Result r : results) {
+            sumMs += r.millis();
+            sumIn += r.bytesIn();
+            sumOut += r.bytesOut();
+            ps.printf("%-5d %-10s %-4s %10d %12s %12s %10.2f%n",
+                    r.job().line(), r.job().action(), r.ok() ? "sí" : "no", r.millis(),
+                    human(r.bytesIn()), human(r.bytesOut()), mbPerSec(r.bytesIn(), r.millis()));
+            if (!r.ok()) ps.println("      ✖ " + r.error());
+        }
+        ps.println("----------------------------------------------------------");
+        ps.printf("Trabajos: %d (ok %d, fallidos %d) con %d hilo(s)%n", results.size(), okCount, results.size() - okCount, threads);
+        ps.printf("Tiempo total: %d ms (suma por trabajo: %d ms, paralelismo efectivo %.2fx)%n",
+                wallMillis, sumMs, wallMillis > 0 ? sumMs / (double) wallMillis : 0.0);
+        ps.printf("Rendimiento: %.2f trabajos/s, %.2f MB/s leídos, %s escritos%n",
+                wallMillis > 0 ? results.size() * 1000.0 / wallMillis : 0.0,
+                mbPerSec(sumIn, wallMillis), human(sumOut));
+    }
+
+    private static long sizeOf(List<File> files) {
+        long s = 0;
+        for (File f : files) s += f.length();
+        return s;
+    }
+
+    private static double mbPerSec(long bytes, long millis) {
+        return millis > 0 ? (bytes / (1024.0 * 1024.0)) / (millis / 1000.0) : 0.0;
+    }
+
+    private static String human(long bytes) {
+        if (bytes < 1024) return bytes + " B";
+        if (bytes < 1024 * 1024) return String.format("%.1f KB", bytes / 1024.0);
+        return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+}
@@ -3,23 +3,27 @@ package com.mycompany.programa_pdf.dialogs;
 import com.mycompany.programa_pdf.MainWindow;
 import com.mycompany.programa_pdf.io.FxFileDialogs;
 import com.mycompany.programa_pdf.pdf.PrintUtils;
+import com.mycompany.programa_pdf.pdf.RenderScheduler;
+import com.mycompany.programa_pdf.pdf.SearchIndex;
+import com.mycompany.programa_pdf.pdf.TextCache;
+import com.mycompany.programa_pdf.pdf.TextExtractor;
 import org.apache.pdfbox.Loader;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.rendering.PDFRenderer;
-import org.apache.pdfbox.text.PDFTextStripper;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
+import javax.swing.text.DefaultCaret;
 import java.awt.*;
 import java.awt.datatransfer.StringSelection;
 import java.awt.event.KeyEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 public class ExtractTextDialog extends JDialog {
 
@@ -29,6 +33,11 @@ public class ExtractTextDialog extends JDialog {
 
     private PDDocument doc;
     private PDFRenderer renderer;
+    private int pageCount;
+
+    // Extracción en curso (se reemplaza al cambiar de modo o de página) y render de la previa
+    private SwingWorker<Void, String> extraction;
+    private RenderScheduler.Ticket imageTicket;
 
     // ================================ UI ===================================
     private final JRadioButton rbAll  = new JRadioButton("Todo el PDF", true);
@@ -37,8 +46,9 @@ public class ExtractTextDialog extends JDialog {
 
     private final JLabel pageImageLbl = new JLabel("", SwingConstants.CENTER);
     private final JTextArea textArea  = new JTextArea();
+    private final JProgressBar progress = new JProgressBar();
 
-    private JButton btnCopy, btnSave, btnPrint, btnClose;
+    private JButton btnCopy, btnSave, btnPrint, btnClose, btnStop;
     private JSplitPane split;
 
     // ============================ Constructor ===============================
@@ -59,10 +69,10 @@ public class ExtractTextDialog extends JDialog {
         doc = Loader.loadPDF(pdfFile);
         renderer = new PDFRenderer(doc);
 
-        int pages = doc.getNumberOfPages();
-        ((SpinnerNumberModel) spPage.getModel()).setMaximum(pages);
+        pageCount = doc.getNumberOfPages();
+        ((SpinnerNumberModel) spPage.getModel()).setMaximum(pageCount);
 
-        buildUI(pages);
+        buildUI(pageCount);
         wireEvents();
         refreshPreview();
 
@@ -99,6 +109,8 @@ public class ExtractTextDialog extends JDialog {
         textArea.setEditable(false);
         textArea.setLineWrap(true);
         textArea.setWrapStyleWord(true);
+        // El texto llega de a páginas: que no salte al final con cada una
+        ((DefaultCaret) textArea.getCaret()).setUpdatePolicy(DefaultCaret.NEVER_UPDATE);
         JScrollPane txtScroll = new JScrollPane(textArea);
 
         split = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, imgScroll, txtScroll);
@@ -121,7 +133,21 @@ public class ExtractTextDialog extends JDialog {
         bottom.add(btnSave);
         bottom.add(btnPrint);
         bottom.add(btnClose);
-        root.add(bottom, BorderLayout.SOUTH);
+
+        // Progreso de la extracción (solo mientras corre)
+        JPanel status = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 8));
+        progress.setStringPainted(true);
+        progress.setPreferredSize(new Dimension(220, progress.getPreferredSize().height));
+        btnStop = new JButton("Detener");
+        btnStop.addActionListener(e -> stopExtraction());
+        status.add(progress);
+        status.add(btnStop);
+        showProgress(false);
+
+        JPanel footer = new JPanel(new BorderLayout());
+        footer.add(status, BorderLayout.WEST);
+        footer.add(bottom, BorderLayout.EAST);
+        root.add(footer, BorderLayout.SOUTH);
 
         // Atajos
         getRootPane().setDefaultButton(btnSave);
@@ -165,41 +191,99 @@ public class ExtractTextDialog extends JDialog {
 
     // ============================ Lógica/Acciones ===========================
     private void refreshPreview() {
-        new SwingWorker<Void, Void>() {
-            String text = "";
-            Image img = null;
-            int pageIdx = currentPageIndex();
-
-            @Override protected Void doInBackground() {
-                try {
-                    PDFTextStripper stripper = new PDFTextStripper();
-                    if (rbAll.isSelected()) {
-                        stripper.setStartPage(1);
-                        stripper.setEndPage(doc.getNumberOfPages());
-                    } else {
-                        int p = pageIdx + 1; // 1-based
-                        stripper.setStartPage(p);
-                        stripper.setEndPage(p);
-                    }
-                    text = stripper.getText(doc);
+        renderPageImage(rbAll.isSelected() ? 0 : currentPageIndex());
+        extractTextAsync();
+    }
+
+    private void renderPageImage(int pageIdx) {
+        if (imageTicket != null) imageTicket.cancel();
+        imageTicket = RenderScheduler.shared().submit(RenderScheduler.Lane.VISIBLE, doc, pageIdx, 1.3f * 72, () -> {
+            synchronized (doc) { return renderer.renderImage(pageIdx, 1.3f); }
+        }, bi -> {
+            pageImageLbl.setIcon(bi != null ? new ImageIcon(bi) : null);
+            pageImageLbl.revalidate();
+            pageImageLbl.repaint();
+        });
+    }
 
-                    int renderIndex = rbAll.isSelected() ? 0 : pageIdx;
-                    BufferedImage bi = renderer.renderImage(renderIndex, 1.3f);
-                    img = bi;
-                } catch (Exception ex) {
-                    text = "[Error al extraer/renderizar: " + ex.getMessage() + "]";
+    /**
+     * Extrae en segundo plano y va agregando el texto de cada página a medida que sale. Las páginas ya
+     * extraídas salen de {@link TextCache}; "Todo el PDF" trabaja sobre una copia propia del
+     * documento para no frenar la vista previa mientras dura.
+     */
+    private void extractTextAsync() {
+        stopExtraction();
+        textArea.setText("");
+        updateButtonsEnabled();
+
+        final boolean all = rbAll.isSelected();
+        final int from = all ? 0 : currentPageIndex();
+        final int to = all ? pageCount - 1 : from;
+        final int total = to - from + 1;
+        progress.setMaximum(total);
+        progress.setValue(0);
+        progress.setString("Página 0 de " + total);
+        showProgress(all);
+
+        extraction = new SwingWorker<>() {
+            private int pagesDone = 0;
+
+            @Override protected Void doInBackground() throws Exception {
+                if (all) {
+                    // De la caché si ya se extrajo; si no, de una copia propia y queda guardado
+                    TextCache.pages(pdfFile, from, to, (i, text) -> publish(text), this::isCancelled);
+                    SearchIndex.shared().submit(pdfFile); // texto ya en caché: indexarlo es barato
+                    return null;
                 }
+                String hash = TextCache.hash(pdfFile);
+                String text = TextCache.page(hash, from);
+                if (text == null) {
+                    StringBuilder sb = new StringBuilder();
+                    synchronized (doc) { TextExtractor.extract(doc, from, to, (i, t) -> sb.append(t), this::isCancelled); }
+                    text = sb.toString();
+                    TextCache.put(hash, from, text);
+                }
+                publish(text);
                 return null;
             }
 
+            @Override protected void process(List<String> chunks) {
+                if (extraction != this || isCancelled()) return;
+                StringBuilder sb = new StringBuilder();
+                for (String c : chunks) sb.append(c);
+                textArea.append(sb.toString());
+                pagesDone += chunks.size();
+                progress.setValue(pagesDone);
+                progress.setString("Página " + pagesDone + " de " + total);
+                updateButtonsEnabled();
+            }
+
             @Override protected void done() {
-                textArea.setText(text);
-                pageImageLbl.setIcon(img != null ? new ImageIcon(img) : null);
+                if (extraction != this) return;
+                if (isCancelled()) {
+                    textArea.append("\n[Extracción detenida]");
+                } else {
+                    try { get(); }
+                    catch (Exception ex) {
+                        Throwable c = (ex.getCause() != null) ? ex.getCause() : ex;
+                        textArea.append("[Error al extraer: " + c.getMessage() + "]");
+                    }
+                }
+                showProgress(false);
                 updateButtonsEnabled();
-                pageImageLbl.revalidate();
-                pageImageLbl.repaint();
             }
-        }.execute();
+        };
+        extraction.execute();
+    }
+
+    /** Detiene la extracción en curso; lo ya extraído queda en pantalla. */
+    private void stopExtraction() {
+        if (extraction != null && !extraction.isDone()) extraction.cancel(false);
+    }
+
+    private void showProgress(boolean on) {
+        progress.setVisible(on);
+        btnStop.setVisible(on);
     }
 
     private void copyToClipboard() {
@@ -242,24 +326,37 @@ public class ExtractTextDialog extends JDialog {
             );
             if (out == null) return;
 
+            if (rbAll.isSelected()) {
+                // Todo el PDF: directo al archivo (de la caché o extrayendo), sin pasar por el JTextArea
+                mw.runAsync(() -> {
+                    try {
+                        mw.getSvc().extractTextToFile(pdfFile, out);
+                        savedTxt(out, "Extraer texto (todo)");
+                    } catch (Exception ex) {
+                        mw.fail(ex);
+                    }
+                });
+                return;
+            }
+
             String t = textArea.getText();
             try (Writer w = new OutputStreamWriter(new java.io.FileOutputStream(out), StandardCharsets.UTF_8)) {
                 w.write(t != null ? t : "");
             }
-
-            mw.ok("Texto guardado en: " + out.getAbsolutePath());
-            String desc = rbAll.isSelected()
-                    ? "Extraer texto (todo)"
-                    : "Extraer texto (pág. " + (currentPageIndex() + 1) + ")";
-            mw.getHistory().add(desc,
-                    java.util.List.of(pdfFile.getAbsolutePath()),
-                    out.getAbsolutePath());
-            mw.openIfWanted(out);
+            savedTxt(out, "Extraer texto (pág. " + (currentPageIndex() + 1) + ")");
         } catch (Exception ex) {
             mw.fail(ex);
         }
     }
 
+    private void savedTxt(File out, String desc) {
+        mw.ok("Texto guardado en: " + out.getAbsolutePath());
+        mw.addHistory(desc,
+                java.util.List.of(pdfFile.getAbsolutePath()),
+                out.getAbsolutePath());
+        mw.openIfWanted(out);
+    }
+
     private int currentPageIndex() {
         int v = (Integer) spPage.getValue();
         return Math.max(1, v) - 1;
@@ -273,6 +370,11 @@ public class ExtractTextDialog extends JDialog {
     }
 
     private void closeDoc() {
-        try { if (doc != null) doc.close(); } catch (Exception ignore) {}
+        stopExtraction();
+        if (doc == null) return;
+        RenderScheduler.shared().cancelAll(doc);
+        synchronized (doc) {
+            try { doc.close(); } catch (Exception ignore) {}
+        }
     }
 }
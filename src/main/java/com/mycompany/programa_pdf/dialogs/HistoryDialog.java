@@ -4,21 +4,37 @@ import com.mycompany.programa_pdf.state.HistoryStore;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.table.AbstractTableModel;
 import java.awt.*;
 import java.awt.datatransfer.StringSelection;
 import java.awt.event.KeyEvent;
 import java.io.File;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * Historial con las entradas más recientes arriba. La tabla pide a {@link HistoryStore} solo las
+ * páginas de filas que se llegan a mostrar, así abrirlo no depende del tamaño del historial.
+ */
 public class HistoryDialog extends JDialog {
 
+    private static final int PAGE = 200;   // filas por lectura
+    private static final int MAX_PAGES = 20;
+
     // ======= Estado =======
     private final HistoryStore history;
+    private int rows;
+    private final Map<Integer, List<HistoryStore.Entry>> pages =
+            new LinkedHashMap<>(MAX_PAGES, 0.75f, true) {
+                @Override protected boolean removeEldestEntry(Map.Entry<Integer, List<HistoryStore.Entry>> e) {
+                    return size() > MAX_PAGES;
+                }
+            };
 
     // ======= UI =======
     private JTable table;
-    private DefaultTableModel model;
+    private HistoryModel model;
     private JButton btnAbrir, btnCarpeta, btnEliminar, btnVaciar, btnCopiar, btnCerrar;
 
     public HistoryDialog(Window owner, HistoryStore history) {
@@ -40,13 +56,9 @@ public class HistoryDialog extends JDialog {
         root.setBorder(new EmptyBorder(10, 10, 10, 10));
         setContentPane(root);
 
-        String[] cols = {"Fecha", "Acción", "Entradas", "Salida"};
-        model = new DefaultTableModel(cols, 0) {
-            @Override public boolean isCellEditable(int r, int c) { return false; }
-        };
+        model = new HistoryModel();
         table = new JTable(model);
         table.setRowHeight(22);
-        table.setAutoCreateRowSorter(true);
         table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
 
         // Columnas un poco más anchas para paths
@@ -86,20 +98,50 @@ public class HistoryDialog extends JDialog {
 
     // =============== Datos ===============
     private void loadData() {
-        model.setRowCount(0);
-        List<HistoryStore.Entry> all = history.loadAll();
-        for (HistoryStore.Entry e : all) {
-            model.addRow(new Object[]{
-                    e.dateIso(),
-                    e.action(),
-                    String.join(" ; ", e.inputs()),
-                    e.output()
-            });
-        }
-        if (model.getRowCount() > 0) table.setRowSelectionInterval(0, 0);
+        pages.clear();
+        rows = history.size();
+        model.fireTableDataChanged();
+        if (rows > 0) table.setRowSelectionInterval(0, 0);
         setButtonsEnabled(table.getSelectedRow() >= 0);
     }
 
+    /** Entrada de la fila {@code row} (0 = la más reciente), leyendo su página si no está. */
+    private HistoryStore.Entry entryAt(int row) {
+        if (row < 0 || row >= rows) return null;
+        int ordinal = rows - 1 - row;
+        int p = ordinal / PAGE;
+        List<HistoryStore.Entry> list = pages.get(p);
+        if (list == null) {
+            list = history.page(p * PAGE, PAGE);
+            pages.put(p, list);
+        }
+        int k = ordinal - p * PAGE;
+        return (k < list.size()) ? list.get(k) : null;
+    }
+
+    private HistoryStore.Entry selectedEntry() {
+        return entryAt(table.getSelectedRow());
+    }
+
+    private final class HistoryModel extends AbstractTableModel {
+        private final String[] cols = {"Fecha", "Acción", "Entradas", "Salida"};
+
+        @Override public int getRowCount() { return rows; }
+        @Override public int getColumnCount() { return cols.length; }
+        @Override public String getColumnName(int c) { return cols[c]; }
+
+        @Override public Object getValueAt(int r, int c) {
+            HistoryStore.Entry e = entryAt(r);
+            if (e == null) return "";
+            return switch (c) {
+                case 0 -> e.dateIso();
+                case 1 -> e.action();
+                case 2 -> String.join(" ; ", e.inputs());
+                default -> e.output();
+            };
+        }
+    }
+
     // =============== Eventos ===============
     private void wireEvents() {
         btnAbrir.addActionListener(e -> abrirSalidaSeleccionada(false));
@@ -137,11 +179,10 @@ public class HistoryDialog extends JDialog {
 
     // =============== Acciones ===============
     private void abrirSalidaSeleccionada(boolean abrirCarpeta) {
-        int rView = table.getSelectedRow();
-        if (rView < 0) return;
-        int r = table.convertRowIndexToModel(rView);
+        HistoryStore.Entry sel = selectedEntry();
+        if (sel == null) return;
 
-        String outPath = asString(model.getValueAt(r, 3));
+        String outPath = sel.output();
         if (outPath.isBlank()) {
             JOptionPane.showMessageDialog(this, "No hay salida asociada.", "Aviso",
                     JOptionPane.INFORMATION_MESSAGE);
@@ -168,9 +209,8 @@ public class HistoryDialog extends JDialog {
     }
 
     private void eliminarSeleccionado() {
-        int rView = table.getSelectedRow();
-        if (rView < 0) return;
-        int r = table.convertRowIndexToModel(rView);
+        HistoryStore.Entry sel = selectedEntry();
+        if (sel == null) return;
 
         int ans = JOptionPane.showConfirmDialog(
                 this,
@@ -180,7 +220,7 @@ public class HistoryDialog extends JDialog {
                 JOptionPane.WARNING_MESSAGE
         );
         if (ans == JOptionPane.YES_OPTION) {
-            history.removeAt(r);
+            history.remove(sel.id());
             loadData();
         }
     }
@@ -200,19 +240,15 @@ public class HistoryDialog extends JDialog {
     }
 
     private void copiarRutas() {
-        int rView = table.getSelectedRow();
-        if (rView < 0) return;
-        int r = table.convertRowIndexToModel(rView);
+        HistoryStore.Entry sel = selectedEntry();
+        if (sel == null) return;
 
-        String entradas = asString(model.getValueAt(r, 2));
-        String salida   = asString(model.getValueAt(r, 3));
-        String text = (entradas.isBlank() ? "" : entradas.replace(" ; ", "\n"))
+        String entradas = String.join("\n", sel.inputs());
+        String salida   = sel.output();
+        String text = (entradas.isBlank() ? "" : entradas)
                     + (salida.isBlank() ? "" : (entradas.isBlank() ? "" : "\n") + salida);
 
         Toolkit.getDefaultToolkit().getSystemClipboard()
                 .setContents(new StringSelection(text), null);
     }
-
-    // =============== Utils ===============
-    private static String asString(Object o) { return o == null ? "" : o.toString(); }
 }
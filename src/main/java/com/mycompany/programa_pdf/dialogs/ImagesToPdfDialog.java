@@ -1,15 +1,14 @@
 package com.mycompany.programa_pdf.dialogs;
 
 import com.mycompany.programa_pdf.MainWindow;
+import com.mycompany.programa_pdf.images.ImageProbe;
+import com.mycompany.programa_pdf.images.ImageThumbCache;
 import com.mycompany.programa_pdf.io.FxFileDialogs;
+import com.mycompany.programa_pdf.ui.AsyncThumbLoader;
+import com.mycompany.programa_pdf.pdf.ImageEmbedder;
 import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.pdmodel.PDPage;
-import org.apache.pdfbox.pdmodel.PDPageContentStream;
-import org.apache.pdfbox.pdmodel.common.PDRectangle;
-import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
 import org.apache.pdfbox.printing.PDFPageable;
 
-import javax.imageio.ImageIO;
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import java.awt.*;
@@ -24,8 +23,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
-import static com.mycompany.programa_pdf.images.ImageUtils.rotate90s;
-import static com.mycompany.programa_pdf.images.ImageUtils.scale;
 import static com.mycompany.programa_pdf.io.FileTypeUtils.isImage;
 
 /** Diálogo: Imágenes → PDF (ordenar, rotar, preview, guardar/imprimir). */
@@ -34,9 +31,8 @@ public class ImagesToPdfDialog extends JDialog {
     private static class ImageEntry {
         final File file;
         int rotation = 0;                // múltiplos de 90
-        BufferedImage thumb, thumbRot;   // caché de miniaturas
         ImageEntry(File f) { file = f; }
-        void rotate(int delta) { rotation = ((rotation + delta) % 360 + 360) % 360; thumbRot = null; }
+        void rotate(int delta) { rotation = ((rotation + delta) % 360 + 360) % 360; }
         @Override public String toString() { return file.getName(); }
     }
 
@@ -271,20 +267,11 @@ public class ImagesToPdfDialog extends JDialog {
         PDDocument out = new PDDocument();
         for (int i = 0; i < model.size(); i++) {
             ImageEntry it = model.get(i);
-            BufferedImage img = ImageIO.read(it.file);
-            if (img == null) continue;
-            if (it.rotation != 0) img = rotate90s(img, it.rotation);
-
-            PDPage page = new PDPage(new PDRectangle(img.getWidth(), img.getHeight()));
-            out.addPage(page);
-
-            var pdImg = LosslessFactory.createFromImage(out, img);
-            float marginX = (float)(img.getWidth() * 0.05);
-            float marginY = (float)(img.getHeight() * 0.05);
-            float w = img.getWidth()  - 2*marginX;
-            float h = img.getHeight() - 2*marginY;
-            try (PDPageContentStream cs = new PDPageContentStream(out, page)) {
-                cs.drawImage(pdImg, marginX, marginY, w, h);
+            if (!it.file.isFile()) continue;
+            try {
+                ImageEmbedder.addImagePage(out, it.file, it.rotation, 0.05f);
+            } catch (Exception ignore) {
+                // Imagen dañada o en un formato sin lector: se salta, el resto del PDF sigue
             }
         }
         return out;
@@ -320,27 +307,14 @@ public class ImagesToPdfDialog extends JDialog {
     }
 
     // ==== Preview / thumbs ====
-    private BufferedImage thumbFor(ImageEntry it) {
-        try {
-            if (it.thumb == null) {
-                BufferedImage img = ImageIO.read(it.file);
-                it.thumb = scale(img, 180, 230);
-                it.thumbRot = null;
-            }
-            if (it.rotation == 0) return it.thumb;
-            if (it.thumbRot == null) it.thumbRot = scale(rotate90s(it.thumb, it.rotation), 180, 230);
-            return it.thumbRot;
-        } catch (Exception ex) {
-            BufferedImage err = new BufferedImage(180, 230, BufferedImage.TYPE_INT_ARGB);
-            Graphics2D g = err.createGraphics();
-            g.setColor(new Color(200,80,80));
-            g.fillRoundRect(0,0,180,230,16,16);
-            g.setColor(Color.WHITE);
-            g.drawString("Error", 70, 120);
-            g.dispose();
-            return err;
-        }
-    }
+    /** Clave de miniatura: la rotación forma parte de la imagen resultante. */
+    private record ThumbKey(File file, int rotation) {}
+
+    private final AsyncThumbLoader<ThumbKey> thumbs = new AsyncThumbLoader<>(
+            k -> ImageThumbCache.key(k.file(), -1, 180, 230, "rot" + k.rotation()),
+            k -> ImageThumbCache.thumbForImage(k.file(), k.rotation(), 180, 230),
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1)),
+            "images-thumbs", 180, 230);
 
     private void refreshBigPreview() {
         int idx = list.getSelectedIndex();
@@ -348,17 +322,11 @@ public class ImagesToPdfDialog extends JDialog {
         ImageEntry it = model.get(idx);
         try {
             double z = zoom.getValue()/100.0;
-            BufferedImage src = ImageIO.read(it.file);
-            if (src == null) throw new Exception("No se pudo leer " + it.file);
-            if (it.rotation != 0) src = rotate90s(src, it.rotation);
-            int w = Math.max(1, (int)Math.round(src.getWidth()*z));
-            int h = Math.max(1, (int)Math.round(src.getHeight()*z));
-            BufferedImage scaled = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
-            Graphics2D g = scaled.createGraphics();
-            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-            g.drawImage(src, 0, 0, w, h, null);
-            g.dispose();
-            bigPreview.setIcon(new ImageIcon(scaled));
+            // Tamaño final desde la cabecera; la imagen se rota y escala en una sola pasada
+            ImageProbe.Info info = ImageProbe.probe(it.file);
+            int w = Math.max(1, (int)Math.round(info.rotatedWidth(it.rotation)*z));
+            int h = Math.max(1, (int)Math.round(info.rotatedHeight(it.rotation)*z));
+            bigPreview.setIcon(new ImageIcon(ImageThumbCache.loadScaled(it.file, it.rotation, w, h)));
         } catch (Exception ex) {
             bigPreview.setIcon(null);
         }
@@ -380,7 +348,7 @@ public class ImagesToPdfDialog extends JDialog {
             setPreferredSize(new Dimension(200, 260));
         }
         @Override public Component getListCellRendererComponent(JList<? extends ImageEntry> list, ImageEntry value, int index, boolean isSelected, boolean cellHasFocus) {
-            pic.setIcon(new ImageIcon(thumbFor(value)));
+            pic.setIcon(thumbs.get(list, new ThumbKey(value.file, value.rotation), index));
             txt.setText("Imagen" + (value.rotation != 0 ? (" (" + value.rotation + "°)") : ""));
             setBackground(isSelected ? list.getSelectionBackground() : list.getBackground());
             setForeground(isSelected ? list.getSelectionForeground() : list.getForeground());
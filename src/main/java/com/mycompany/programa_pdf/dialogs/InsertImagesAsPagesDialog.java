@@ -84,7 +84,7 @@ public class InsertImagesAsPagesDialog extends JDialog {
         list.setFixedCellWidth(200);
         list.setFixedCellHeight(260);
         list.setBorder(new EmptyBorder(6,6,6,6));
-        list.setCellRenderer(new PageThumbRenderer(renderer));
+        list.setCellRenderer(new PageThumbRenderer(pdfFile, renderer));
         list.setDragEnabled(true);
         list.setDropMode(DropMode.INSERT);
         list.setTransferHandler(new PageItemReorderAndFileDropHandler(list, model));
@@ -302,20 +302,14 @@ public class InsertImagesAsPagesDialog extends JDialog {
             double z = zoom.getValue() / 100.0;
             if (it.kind == PageItem.Kind.PDF_PAGE) {
                 float dpi = (float) (110 * z);
-                Image img = renderer.renderImageWithDPI(it.pdfPageIndex, dpi);
+                Image img;
+                synchronized (renderer) { img = renderer.renderImageWithDPI(it.pdfPageIndex, dpi); }
                 bigPreview.setIcon(new ImageIcon(img));
             } else {
-                javax.imageio.ImageIO.setUseCache(false);
-                java.awt.image.BufferedImage src = javax.imageio.ImageIO.read(it.imageFile);
-                if (src == null) throw new Exception("No se pudo leer " + it.imageFile);
-                if (it.rotation != 0) src = com.mycompany.programa_pdf.images.ImageThumbCache.rotate90s(src, it.rotation);
-                int w = Math.max(1, (int) Math.round(src.getWidth() * z));
-                int h = Math.max(1, (int) Math.round(src.getHeight() * z));
-                java.awt.image.BufferedImage scaled = new java.awt.image.BufferedImage(w, h, java.awt.image.BufferedImage.TYPE_INT_ARGB);
-                java.awt.Graphics2D g = scaled.createGraphics();
-                g.setRenderingHint(java.awt.RenderingHints.KEY_INTERPOLATION, java.awt.RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-                g.drawImage(src, 0, 0, w, h, null);
-                g.dispose();
+                var info = com.mycompany.programa_pdf.images.ImageProbe.probe(it.imageFile);
+                int w = Math.max(1, (int) Math.round(info.rotatedWidth(it.rotation) * z));
+                int h = Math.max(1, (int) Math.round(info.rotatedHeight(it.rotation) * z));
+                var scaled = com.mycompany.programa_pdf.images.ImageThumbCache.loadScaled(it.imageFile, it.rotation, w, h);
                 bigPreview.setIcon(new ImageIcon(scaled));
             }
         } catch (Exception ex) {
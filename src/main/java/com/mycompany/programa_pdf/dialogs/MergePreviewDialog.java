@@ -1,12 +1,13 @@
 package com.mycompany.programa_pdf.dialogs;
 
 import com.mycompany.programa_pdf.MainWindow;
+import com.mycompany.programa_pdf.images.ImageThumbCache;
 import com.mycompany.programa_pdf.io.FxFileDialogs;
-import org.apache.pdfbox.Loader;
-import org.apache.pdfbox.multipdf.PDFMergerUtility;
+import com.mycompany.programa_pdf.dialogs.merge.MergeService;
+import com.mycompany.programa_pdf.pdf.DocumentCache;
+import com.mycompany.programa_pdf.pdf.RenderScheduler;
+import com.mycompany.programa_pdf.ui.AsyncThumbLoader;
 import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.rendering.ImageType;
-import org.apache.pdfbox.rendering.PDFRenderer;
 import org.apache.pdfbox.printing.PDFPageable;
 
 import javax.swing.*;
@@ -39,9 +40,12 @@ public class MergePreviewDialog extends JDialog {
     private final JSlider sPage = new JSlider(1, 1, 1);
     private final JLabel lblPageInfo = new JLabel("Página 1/1");
 
-    // Cachés (miniaturas y páginas)
-    private final Map<File, Image> thumbCache = new ConcurrentHashMap<>();
+    // Miniaturas en segundo plano (cada PDF se abre por separado: admite varios hilos) y nº de páginas
+    private final AsyncThumbLoader<File> thumbLoader = new AsyncThumbLoader<>(
+            f -> ImageThumbCache.key(f, 0, 64, 0, "merge"), this::loadThumb, 2, "merge-thumbs", 64, 64);
     private final Map<File, Integer> pagesCache = new ConcurrentHashMap<>();
+    private final Set<File> counting = ConcurrentHashMap.newKeySet();
+    private RenderScheduler.Ticket previewTicket;
 
     public MergePreviewDialog(MainWindow mw, List<File> initialFiles) {
         super(mw, "Unir PDFs (vista previa)", true);
@@ -90,11 +94,13 @@ public class MergePreviewDialog extends JDialog {
         centerBar.add(sPage);
         centerBar.add(lblPageInfo);
 
-        // derecha: guardar / imprimir / cancelar
+        // derecha: vista previa / guardar / imprimir / cancelar
         JPanel rightBtns = new JPanel(new FlowLayout(FlowLayout.RIGHT, 8, 0));
+        JButton btnView = new JButton("Ver unido…");
         JButton btnSave = new JButton("Guardar…");
         JButton btnPrint = new JButton("Imprimir…");
         JButton btnCancel = new JButton("Cancelar");
+        rightBtns.add(btnView);
         rightBtns.add(btnSave);
         rightBtns.add(btnPrint);
         rightBtns.add(btnCancel);
@@ -130,6 +136,7 @@ public class MergePreviewDialog extends JDialog {
         btnRemove.addActionListener(e -> removeSelected());
         btnUp.addActionListener(e -> moveSelected(-1));
         btnDown.addActionListener(e -> moveSelected(+1));
+        btnView.addActionListener(e -> onViewMerged());
         btnSave.addActionListener(e -> onSave());
         btnPrint.addActionListener(e -> onPrint());
         btnCancel.addActionListener(e -> dispose());
@@ -159,7 +166,7 @@ public class MergePreviewDialog extends JDialog {
         int i = list.getSelectedIndex();
         if (i < 0) return;
         File f = model.remove(i);
-        thumbCache.remove(f);
+        thumbLoader.invalidate(f);
         pagesCache.remove(f);
         if (!model.isEmpty()) list.setSelectedIndex(Math.min(i, model.size() - 1));
         else previewLbl.setIcon(null);
@@ -201,7 +208,7 @@ public class MergePreviewDialog extends JDialog {
             try {
                 File res = mw.getSvc().mergePdfs(files, out);
                 mw.ok("PDF unido: " + res.getAbsolutePath());
-                mw.getHistory().add(
+                mw.addHistory(
                         "Unir PDFs (preview)",
                         files.stream().map(File::getAbsolutePath).toList(),
                         res.getAbsolutePath()
@@ -215,6 +222,24 @@ public class MergePreviewDialog extends JDialog {
         });
     }
 
+    /** Abre el resultado en el visor sin guardarlo; las páginas se leen de los originales. */
+    private void onViewMerged() {
+        if (model.size() < 1) return;
+        List<File> files = Collections.list(model.elements());
+        new SwingWorker<PDDocument, Void>() {
+            @Override protected PDDocument doInBackground() throws Exception { return mergeInMemory(files); }
+            @Override protected void done() {
+                try {
+                    // El visor cierra el documento (y con él los orígenes) al cerrarse
+                    PDDocument merged = get();
+                    new PdfPreviewDialog(MergePreviewDialog.this, merged, "Vista previa: PDF unido").setVisible(true);
+                } catch (Exception ex) {
+                    mw.fail(ex);
+                }
+            }
+        }.execute();
+    }
+
     private void onPrint() {
         if (model.size() < 1) {
             JOptionPane.showMessageDialog(this, "No hay PDFs para imprimir.", "Imprimir", JOptionPane.INFORMATION_MESSAGE);
@@ -253,25 +278,19 @@ public class MergePreviewDialog extends JDialog {
     }
 
     private void renderPreviewAsync(File file, int page) {
+        // Al mover el slider rápido solo interesa la última página pedida
+        if (previewTicket != null) previewTicket.cancel();
+        previewTicket = null;
         if (file == null) { previewLbl.setIcon(null); return; }
         int pageIndex = Math.max(0, page - 1);
 
-        new SwingWorker<Image, Void>() {
-            @Override protected Image doInBackground() {
-                try (PDDocument doc = Loader.loadPDF(file)) {
-                    PDFRenderer r = new PDFRenderer(doc);
-                    // 144 dpi para nítido; usamos ImageType.RGB
-                    BufferedImage img = r.renderImageWithDPI(pageIndex, 144, ImageType.RGB);
-                    return img;
-                } catch (Exception ignore) { return null; }
-            }
-            @Override protected void done() {
-                try {
-                    Image img = get();
-                    setPreviewScaled(img);
-                } catch (Exception ignore) { setPreviewScaled(null); }
+        previewTicket = RenderScheduler.shared().submit(RenderScheduler.Lane.VISIBLE, file, pageIndex, 144, () -> {
+            // El PDF queda abierto en DocumentCache: cambiar de página no lo vuelve a parsear
+            try (DocumentCache.Handle doc = DocumentCache.open(file)) {
+                // 144 dpi para nítido
+                return doc.render(pageIndex, 144);
             }
-        }.execute();
+        }, this::setPreviewScaled);
     }
 
     private void setPreviewScaled(Image img) {
@@ -285,6 +304,11 @@ public class MergePreviewDialog extends JDialog {
         previewLbl.setIcon(new ImageIcon(scaled));
     }
 
+    @Override public void dispose() {
+        if (previewTicket != null) previewTicket.cancel();
+        super.dispose();
+    }
+
     /* ==================== Utilidades ==================== */
 
     private static boolean isPdf(File f) {
@@ -315,8 +339,8 @@ public class MergePreviewDialog extends JDialog {
     private int getPageCount(File f) {
         Integer cached = pagesCache.get(f);
         if (cached != null) return cached;
-        try (PDDocument doc = Loader.loadPDF(f)) {
-            int p = doc.getNumberOfPages();
+        try {
+            int p = DocumentCache.pageCount(f);
             pagesCache.put(f, p);
             return p;
         } catch (Exception e) {
@@ -325,32 +349,28 @@ public class MergePreviewDialog extends JDialog {
         }
     }
 
-    private Image getThumb(File f) {
-        Image cached = thumbCache.get(f);
-        if (cached != null) return cached;
-        try (PDDocument doc = Loader.loadPDF(f)) {
-            int pages = doc.getNumberOfPages();
-            pagesCache.put(f, pages);
-            PDFRenderer r = new PDFRenderer(doc);
-            BufferedImage img = r.renderImageWithDPI(0, 96, ImageType.RGB);
-            thumbCache.put(f, img);
-            return img;
-        } catch (Exception e) {
-            return null;
+    /** Miniatura de la primera página; de paso guarda el nº de páginas. Fuera del EDT. */
+    private BufferedImage loadThumb(File f) throws Exception {
+        try (DocumentCache.Handle doc = DocumentCache.open(f)) {
+            pagesCache.put(f, doc.pageCount());
+            BufferedImage img = doc.render(0, 96);
+            int w = 64, h = (int) (img.getHeight() * (64.0 / img.getWidth()));
+            return ImageThumbCache.scale(img, w, Math.max(48, h));
         }
     }
 
-    /** Une en memoria usando PDFBox (para imprimir). */
+    /** La miniatura salió de la caché sin abrir el PDF: contar las páginas aparte. */
+    private void countPagesLater(File f) {
+        if (!counting.add(f)) return;
+        new SwingWorker<Void, Void>() {
+            @Override protected Void doInBackground() { getPageCount(f); return null; }
+            @Override protected void done() { counting.remove(f); list.repaint(); }
+        }.execute();
+    }
+
+    /** Une para imprimir o previsualizar: enlaza las páginas sin copiarlas. */
     private static PDDocument mergeInMemory(List<File> files) throws Exception {
-        // Cargamos y fusionamos con PDFMergerUtility
-        PDFMergerUtility ut = new PDFMergerUtility();
-        PDDocument target = new PDDocument();
-        for (File f : files) {
-            try (PDDocument src = Loader.loadPDF(f)) {
-                ut.appendDocument(target, src);
-            }
-        }
-        return target; // caller cierra
+        return new MergeService().mergeInMemory(files); // caller cierra
     }
 
     /* ============ Renderer de la lista (miniatura + nombre + "N pág.") ============ */
@@ -384,16 +404,13 @@ public class MergePreviewDialog extends JDialog {
         public Component getListCellRendererComponent(JList<? extends File> list, File value, int index, boolean isSelected, boolean cellHasFocus) {
             if (value != null) {
                 name.setText(value.getName());
-                int p = getPageCount(value);
-                sub.setText(p + (p == 1 ? " pág." : " pág."));
-
-                Image t = getThumb(value);
-                if (t != null) {
-                    int w = 64, h = (int) (t.getHeight(null) * (64.0 / t.getWidth(null)));
-                    thumb.setIcon(new ImageIcon(t.getScaledInstance(w, Math.max(48, h), Image.SCALE_SMOOTH)));
-                } else {
-                    thumb.setIcon(null);
+                thumb.setIcon(thumbLoader.get(list, value, index));
+                // El nº de páginas llega junto con la miniatura
+                Integer p = pagesCache.get(value);
+                if (p == null && ImageThumbCache.peek(ImageThumbCache.key(value, 0, 64, 0, "merge")) != null) {
+                    countPagesLater(value);
                 }
+                sub.setText(p == null ? "… pág." : p + " pág.");
             } else {
                 name.setText("");
                 sub.setText("");
@@ -1,6 +1,7 @@
 package com.mycompany.programa_pdf.dialogs;
 
 import com.mycompany.programa_pdf.MainWindow;
+import com.mycompany.programa_pdf.pdf.OfficePool;
 import org.apache.pdfbox.Loader;
 import org.apache.pdfbox.pdmodel.PDDocument;
 
@@ -33,6 +34,7 @@ public class OfficeToPdfPreviewDialog extends JDialog {
 
         setDefaultCloseOperation(DO_NOTHING_ON_CLOSE);
         buildUI();
+        if (!OfficePool.isRunning()) lblMsg.setText("Iniciando LibreOffice y convirtiendo a PDF…");
 
         pack();
         setSize(460, 140);
@@ -1,8 +1,16 @@
 package com.mycompany.programa_pdf.dialogs;
 
+import com.mycompany.programa_pdf.dialogs.preview.ContinuousPageView;
+import com.mycompany.programa_pdf.dialogs.preview.PageTiles;
+import com.mycompany.programa_pdf.images.ImageThumbCache;
+import com.mycompany.programa_pdf.pdf.RenderPool;
+import com.mycompany.programa_pdf.pdf.RenderScheduler;
 import com.mycompany.programa_pdf.io.FxFileDialogs;
+import com.mycompany.programa_pdf.ui.AsyncThumbLoader;
 import org.apache.pdfbox.Loader;
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.printing.PDFPageable;
 import org.apache.pdfbox.rendering.ImageType;
 import org.apache.pdfbox.rendering.PDFRenderer;
@@ -16,6 +24,7 @@ import javax.swing.border.EmptyBorder;
 import java.awt.*;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
+import java.awt.event.MouseWheelEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.awt.image.BufferedImage;
@@ -23,8 +32,12 @@ import java.awt.print.PrinterJob;
 import java.io.File;
 import java.io.IOException;
 import java.lang.ref.SoftReference;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 public class PdfPreviewDialog extends JDialog {
 
@@ -38,6 +51,7 @@ public class PdfPreviewDialog extends JDialog {
     // ====== UI ======
     private final JList<Integer> thumbs = new JList<>();
     private final PreviewCanvas canvas = new PreviewCanvas();
+    private final ContinuousPageView continuous;
     private JScrollPane spCanvas;
     private final JComboBox<String> cmbZoom;
     private final JSlider sZoom;
@@ -47,6 +61,7 @@ public class PdfPreviewDialog extends JDialog {
     private float zoom = 1.0f; // 1.0 = 100 %
     private final int screenDpi = Toolkit.getDefaultToolkit().getScreenResolution(); // ~96 en Windows
     private boolean updatingUi = false;
+    private boolean continuousMode = false;
 
     private enum ZoomMode { MANUAL, FIT_PAGE, FIT_WIDTH }
     private ZoomMode zoomMode = ZoomMode.FIT_PAGE;
@@ -56,12 +71,20 @@ public class PdfPreviewDialog extends JDialog {
 
     private static final int MARGIN = 20;
 
-    // Cache de thumbnails
-    private final Map<Integer, ImageIcon> thumbCache = new LinkedHashMap<>(64, 0.75f, true) {
-        @Override protected boolean removeEldestEntry(Map.Entry<Integer, ImageIcon> e) {
-            return size() > 80;
-        }
-    };
+    // Lado mayor de la imagen de página completa; más allá se usan mosaicos
+    private static final int MAX_FULL_PX = 2400;
+
+    // Copias del PDF para renderizar en paralelo (null si no viene de un .pdf en disco)
+    private final RenderPool pool;
+    // Páginas cambiadas en memoria (rotadas): las copias no las ven, se renderizan desde doc.
+    // Se marca en el EDT y se lee desde los hilos de render
+    private final AtomicIntegerArray edited;
+    // Miniaturas en segundo plano (con copias, en paralelo dejando una libre para la vista)
+    private final AsyncThumbLoader<Integer> thumbLoader;
+    // Rotación y tamaño visible (CropBox girado, en puntos) por página, leídos en el EDT sin tocar
+    // el documento mientras se renderiza
+    private final int[] pageRot;
+    private final float[] pageWpt, pageHpt;
 
     // Cache de páginas renderizadas (por página + dpi)
     private static final class CacheKey {
@@ -85,6 +108,16 @@ public class PdfPreviewDialog extends JDialog {
         this.doc = doc;
         this.renderer = new PDFRenderer(doc);
         this.sourceFile = sourceFile;
+        this.pageRot = new int[doc.getNumberOfPages()];
+        this.pageWpt = new float[pageRot.length];
+        this.pageHpt = new float[pageRot.length];
+        for (int i = 0; i < pageRot.length; i++) readPageGeometry(i);
+        this.edited = new AtomicIntegerArray(pageRot.length);
+        this.pool = isPdfFile(sourceFile) ? RenderPool.forFile(sourceFile) : null;
+        this.thumbLoader = new AsyncThumbLoader<>(this::thumbKey, this::renderThumb,
+                pool != null ? Math.max(1, pool.size() - 1) : 1, "preview-thumbs", 110, 142);
+        this.continuous = new ContinuousPageView(this::renderLocked, pageWpt, pageHpt, screenDpi,
+                i -> ImageThumbCache.peek(thumbKey(i)), this::onContinuousPage);
 
         setLayout(new BorderLayout(8, 8));
         ((JComponent) getContentPane()).setBorder(new EmptyBorder(8, 8, 8, 8));
@@ -101,23 +134,16 @@ public class PdfPreviewDialog extends JDialog {
         thumbs.addListSelectionListener(e -> {
             if (!e.getValueIsAdjusting()) {
                 int idx = Math.max(0, thumbs.getSelectedIndex());
-                if (idx != page) { page = idx; applyZoom(); }
+                if (idx == page) return;
+                page = idx;
+                if (continuousMode) continuous.scrollToPage(idx);
+                else applyZoom();
             }
         });
         thumbs.setCellRenderer(new DefaultListCellRenderer() {
             @Override public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
                 JLabel l = (JLabel) super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
-                try {
-                    ImageIcon icon = thumbCache.get(index);
-                    if (icon == null) {
-                        BufferedImage bim = renderer.renderImageWithDPI(index, 64, ImageType.RGB);
-                        int w = 110, h = bim.getHeight() * w / bim.getWidth();
-                        Image scaled = bim.getScaledInstance(w, h, Image.SCALE_SMOOTH);
-                        icon = new ImageIcon(scaled);
-                        thumbCache.put(index, icon);
-                    }
-                    l.setIcon(icon);
-                } catch (Exception ignore) {}
+                l.setIcon(thumbLoader.get(list, index, index));
                 l.setText("Página " + (index + 1));
                 l.setHorizontalTextPosition(SwingConstants.CENTER);
                 l.setVerticalTextPosition(SwingConstants.BOTTOM);
@@ -163,13 +189,8 @@ public class PdfPreviewDialog extends JDialog {
             setZoomPercent(sZoom.getValue() / 100f);
         });
 
-        canvas.addMouseWheelListener(e -> {
-            if (!e.isControlDown()) return;
-            zoomMode = ZoomMode.MANUAL;
-            float factor = (e.getWheelRotation() < 0) ? 1.10f : 0.90f;
-            setZoomPercent(zoom * factor);
-            e.consume();
-        });
+        canvas.addMouseWheelListener(this::onWheel);
+        continuous.addMouseWheelListener(this::onWheel);
 
         JPanel left = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 4));
         left.add(new JLabel("Zoom:"));
@@ -177,6 +198,9 @@ public class PdfPreviewDialog extends JDialog {
         left.add(sZoom);
 
         JPanel right = new JPanel(new FlowLayout(FlowLayout.RIGHT, 10, 4));
+        JToggleButton btnContinuous = new JToggleButton("Continuo");
+        btnContinuous.setToolTipText("Todas las páginas seguidas, con scroll");
+        btnContinuous.addActionListener(e -> setContinuous(btnContinuous.isSelected()));
         // Rotación
         JButton btnRotL = new JButton("⟲ Rotar");
         btnRotL.setToolTipText("Girar 90° a la izquierda (Ctrl+L)");
@@ -203,6 +227,7 @@ public class PdfPreviewDialog extends JDialog {
         JButton btnClose = new JButton("Cerrar");
         btnClose.addActionListener(e -> dispose());
 
+        right.add(btnContinuous);
         right.add(btnRotL);
         right.add(btnRotR);
         right.add(btnPrint);
@@ -219,7 +244,14 @@ public class PdfPreviewDialog extends JDialog {
         // Cierre doc asegurado
         addWindowListener(new WindowAdapter() {
             @Override public void windowClosed(WindowEvent e) {
-                try { doc.close(); } catch (Exception ignore) {}
+                canvas.close();
+                continuous.close();
+                RenderScheduler.shared().cancelAll(renderKey());
+                if (pool != null) pool.close();
+                ImageThumbCache.forget(doc);
+                synchronized (doc) {
+                    try { doc.close(); } catch (Exception ignore) {}
+                }
             }
         });
         setLocationRelativeTo(owner);
@@ -233,9 +265,11 @@ public class PdfPreviewDialog extends JDialog {
             int cur = (rotObj == null) ? 0 : rotObj.intValue();
             int next = ((cur + deltaDegrees) % 360 + 360) % 360;
             pdPage.setRotation(next);
+            edited.set(page, 1);
+            readPageGeometry(page); // cambia la clave de la miniatura y el tamaño
+            continuous.pageChanged(page);
 
             invalidatePageCache(page);
-            thumbCache.remove(page);
 
             applyZoom();
             thumbs.repaint();
@@ -244,8 +278,123 @@ public class PdfPreviewDialog extends JDialog {
                     "Error", JOptionPane.ERROR_MESSAGE);
         }
     }
+    /**
+     * Render seguro desde cualquier hilo: PDFBox no admite renderizar el mismo PDDocument desde
+     * varios hilos (canvas, precarga y miniaturas). Con {@link RenderPool} cada render usa su propia
+     * copia del archivo; si no (documento en memoria, página rotada aquí, PDF que no se pudo volver
+     * a abrir), se serializa sobre {@code doc}.
+     */
+    private BufferedImage renderLocked(int pageIndex, float dpi) throws IOException {
+        if (usePool(pageIndex)) {
+            try {
+                return pool.render(pageIndex, dpi);
+            } catch (IOException ex) {
+                if (!pool.failed()) throw ex;
+            }
+        }
+        synchronized (doc) {
+            return renderer.renderImageWithDPI(pageIndex, dpi, ImageType.RGB);
+        }
+    }
+
+    /** Mosaico: la página completa dibujada sobre un Graphics recortado (ver {@link PageTiles}). */
+    private void renderLocked(int pageIndex, Graphics2D g, float scale) throws IOException {
+        if (usePool(pageIndex)) {
+            try {
+                pool.render(pageIndex, g, scale);
+                return;
+            } catch (IOException ex) {
+                if (!pool.failed()) throw ex;
+            }
+        }
+        synchronized (doc) {
+            renderer.renderPageToGraphics(pageIndex, g, scale);
+        }
+    }
+
+    private boolean usePool(int pageIndex) {
+        return pool != null && edited.get(pageIndex) == 0 && !pool.failed();
+    }
+
+    /** Documento para {@link RenderScheduler}: con copias admite varios renders a la vez. */
+    private Object renderKey() {
+        return pool != null ? pool : doc;
+    }
+
+    private static boolean isPdfFile(File f) {
+        return f != null && f.isFile() && f.getName().toLowerCase(Locale.ROOT).endsWith(".pdf");
+    }
+
+    private void readPageGeometry(int pageIndex) {
+        PDPage p = doc.getPage(pageIndex);
+        PDRectangle crop = p.getCropBox();
+        pageRot[pageIndex] = p.getRotation();
+        boolean swap = pageRot[pageIndex] % 180 != 0;
+        pageWpt[pageIndex] = swap ? crop.getHeight() : crop.getWidth();
+        pageHpt[pageIndex] = swap ? crop.getWidth() : crop.getHeight();
+    }
+
+    /**
+     * Las miniaturas de un PDF abierto desde archivo se cachean por archivo (y pueden ir a disco);
+     * si no, por identidad del documento.
+     */
+    private ImageThumbCache.Key thumbKey(int pageIndex) {
+        String variant = "rot" + pageRot[pageIndex];
+        boolean fromPdf = sourceFile != null && sourceFile.getName().toLowerCase(Locale.ROOT).endsWith(".pdf");
+        return fromPdf
+                ? ImageThumbCache.key(sourceFile, pageIndex, 110, 0, variant)
+                : ImageThumbCache.key(doc, pageIndex, 110, 0, variant);
+    }
+
+    private BufferedImage renderThumb(int pageIndex) throws IOException {
+        BufferedImage bim = renderLocked(pageIndex, 64);
+        int w = 110, h = bim.getHeight() * w / bim.getWidth();
+        return ImageThumbCache.scale(bim, w, h);
+    }
+
     private void invalidatePageCache(int pageIndex) {
         pageCache.entrySet().removeIf(e -> e.getKey().page == pageIndex);
+        canvas.tiles.invalidate(pageIndex);
+        RenderScheduler.shared().invalidate(renderKey(), pageIndex);
+    }
+
+    // ====== Modo continuo ======
+    private void setContinuous(boolean on) {
+        if (on == continuousMode) return;
+        continuousMode = on;
+        final int target = page;
+        spCanvas.setViewportView(on ? continuous : canvas);
+        applyZoom();
+        if (on) SwingUtilities.invokeLater(() -> continuous.scrollToPage(target));
+    }
+
+    /** Página en el centro de la vista continua: seguirla en las miniaturas. */
+    private void onContinuousPage(int pageIndex) {
+        if (pageIndex == page) return;
+        page = pageIndex;
+        thumbs.setSelectedIndex(pageIndex);
+        thumbs.ensureIndexIsVisible(pageIndex);
+    }
+
+    /** Vuelve a mostrar con el zoom actual en el modo activo. */
+    private void refreshView() {
+        if (continuousMode) continuous.setZoom(zoom);
+        else canvas.renderPage();
+    }
+
+    /**
+     * Ctrl+rueda: zoom. Sin Ctrl se pasa al scroll pane (un componente con listener de rueda se
+     * queda con el evento y si no, no habría scroll).
+     */
+    private void onWheel(MouseWheelEvent e) {
+        if (!e.isControlDown()) {
+            spCanvas.dispatchEvent(SwingUtilities.convertMouseEvent(e.getComponent(), e, spCanvas));
+            return;
+        }
+        zoomMode = ZoomMode.MANUAL;
+        float factor = (e.getWheelRotation() < 0) ? 1.10f : 0.90f;
+        setZoomPercent(zoom * factor);
+        e.consume();
     }
 
     // ====== Utilidades de zoom ======
@@ -280,7 +429,7 @@ public class PdfPreviewDialog extends JDialog {
         } finally {
             updatingUi = false;
         }
-        canvas.renderPage();
+        refreshView();
     }
 
     private void applyZoom() {
@@ -295,7 +444,7 @@ public class PdfPreviewDialog extends JDialog {
                 if (sZoom.getValue() != v) sZoom.setValue(v);
             } finally { updatingUi = false; }
             zoom = fit;
-            canvas.renderPage();
+            refreshView();
         } else {
             setZoomPercent(zoom);
         }
@@ -369,12 +518,18 @@ public class PdfPreviewDialog extends JDialog {
     }
 
     // ========= Canvas =========
+    /**
+     * Página actual. Hasta ~240 DPI se muestra una imagen de la página completa; con más zoom o
+     * en hojas grandes esa imagen (limitada a {@code MAX_FULL_PX}) queda de fondo borroso y encima
+     * se pintan los mosaicos visibles al DPI exacto, a medida que llegan.
+     */
     private class PreviewCanvas extends JComponent {
+        final PageTiles tiles = new PageTiles(PdfPreviewDialog.this::renderLocked, this::repaint);
         private volatile BufferedImage img;
         private int imgPage = -1, imgDpi = -1;
-        private SwingWorker<BufferedImage, Void> task;
+        private RenderScheduler.Ticket pageTicket;
+        private final List<RenderScheduler.Ticket> prefetchTickets = new ArrayList<>();
         private volatile boolean loading = false;
-        private int job = 0;
 
         PreviewCanvas() {
             setOpaque(true);
@@ -382,18 +537,35 @@ public class PdfPreviewDialog extends JDialog {
             setDoubleBuffered(true);
         }
 
+        /** DPI de la imagen de página completa. */
         private int computeDpi() {
             int raw = Math.round(screenDpi * zoom);
             int snapped = Math.round(raw / 12f) * 12;
-            return Math.max(72, Math.min(240, snapped));
+            int dpi = Math.max(72, Math.min(240, snapped));
+            // Hojas grandes (A0, planos): la imagen completa no pasa de MAX_FULL_PX
+            float longest = Math.max(pageWpt[page], pageHpt[page]);
+            int cap = (int) (MAX_FULL_PX * 72f / Math.max(1f, longest));
+            return Math.max(12, Math.min(dpi, cap));
+        }
+
+        private float exactDpi() {
+            return screenDpi * zoom;
+        }
+
+        /** La imagen completa se vería ampliada: completar con mosaicos al DPI exacto. */
+        private boolean tiled() {
+            return exactDpi() > computeDpi() * 1.05f;
+        }
+
+        private Dimension pageSizePx(int pageIndex) {
+            float dpi = exactDpi();
+            return new Dimension(Math.max(1, Math.round(pageWpt[pageIndex] * dpi / 72f)),
+                                 Math.max(1, Math.round(pageHpt[pageIndex] * dpi / 72f)));
         }
 
         private Dimension expectedSizeUsingEffectiveZoom(int pageIndex) {
-            var p = doc.getPage(pageIndex).getMediaBox();
-            int effDpi = Math.max(1, Math.round(screenDpi * zoom));
-            int w = Math.max(1, Math.round(p.getWidth()  * effDpi / 72f));
-            int h = Math.max(1, Math.round(p.getHeight() * effDpi / 72f));
-            return new Dimension(w + 2*MARGIN, h + 2*MARGIN);
+            Dimension d = pageSizePx(pageIndex);
+            return new Dimension(d.width + 2*MARGIN, d.height + 2*MARGIN);
         }
 
         void renderPage() {
@@ -406,6 +578,7 @@ public class PdfPreviewDialog extends JDialog {
 
             BufferedImage cached = fromCache(targetPage, dpi);
             if (cached != null) {
+                cancelPending();
                 img = cached; imgPage = targetPage; imgDpi = dpi;
                 repaint();
                 prefetchNeighbors(dpi);
@@ -415,28 +588,33 @@ public class PdfPreviewDialog extends JDialog {
             loading = true;
             repaint();
 
-            if (task != null) task.cancel(true);
-            final int thisJob = ++job;
-
-            task = new SwingWorker<>() {
-                @Override protected BufferedImage doInBackground() throws Exception {
-                    return renderer.renderImageWithDPI(targetPage, dpi, ImageType.RGB);
-                }
-                @Override protected void done() {
-                    if (isCancelled() || thisJob != job) return;
-                    try {
-                        BufferedImage bi = get();
-                        toCache(targetPage, dpi, bi);
-                        img = bi; imgPage = targetPage; imgDpi = dpi;
-                    } catch (Exception ignore) {
-                    } finally {
+            // Se pide antes de cancelar lo anterior: si era un prefetch de esta misma página, se
+            // aprovecha el render en curso
+            RenderScheduler.Ticket tk = RenderScheduler.shared().submit(RenderScheduler.Lane.VISIBLE,
+                    renderKey(), targetPage, dpi, () -> renderLocked(targetPage, dpi), bi -> {
+                        if (bi != null) {
+                            toCache(targetPage, dpi, bi);
+                            img = bi; imgPage = targetPage; imgDpi = dpi;
+                        }
                         loading = false;
                         repaint();
                         prefetchNeighbors(dpi);
-                    }
-                }
-            };
-            task.execute();
+                    });
+            cancelPending();
+            pageTicket = tk;
+        }
+
+        /** Descarta la página y las vecinas pedidas antes: al pasar páginas rápido ya no sirven. */
+        private void cancelPending() {
+            if (pageTicket != null) pageTicket.cancel();
+            pageTicket = null;
+            for (RenderScheduler.Ticket tk : prefetchTickets) tk.cancel();
+            prefetchTickets.clear();
+        }
+
+        void close() {
+            cancelPending();
+            tiles.close();
         }
 
         private BufferedImage fromCache(int page, int dpi) {
@@ -451,16 +629,12 @@ public class PdfPreviewDialog extends JDialog {
             prefetch(page + 1, dpi);
         }
         private void prefetch(int p, int dpi) {
-            if (p < 0 || p >= doc.getNumberOfPages()) return;
+            if (p < 0 || p >= pageRot.length) return;
             if (fromCache(p, dpi) != null) return;
-            new SwingWorker<BufferedImage, Void>() {
-                @Override protected BufferedImage doInBackground() throws Exception {
-                    return renderer.renderImageWithDPI(p, dpi, ImageType.RGB);
-                }
-                @Override protected void done() {
-                    try { toCache(p, dpi, get()); } catch (Exception ignore) {}
-                }
-            }.execute();
+            prefetchTickets.add(RenderScheduler.shared().submit(RenderScheduler.Lane.PREFETCH,
+                    renderKey(), p, dpi, () -> renderLocked(p, dpi), bi -> {
+                        if (bi != null) toCache(p, dpi, bi);
+                    }));
         }
 
         @Override protected void paintComponent(Graphics g) {
@@ -482,12 +656,27 @@ public class PdfPreviewDialog extends JDialog {
                 g2.drawImage(local, x, y, drawW, drawH, null);
             }
 
-            if (loading) {
+            // Mosaicos nítidos sobre la parte visible
+            boolean tilesPending = false;
+            Rectangle vis = getVisibleRect();
+            if (tiled()) {
+                Dimension d = pageSizePx(page);
+                int x = (getWidth()  - d.width) / 2;
+                int y = (getHeight() - d.height) / 2;
+                Graphics2D gt = (Graphics2D) g2.create();
+                gt.translate(x, y);
+                vis.translate(-x, -y);
+                tilesPending = !tiles.paint(gt, page, exactDpi(), d.width, d.height, vis);
+                vis.translate(x, y);
+                gt.dispose();
+            }
+
+            if (loading || tilesPending) {
                 g2.setColor(new Color(0, 0, 0, 80));
-                g2.fillRoundRect(10, 10, 160, 28, 12, 12);
+                g2.fillRoundRect(vis.x + 10, vis.y + 10, 160, 28, 12, 12);
                 g2.setColor(Color.WHITE);
                 g2.setFont(getFont().deriveFont(Font.BOLD, 13f));
-                g2.drawString("Renderizando…", 20, 30);
+                g2.drawString("Renderizando…", vis.x + 20, vis.y + 30);
             }
             g2.dispose();
         }
@@ -495,11 +684,20 @@ public class PdfPreviewDialog extends JDialog {
 
     // === Helper estático: abrir PDF desde File ===
     public static void showFile(Window owner, File pdfFile) {
+        showFile(owner, pdfFile, 0);
+    }
+
+    /** Igual, empezando en la página {@code pageIndex} (base 0). */
+    public static void showFile(Window owner, File pdfFile, int pageIndex) {
         if (pdfFile == null) return;
         PDDocument d = null;
         try {
             d = Loader.loadPDF(pdfFile);
             PdfPreviewDialog dlg = new PdfPreviewDialog(owner, d, pdfFile.getName(), pdfFile);
+            if (pageIndex > 0 && pageIndex < d.getNumberOfPages()) {
+                dlg.thumbs.setSelectedIndex(pageIndex);
+                dlg.thumbs.ensureIndexIsVisible(pageIndex);
+            }
             dlg.setLocationRelativeTo(owner);
             dlg.setVisible(true);
         } catch (Exception ex) {
@@ -1,8 +1,12 @@
 package com.mycompany.programa_pdf.dialogs;
 
 import com.mycompany.programa_pdf.MainWindow;
+import com.mycompany.programa_pdf.images.ImageThumbCache;
 import com.mycompany.programa_pdf.io.FxFileDialogs;
+import com.mycompany.programa_pdf.pdf.PdfUpdater;
 import com.mycompany.programa_pdf.pdf.PrintUtils;
+import com.mycompany.programa_pdf.pdf.RenderScheduler;
+import com.mycompany.programa_pdf.ui.AsyncThumbLoader;
 import org.apache.pdfbox.Loader;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
@@ -10,6 +14,7 @@ import org.apache.pdfbox.rendering.ImageType;
 import org.apache.pdfbox.rendering.PDFRenderer;
 
 import javax.swing.*;
+import javax.swing.border.Border;
 import javax.swing.border.EmptyBorder;
 import java.awt.*;
 import java.awt.event.ComponentAdapter;
@@ -18,26 +23,63 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Rotar páginas con vista previa y tira de miniaturas (selección múltiple).
+ *
+ * <p>Cada página se rasteriza una vez, en segundo plano; girar o cambiar el tamaño de la ventana
+ * solo transforma la imagen ya renderizada. Las miniaturas salen de la caché común con la misma
+ * clave que la vista previa de PDF y el giro pendiente se aplica al pintarlas.</p>
+ */
 public class RotatePreviewDialog extends JDialog {
 
+    private static final float PREVIEW_DPI = 140f;
+    private static final int BASE_CACHE_PAGES = 3;
+    private static final int THUMB_W = 110;
+    private static final int THUMB_DPI = 64;
+
     private final MainWindow mw;
     private final File pdfIn;
 
-    private PDDocument doc;
+    private volatile PDDocument doc; // null al cerrar o tras guardar sobre el original
     private PDFRenderer renderer;
+    // Candado de doc/renderer (PDFBox no admite un documento en varios hilos); no el del diálogo,
+    // que Swing también usa
+    private final Object docLock = new Object();
 
     private final PreviewPanel preview = new PreviewPanel();
+    private final JList<Integer> lstPages = new JList<>();
     private final JSpinner spPage = new JSpinner();
     private final JCheckBox chkAll = new JCheckBox("Aplicar a todas", false);
     private final JLabel lblDeg = new JLabel("0°");
+    private final JButton btnSave = new JButton("Guardar…");
     private int pageCount = 1;
 
     /** Rotaciones por página (0/90/180/270). */
     private final Map<Integer, Integer> rotations = new HashMap<>();
 
+    /** Rotación que ya trae cada página en el PDF (forma parte de la clave de la miniatura). */
+    private int[] baseRot = new int[0];
+
+    // Páginas rasterizadas para la vista previa (solo EDT)
+    private final Map<Integer, BufferedImage> bases = new LinkedHashMap<>(8, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<Integer, BufferedImage> e) {
+            return size() > BASE_CACHE_PAGES;
+        }
+    };
+    private RenderScheduler.Ticket baseTicket;
+    private int baseTicketPage = -1;
+    private int baseFailedPage = -1; // su render falló: aviso en vez de reintentar en cada paint
+
+    // 1 hilo: comparte el documento con la vista previa
+    private final AsyncThumbLoader<Integer> thumbLoader = new AsyncThumbLoader<>(
+            this::thumbKey, this::renderThumb, 1, "rotate-thumbs", THUMB_W, (int) (THUMB_W * 1.3));
+
+    private boolean syncing; // evita el rebote lista <-> spinner
+
     public RotatePreviewDialog(MainWindow mw, File pdfIn) {
         super(mw, "Rotar páginas", true);
         this.mw = mw;
@@ -48,7 +90,10 @@ public class RotatePreviewDialog extends JDialog {
         setLayout(new BorderLayout(8, 8));
         ((JComponent) getContentPane()).setBorder(new EmptyBorder(10, 10, 10, 10));
 
-        // Centro: preview
+        // Izquierda: miniaturas; centro: preview
+        JScrollPane left = new JScrollPane(lstPages);
+        left.setPreferredSize(new Dimension(190, 600));
+        add(left, BorderLayout.WEST);
         add(preview, BorderLayout.CENTER);
 
         // ===== Barra inferior en 2 filas (responsiva) =====
@@ -58,7 +103,7 @@ public class RotatePreviewDialog extends JDialog {
         JPanel row1 = new JPanel(new FlowLayout(FlowLayout.LEFT, 8, 6));
         row1.add(new JLabel("Página:"));
         spPage.setModel(new SpinnerNumberModel(1, 1, 1, 1));
-        spPage.addChangeListener(e -> updatePreview());
+        spPage.addChangeListener(e -> onSpinnerChange());
         row1.add(spPage);
 
         JButton btnLeft = new JButton("↺ 90°");
@@ -88,7 +133,6 @@ public class RotatePreviewDialog extends JDialog {
         JPanel row2Right = new JPanel(new FlowLayout(FlowLayout.RIGHT, 8, 6));
         JButton btnPrint = new JButton("Imprimir…");
         btnPrint.addActionListener(e -> onPrint());
-        JButton btnSave = new JButton("Guardar…");
         btnSave.addActionListener(e -> saveResult());
         JButton btnClose = new JButton("Cerrar");
         btnClose.addActionListener(e -> dispose());
@@ -115,7 +159,23 @@ public class RotatePreviewDialog extends JDialog {
             doc = Loader.loadPDF(pdfIn);
             renderer = new PDFRenderer(doc);
             pageCount = doc.getNumberOfPages();
+            baseRot = new int[pageCount];
+            for (int i = 0; i < pageCount; i++) baseRot[i] = doc.getPage(i).getRotation();
             spPage.setModel(new SpinnerNumberModel(1, 1, pageCount, 1));
+
+            Integer[] ids = new Integer[pageCount];
+            for (int i = 0; i < ids.length; i++) ids[i] = i;
+            lstPages.setListData(ids);
+            lstPages.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+            lstPages.setCellRenderer(new PageThumbRenderer());
+            lstPages.setSelectionBackground(lstPages.getBackground());
+            lstPages.setSelectionForeground(lstPages.getForeground());
+            // Alto fijo para la miniatura girada o no (el lado mayor)
+            lstPages.setFixedCellWidth((int) (THUMB_W * 1.3) + 24);
+            lstPages.setFixedCellHeight((int) (THUMB_W * 1.3) + 34);
+            lstPages.addListSelectionListener(e -> { if (!e.getValueIsAdjusting()) onListSelection(); });
+            if (pageCount > 0) lstPages.setSelectedIndex(0);
+
             updatePreview();
         } catch (Exception ex) {
             mw.fail(ex);
@@ -130,11 +190,21 @@ public class RotatePreviewDialog extends JDialog {
         return (v == null ? 0 : v);
     }
 
+    /** Páginas a las que afecta un giro: la selección de la tira o, si no hay, la actual. */
+    private int[] targetPages() {
+        int[] sel = lstPages.getSelectedIndices();
+        return (sel.length > 0) ? sel : new int[]{getCurrentPageIndex()};
+    }
+
     private void setCurrentRotation(int deg) {
-        int pi = getCurrentPageIndex();
-        rotations.put(pi, norm(deg));
-        lblDeg.setText(norm(deg) + "°");
-        preview.repaint();
+        int r = norm(deg);
+        if (chkAll.isSelected()) {
+            for (int i = 0; i < pageCount; i++) rotations.put(i, r);
+        } else {
+            for (int pi : targetPages()) rotations.put(pi, r);
+        }
+        lblDeg.setText(r + "°");
+        repaintRotation();
     }
 
     private void rotate(int delta) {
@@ -143,10 +213,17 @@ public class RotatePreviewDialog extends JDialog {
         if (chkAll.isSelected()) {
             for (int i = 0; i < pageCount; i++) rotations.put(i, newDeg);
         } else {
-            rotations.put(pi, newDeg);
+            // Cada página seleccionada gira desde su propio ángulo
+            for (int i : targetPages()) rotations.put(i, norm(getRotationFor(i) + delta));
         }
-        lblDeg.setText(newDeg + "°");
+        lblDeg.setText(getRotationFor(pi) + "°");
+        repaintRotation();
+    }
+
+    /** Girar no cambia ninguna imagen: solo se repinta con la transformación nueva. */
+    private void repaintRotation() {
         preview.repaint();
+        lstPages.repaint();
     }
 
     private int norm(int d) {
@@ -164,28 +241,51 @@ public class RotatePreviewDialog extends JDialog {
         preview.repaint();
     }
 
+    private void onSpinnerChange() {
+        if (!syncing) {
+            syncing = true;
+            int pi = getCurrentPageIndex();
+            lstPages.setSelectedIndex(pi);
+            lstPages.ensureIndexIsVisible(pi);
+            syncing = false;
+        }
+        updatePreview();
+    }
+
+    private void onListSelection() {
+        int lead = lstPages.getLeadSelectionIndex();
+        if (syncing || lead < 0 || !lstPages.isSelectedIndex(lead)) return;
+        syncing = true;
+        spPage.setValue(lead + 1);
+        syncing = false;
+    }
+
     private void onPrint() {
         // Aplicar rotaciones en memoria, imprimir y restaurar
         List<Integer> old = new ArrayList<>(pageCount);
-        try {
-            for (int i = 0; i < pageCount; i++) {
-                PDPage p = doc.getPage(i);
-                int base = p.getRotation();
-                old.add(base);
-                int extra = getRotationFor(i);
-                p.setRotation((base + extra) % 360);
-            }
-            PrintUtils.printPdf(doc);
-        } catch (Exception ex) {
-            mw.fail(ex);
-        } finally {
+        synchronized (docLock) {
+            if (doc == null) return;
             try {
-                for (int i = 0; i < pageCount; i++) doc.getPage(i).setRotation(old.get(i));
-            } catch (Exception ignore) {}
+                for (int i = 0; i < pageCount; i++) {
+                    PDPage p = doc.getPage(i);
+                    int base = p.getRotation();
+                    old.add(base);
+                    int extra = getRotationFor(i);
+                    p.setRotation((base + extra) % 360);
+                }
+                PrintUtils.printPdf(doc);
+            } catch (Exception ex) {
+                mw.fail(ex);
+            } finally {
+                try {
+                    for (int i = 0; i < old.size(); i++) doc.getPage(i).setRotation(old.get(i));
+                } catch (Exception ignore) {}
+            }
         }
     }
 
     private void saveResult() {
+        if (doc == null) return;
         try {
             String base = pdfIn.getName().replaceAll("(?i)\\.pdf$", "");
             File out = FxFileDialogs.pickSave(
@@ -197,62 +297,220 @@ public class RotatePreviewDialog extends JDialog {
             );
             if (out == null) return;
 
-            // Aplicar rotaciones y guardar
-            for (int i = 0; i < doc.getNumberOfPages(); i++) {
-                PDPage p = doc.getPage(i);
-                int baseRot = p.getRotation();
-                int extra = getRotationFor(i);
-                p.setRotation((baseRot + extra) % 360);
-            }
-            doc.save(out);
-
-            mw.ok("PDF rotado: " + out.getAbsolutePath());
-            mw.getHistory().add("Rotar páginas (preview)",
-                    List.of(pdfIn.getAbsolutePath()),
-                    out.getAbsolutePath());
-            mw.openIfWanted(out);
-            dispose();
+            final Map<Integer, Integer> extra = new HashMap<>(rotations);
+            btnSave.setEnabled(false);
+            mw.runAsync(() -> {
+                try {
+                    // Aplicar rotaciones y guardar (con el candado: las miniaturas pueden estar renderizando)
+                    synchronized (docLock) {
+                        try {
+                            for (Map.Entry<Integer, Integer> e : extra.entrySet()) {
+                                if (e.getValue() == 0) continue;
+                                PDPage p = doc.getPage(e.getKey());
+                                p.setRotation((baseRot[e.getKey()] + e.getValue()) % 360);
+                            }
+                            // Incremental si está activado: solo se escriben las páginas que cambiaron
+                            PdfUpdater.save(doc, pdfIn, out, PdfUpdater.defaultIncremental());
+                        } catch (Exception ex) {
+                            // Volver al estado original para poder reintentar (si sigue abierto)
+                            if (!doc.getDocument().isClosed()) {
+                                for (int i = 0; i < baseRot.length; i++) doc.getPage(i).setRotation(baseRot[i]);
+                            }
+                            throw ex;
+                        } finally {
+                            // Guardado sobre el original: save ya lo cerró y no se puede volver a usar
+                            if (doc.getDocument().isClosed()) { doc = null; renderer = null; }
+                        }
+                    }
+                    SwingUtilities.invokeLater(() -> {
+                        mw.ok("PDF rotado: " + out.getAbsolutePath());
+                        mw.addHistory("Rotar páginas (preview)",
+                                List.of(pdfIn.getAbsolutePath()),
+                                out.getAbsolutePath());
+                        mw.openIfWanted(out);
+                        dispose();
+                    });
+                } catch (Exception ex) {
+                    mw.fail(ex);
+                    SwingUtilities.invokeLater(() -> btnSave.setEnabled(doc != null));
+                }
+            });
         } catch (Exception ex) {
             mw.fail(ex);
         }
     }
 
     @Override public void dispose() {
-        try { if (doc != null) doc.close(); } catch (Exception ignore) {}
+        thumbLoader.clear();
+        bases.clear();
+        RenderScheduler.shared().cancelAll(this);
+        synchronized (docLock) {
+            try { if (doc != null) doc.close(); } catch (Exception ignore) {}
+            doc = null;
+            renderer = null;
+        }
         super.dispose();
     }
 
+    /* ==== render ==== */
+
+    /** Misma clave que {@link PdfPreviewDialog}: las miniaturas de un PDF ya visto no se renderizan. */
+    private ImageThumbCache.Key thumbKey(int pageIndex) {
+        return ImageThumbCache.key(pdfIn, pageIndex, THUMB_W, 0, "rot" + baseRot[pageIndex]);
+    }
+
+    private BufferedImage renderThumb(int pageIndex) throws Exception {
+        BufferedImage bim;
+        synchronized (docLock) {
+            if (renderer == null) return null;
+            bim = renderer.renderImageWithDPI(pageIndex, THUMB_DPI, ImageType.RGB);
+        }
+        int w = THUMB_W, h = bim.getHeight() * w / bim.getWidth();
+        return ImageThumbCache.scale(bim, w, h);
+    }
+
+    /**
+     * Página sin el giro pendiente a {@code PREVIEW_DPI}. Si no está, la renderiza en segundo plano,
+     * devuelve null y repinta al terminar. Si el render falla queda anotado y no se vuelve a pedir
+     * hasta que se mire otra página. Llamar en el EDT.
+     */
+    private BufferedImage previewBase(int pageIndex) {
+        BufferedImage img = bases.get(pageIndex);
+        if (img != null || baseTicketPage == pageIndex || baseFailedPage == pageIndex) return img;
+        baseFailedPage = -1;
+        // La página que se miraba antes ya no hace falta
+        if (baseTicket != null) baseTicket.cancel();
+        baseTicketPage = pageIndex;
+        baseTicket = RenderScheduler.shared().submit(RenderScheduler.Lane.VISIBLE, this, pageIndex, PREVIEW_DPI, () -> {
+            synchronized (docLock) {
+                if (renderer == null) return null;
+                return renderer.renderImageWithDPI(pageIndex, PREVIEW_DPI, ImageType.RGB);
+            }
+        }, r -> {
+            baseTicketPage = -1;
+            if (doc == null) return;
+            if (r != null) bases.put(pageIndex, r);
+            else baseFailedPage = pageIndex;
+            preview.repaint();
+        });
+        return null;
+    }
+
+    /** Icono girado en múltiplos de 90° alrededor de su centro (sin copiar la imagen). */
+    private static Icon rotated(Icon icon, int deg) {
+        if (deg == 0) return icon;
+        boolean swap = deg % 180 != 0;
+        int w = swap ? icon.getIconHeight() : icon.getIconWidth();
+        int h = swap ? icon.getIconWidth() : icon.getIconHeight();
+        return new Icon() {
+            @Override public void paintIcon(Component c, Graphics g, int x, int y) {
+                Graphics2D g2 = (Graphics2D) g.create();
+                g2.translate(x + w / 2.0, y + h / 2.0);
+                g2.rotate(Math.toRadians(deg));
+                icon.paintIcon(c, g2, -icon.getIconWidth() / 2, -icon.getIconHeight() / 2);
+                g2.dispose();
+            }
+            @Override public int getIconWidth()  { return w; }
+            @Override public int getIconHeight() { return h; }
+        };
+    }
+
+    /* ==== miniaturas ==== */
+    private class PageThumbRenderer extends JPanel implements ListCellRenderer<Integer> {
+        private final JLabel previewLbl = new JLabel("", SwingConstants.CENTER);
+        private final JLabel caption = new JLabel("", SwingConstants.CENTER);
+
+        private final Border selBorder =
+                BorderFactory.createCompoundBorder(
+                        BorderFactory.createLineBorder(UIManager.getColor("Component.focusColor")),
+                        new EmptyBorder(6, 6, 8, 6)
+                );
+        private final Border noSelBorder = new EmptyBorder(7, 7, 9, 7);
+
+        PageThumbRenderer() {
+            setOpaque(true);
+            setLayout(new BorderLayout(0, 6));
+            previewLbl.setOpaque(false);
+            caption.setOpaque(false);
+            caption.setFont(caption.getFont().deriveFont(Font.PLAIN, 12f));
+            add(previewLbl, BorderLayout.CENTER);
+            add(caption, BorderLayout.SOUTH);
+        }
+
+        @Override public Component getListCellRendererComponent(
+                JList<? extends Integer> list, Integer pageIndex,
+                int index, boolean isSelected, boolean cellHasFocus) {
+
+            setBackground(list.getBackground());
+            setBorder(isSelected ? selBorder : noSelBorder);
+
+            int rot = getRotationFor(pageIndex);
+            previewLbl.setIcon(rotated(thumbLoader.get(list, pageIndex, index), rot));
+            caption.setText("Página " + (index + 1) + (rot != 0 ? "  (" + rot + "°)" : ""));
+            caption.setForeground(UIManager.getColor("Label.foreground"));
+            return this;
+        }
+    }
+
     /* ==== panel preview ==== */
     private class PreviewPanel extends JPanel {
+        private BufferedImage shownBase, scaled, scaledFrom;
+        private int scaledW, scaledH;
+
         PreviewPanel() { setBackground(Color.DARK_GRAY); }
 
+        /**
+         * La página se escala una vez por tamaño; girar solo cambia la transformación con la que
+         * se dibuja esa imagen.
+         */
         @Override protected void paintComponent(Graphics g) {
             super.paintComponent(g);
             if (doc == null) return;
             int pi = getCurrentPageIndex();
-            try {
-                float dpi = 140f;
-                BufferedImage img = renderer.renderImageWithDPI(pi, dpi, ImageType.RGB);
 
-                int rot = getRotationFor(pi);
+            // Mientras se renderiza otra página se sigue mostrando la anterior
+            BufferedImage img = previewBase(pi);
+            if (img == null && baseFailedPage == pi) { paintFailed(g, pi); return; }
+            if (img == null) img = shownBase;
+            if (img == null) return;
+            shownBase = img;
+
+            int rot = (img == bases.get(pi)) ? getRotationFor(pi) : 0;
+            boolean swap = rot % 180 != 0;
+            int rotW = swap ? img.getHeight() : img.getWidth();
+            int rotH = swap ? img.getWidth() : img.getHeight();
+
+            int w = getWidth() - 20, h = getHeight() - 20;
+            double scale = Math.min(w / (double) rotW, h / (double) rotH);
+            int drawW = (int) (img.getWidth() * scale);
+            int drawH = (int) (img.getHeight() * scale);
+            if (drawW <= 0 || drawH <= 0) return;
+
+            if (scaled == null || scaledFrom != img || scaledW != drawW || scaledH != drawH) {
+                scaled = ImageThumbCache.scale(img, drawW, drawH);
+                scaledFrom = img;
+                scaledW = drawW;
+                scaledH = drawH;
+            }
 
-                Graphics2D g2 = (Graphics2D) g.create();
-                g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-                g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-
-                int w = getWidth() - 20, h = getHeight() - 20;
-                double scale = Math.min(w / (double) img.getWidth(), h / (double) img.getHeight());
-                int drawW = (int) (img.getWidth() * scale);
-                int drawH = (int) (img.getHeight() * scale);
-                int cx = (getWidth() - drawW) / 2;
-                int cy = (getHeight() - drawH) / 2;
-
-                g2.translate(cx + drawW / 2.0, cy + drawH / 2.0);
-                g2.rotate(Math.toRadians(rot));
-                g2.translate(-drawW / 2.0, -drawH / 2.0);
-                g2.drawImage(img, 0, 0, drawW, drawH, null);
-                g2.dispose();
-            } catch (Exception ignore) {}
+            Graphics2D g2 = (Graphics2D) g.create();
+            g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g2.translate(getWidth() / 2.0, getHeight() / 2.0);
+            g2.rotate(Math.toRadians(rot));
+            g2.drawImage(scaled, -scaled.getWidth() / 2, -scaled.getHeight() / 2, null);
+            g2.dispose();
+        }
+
+        /** Aviso en lugar de la página cuando su render falló. */
+        private void paintFailed(Graphics g, int pageIndex) {
+            Graphics2D g2 = (Graphics2D) g.create();
+            g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g2.setColor(new Color(130,130,130));
+            g2.setFont(getFont().deriveFont(Font.PLAIN, 14f));
+            String msg = "No se pudo renderizar la página " + (pageIndex + 1);
+            FontMetrics fm = g2.getFontMetrics();
+            g2.drawString(msg, (getWidth() - fm.stringWidth(msg)) / 2, getHeight() / 2);
+            g2.dispose();
         }
     }
 }
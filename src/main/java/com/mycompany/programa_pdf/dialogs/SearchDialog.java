@@ -0,0 +1,273 @@
+package com.mycompany.programa_pdf.dialogs;
+
+import com.mycompany.programa_pdf.pdf.SearchIndex;
+import com.mycompany.programa_pdf.state.HistoryStore;
+
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.awt.event.KeyEvent;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Búsqueda por contenido en los PDF del historial (ver {@link SearchIndex}). Busca mientras se
+ * escribe y muestra archivo, página y un fragmento del texto; doble clic abre la vista previa en esa
+ * página.
+ */
+public class SearchDialog extends JDialog {
+
+    private static final int MAX_HITS = 500;
+
+    // ======= Estado =======
+    private final HistoryStore history;
+    private final SearchIndex index = SearchIndex.shared();
+    private final List<SearchIndex.Hit> hits = new ArrayList<>();
+    private SwingWorker<SearchIndex.Result, Void> search;
+    private String lastQuery = "";
+    private int lastPending;
+
+    // ======= UI =======
+    private final JTextField txtQuery = new JTextField();
+    private JTable table;
+    private DefaultTableModel model;
+    private final JLabel lblStatus = new JLabel(" ");
+    private JButton btnAbrir, btnCarpeta, btnIndexar, btnCerrar;
+    private final Timer debounce = new Timer(150, e -> runSearch());
+    private final Timer pendingPoll = new Timer(1000, e -> refreshPending());
+
+    public SearchDialog(Window owner, HistoryStore history) {
+        super(owner, "Buscar en PDFs", ModalityType.MODELESS);
+        this.history = history;
+
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+        setMinimumSize(new Dimension(900, 520));
+        setLocationRelativeTo(owner);
+
+        buildUI();
+        wireEvents();
+        debounce.setRepeats(false);
+        pendingPoll.start();
+        refreshPending();
+    }
+
+    // ================== UI ==================
+    private void buildUI() {
+        JPanel root = new JPanel(new BorderLayout(10, 10));
+        root.setBorder(new EmptyBorder(10, 10, 10, 10));
+        setContentPane(root);
+
+        JPanel top = new JPanel(new BorderLayout(8, 0));
+        top.add(new JLabel("Buscar:"), BorderLayout.WEST);
+        top.add(txtQuery, BorderLayout.CENTER);
+        root.add(top, BorderLayout.NORTH);
+
+        String[] cols = {"Archivo", "Página", "Fragmento", "Carpeta"};
+        model = new DefaultTableModel(cols, 0) {
+            @Override public boolean isCellEditable(int r, int c) { return false; }
+        };
+        table = new JTable(model);
+        table.setRowHeight(22);
+        table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        table.getColumnModel().getColumn(0).setPreferredWidth(200);
+        table.getColumnModel().getColumn(1).setPreferredWidth(60);
+        table.getColumnModel().getColumn(2).setPreferredWidth(450);
+        table.getColumnModel().getColumn(3).setPreferredWidth(250);
+        root.add(new JScrollPane(table), BorderLayout.CENTER);
+
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT, 8, 6));
+        btnAbrir   = new JButton("Abrir");
+        btnCarpeta = new JButton("Mostrar en carpeta");
+        btnIndexar = new JButton("Indexar historial");
+        btnCerrar  = new JButton("Cerrar");
+        btnIndexar.setToolTipText("Agrega al índice los PDF del historial que todavía no están");
+        buttons.add(btnAbrir);
+        buttons.add(btnCarpeta);
+        buttons.add(btnIndexar);
+        buttons.add(btnCerrar);
+
+        JPanel footer = new JPanel(new BorderLayout());
+        footer.add(lblStatus, BorderLayout.WEST);
+        footer.add(buttons, BorderLayout.EAST);
+        root.add(footer, BorderLayout.SOUTH);
+
+        getRootPane().registerKeyboardAction(
+                e -> dispose(),
+                KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0),
+                JComponent.WHEN_IN_FOCUSED_WINDOW
+        );
+        setButtonsEnabled(false);
+    }
+
+    // =============== Eventos ===============
+    private void wireEvents() {
+        txtQuery.getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) { debounce.restart(); }
+            public void removeUpdate(DocumentEvent e) { debounce.restart(); }
+            public void changedUpdate(DocumentEvent e) {}
+        });
+        txtQuery.addActionListener(e -> {
+            if (table.getRowCount() > 0) openSelected(false);
+        });
+        // Flecha abajo desde el campo: a los resultados
+        txtQuery.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_DOWN, 0), "toTable");
+        txtQuery.getActionMap().put("toTable", new AbstractAction() {
+            @Override public void actionPerformed(java.awt.event.ActionEvent e) {
+                if (table.getRowCount() > 0) table.requestFocusInWindow();
+            }
+        });
+
+        btnAbrir.addActionListener(e -> openSelected(false));
+        btnCarpeta.addActionListener(e -> openSelected(true));
+        btnIndexar.addActionListener(e -> indexHistory());
+        btnCerrar.addActionListener(e -> dispose());
+
+        table.getSelectionModel().addListSelectionListener(e -> {
+            if (!e.getValueIsAdjusting()) setButtonsEnabled(table.getSelectedRow() >= 0);
+        });
+        table.addMouseListener(new java.awt.event.MouseAdapter() {
+            @Override public void mouseClicked(java.awt.event.MouseEvent e) {
+                if (e.getClickCount() == 2 && SwingUtilities.isLeftMouseButton(e)) openSelected(false);
+            }
+        });
+        table.getInputMap(JComponent.WHEN_ANCESTOR_OF_FOCUSED_COMPONENT)
+                .put(KeyStroke.getKeyStroke(KeyEvent.VK_ENTER, 0), "open");
+        table.getActionMap().put("open", new AbstractAction() {
+            @Override public void actionPerformed(java.awt.event.ActionEvent e) { openSelected(false); }
+        });
+    }
+
+    private void setButtonsEnabled(boolean hasSel) {
+        btnAbrir.setEnabled(hasSel);
+        btnCarpeta.setEnabled(hasSel);
+    }
+
+    // =============== Búsqueda ===============
+    private void runSearch() {
+        String q = txtQuery.getText();
+        if (q.equals(lastQuery)) return;
+        lastQuery = q;
+        if (search != null) search.cancel(false);
+        if (q.isBlank()) {
+            showHits(new SearchIndex.Result(List.of(), 0), q, 0);
+            return;
+        }
+
+        final long t0 = System.nanoTime();
+        search = new SwingWorker<>() {
+            private final List<String> snippets = new ArrayList<>();
+
+            @Override protected SearchIndex.Result doInBackground() throws Exception {
+                SearchIndex.Result r = index.search(q, MAX_HITS);
+                // Fragmentos solo de las primeras 100 filas: leer el texto cuesta más que buscar
+                for (int i = 0; i < r.hits().size() && !isCancelled(); i++) {
+                    snippets.add(i < 100 ? SearchIndex.snippet(r.hits().get(i), q, 90) : "");
+                }
+                return r;
+            }
+
+            @Override protected void done() {
+                if (search != this || isCancelled()) return;
+                try {
+                    showHits(get(), q, (System.nanoTime() - t0) / 1_000_000);
+                    for (int i = 0; i < snippets.size() && i < model.getRowCount(); i++) {
+                        model.setValueAt(snippets.get(i), i, 2);
+                    }
+                } catch (Exception ex) {
+                    Throwable c = (ex.getCause() != null) ? ex.getCause() : ex;
+                    lblStatus.setText("Error al buscar: " + c.getMessage());
+                }
+            }
+        };
+        search.execute();
+    }
+
+    private void showHits(SearchIndex.Result r, String q, long ms) {
+        hits.clear();
+        hits.addAll(r.hits());
+        model.setRowCount(0);
+        for (SearchIndex.Hit h : hits) {
+            File f = h.file();
+            model.addRow(new Object[]{
+                    f.getName(),
+                    h.page() + 1,
+                    "",
+                    f.getParent()
+            });
+        }
+        if (q.isBlank()) {
+            lblStatus.setText(" ");
+        } else {
+            String more = (r.total() > hits.size()) ? " (se muestran " + hits.size() + ")" : "";
+            lblStatus.setText(r.total() + " página(s) en " + ms + " ms" + more);
+        }
+        if (model.getRowCount() > 0) table.setRowSelectionInterval(0, 0);
+        setButtonsEnabled(table.getSelectedRow() >= 0);
+        refreshPending();
+    }
+
+    /** Avisa si todavía hay PDF encolados; al vaciarse la cola repite la búsqueda con lo nuevo. */
+    private void refreshPending() {
+        int n = index.pending();
+        btnIndexar.setText(n > 0 ? "Indexando… (" + n + ")" : "Indexar historial");
+        boolean finished = lastPending > 0 && n == 0;
+        lastPending = n;
+        if (finished && !txtQuery.getText().isBlank()) {
+            lastQuery = "";
+            runSearch();
+        }
+    }
+
+    // =============== Acciones ===============
+    private void indexHistory() {
+        btnIndexar.setEnabled(false);
+        new SwingWorker<Void, Void>() {
+            @Override protected Void doInBackground() {
+                // El historial puede ser muy largo: se recorre de a páginas fuera del EDT
+                history.forEach(e -> {
+                    for (String in : e.inputs()) index.submit(new File(in));
+                    if (!e.output().isBlank()) index.submit(new File(e.output()));
+                });
+                return null;
+            }
+            @Override protected void done() {
+                btnIndexar.setEnabled(true);
+                refreshPending();
+            }
+        }.execute();
+    }
+
+    private void openSelected(boolean folder) {
+        int r = table.getSelectedRow();
+        if (r < 0 || r >= hits.size()) return;
+        SearchIndex.Hit h = hits.get(r);
+        File f = h.file();
+        if (!f.exists()) {
+            JOptionPane.showMessageDialog(this, "No se encuentra:\n" + f.getAbsolutePath(),
+                    "Aviso", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        if (!folder) {
+            PdfPreviewDialog.showFile(this, f, h.page());
+            return;
+        }
+        if (!Desktop.isDesktopSupported()) return;
+        try {
+            Desktop.getDesktop().open(f.getParentFile());
+        } catch (Exception ex) {
+            JOptionPane.showMessageDialog(this, "No se pudo abrir:\n" + ex.getMessage(),
+                    "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    @Override public void dispose() {
+        debounce.stop();
+        pendingPoll.stop();
+        if (search != null) search.cancel(false);
+        super.dispose();
+    }
+}
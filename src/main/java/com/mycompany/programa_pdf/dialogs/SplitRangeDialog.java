@@ -3,6 +3,7 @@ package com.mycompany.programa_pdf.dialogs;
 import com.mycompany.programa_pdf.MainWindow;
 import com.mycompany.programa_pdf.io.FxFileDialogs;
 import com.mycompany.programa_pdf.pdf.PrintUtils;
+import com.mycompany.programa_pdf.pdf.RenderScheduler;
 import org.apache.pdfbox.Loader;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.rendering.PDFRenderer;
@@ -24,6 +25,7 @@ public class SplitRangeDialog extends JDialog {
     private PDDocument doc;
     private PDFRenderer renderer;
     private int pageCount;
+    private RenderScheduler.Ticket previewTicket;
 
     // UI
     private final JSpinner spFrom = new JSpinner(new SpinnerNumberModel(1, 1, 1, 1));
@@ -166,16 +168,11 @@ public class SplitRangeDialog extends JDialog {
     }
 
     private void renderPreview(int zeroBasedPage) {
-        new SwingWorker<Image,Void>() {
-            @Override protected Image doInBackground() throws Exception {
-                BufferedImage bi = renderer.renderImage(zeroBasedPage, 1.25f);
-                return bi;
-            }
-            @Override protected void done() {
-                try { pageImg.setIcon(new ImageIcon(get())); }
-                catch (Exception ignore) { pageImg.setIcon(null); }
-            }
-        }.execute();
+        // Al recorrer la lista con el teclado solo interesa la última página elegida
+        if (previewTicket != null) previewTicket.cancel();
+        previewTicket = RenderScheduler.shared().submit(RenderScheduler.Lane.VISIBLE, doc, zeroBasedPage, 90f, () -> {
+            synchronized (doc) { return renderer.renderImage(zeroBasedPage, 1.25f); }
+        }, bi -> pageImg.setIcon(bi == null ? null : new ImageIcon(bi)));
     }
 
     private void onSave() {
@@ -202,7 +199,7 @@ public class SplitRangeDialog extends JDialog {
             try {
                 File res = mw.getSvc().splitRange(pdfFile, outPdf, fFrom, fTo);
                 mw.ok("PDF generado: " + res.getAbsolutePath());
-                mw.getHistory().add(
+                mw.addHistory(
                         "Dividir PDF (rango " + fFrom + "-" + fTo + ")",
                         java.util.List.of(pdfFile.getAbsolutePath()),
                         res.getAbsolutePath()
@@ -218,6 +215,11 @@ public class SplitRangeDialog extends JDialog {
     }
 
     private void closeDoc() {
-        try { if (doc != null) doc.close(); } catch (Exception ignore) {}
+        if (doc == null) return;
+        RenderScheduler.shared().cancelAll(doc);
+        // Espera a que termine un render en curso
+        synchronized (doc) {
+            try { doc.close(); } catch (Exception ignore) {}
+        }
     }
 }
@@ -1,19 +1,19 @@
 package com.mycompany.programa_pdf.dialogs;
 
 import com.mycompany.programa_pdf.MainWindow;
+import com.mycompany.programa_pdf.images.ImageThumbCache;
+import com.mycompany.programa_pdf.pdf.PdfUpdater;
+import com.mycompany.programa_pdf.pdf.RenderScheduler;
+import com.mycompany.programa_pdf.pdf.WatermarkEngine;
 import com.mycompany.programa_pdf.pdf.PrintUtils;
 import com.mycompany.programa_pdf.io.FxFileDialogs;
+import com.mycompany.programa_pdf.ui.AsyncThumbLoader;
 import org.apache.pdfbox.Loader;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
-import org.apache.pdfbox.pdmodel.PDPageContentStream;
-import org.apache.pdfbox.pdmodel.font.PDType1Font;
-import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
-import org.apache.pdfbox.pdmodel.graphics.state.PDExtendedGraphicsState;
 import org.apache.pdfbox.rendering.ImageType;
 import org.apache.pdfbox.rendering.PDFRenderer;
-import org.apache.pdfbox.util.Matrix;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
@@ -23,10 +23,10 @@ import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.awt.image.BufferedImage;
 import java.io.File;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Vista previa de marca de agua con miniaturas, imprimir y guardar (explorador nativo),
@@ -36,12 +36,18 @@ public class WatermarkPreviewDialog extends JDialog {
 
     private static final int PREVIEW_DPI = 144;
     private static final int THUMB_W = 130;
+    private static final int THUMB_DPI = 110;
+    private static final int THUMB_DEBOUNCE_MS = 250;
+    private static final int BASE_CACHE_PAGES = 3;
 
     private final MainWindow mw;
     private final File pdfIn;
 
-    private PDDocument doc;
+    private volatile PDDocument doc; // null al cerrar o tras guardar sobre el original
     private PDFRenderer renderer;
+    // Candado de doc/renderer (PDFBox no admite un documento en varios hilos); no el del diálogo,
+    // que Swing también usa
+    private final Object docLock = new Object();
 
     // Controles
     private final JTextField txtText = new JTextField("CONFIDENCIAL", 16);
@@ -65,8 +71,31 @@ public class WatermarkPreviewDialog extends JDialog {
     private final JButton btnPrint = new JButton("Imprimir…");
     private final JButton btnSave  = new JButton("Guardar…");
 
-    // Caché miniaturas
-    private final Map<Integer, ImageIcon> thumbCache = new HashMap<>();
+    /** La miniatura depende de la página y de la marca: al cambiar la marca cambia la clave. */
+    private record ThumbKey(int page, WatermarkEngine.Spec style) {}
+
+    /** Página rasterizada sin marca. */
+    private record BaseKey(int page, int dpi) {}
+
+    // Páginas de la vista previa ya rasterizadas (solo EDT): mover la marca solo repinta encima
+    private final Map<BaseKey, BufferedImage> bases = new LinkedHashMap<>(8, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<BaseKey, BufferedImage> e) {
+            return size() > BASE_CACHE_PAGES;
+        }
+    };
+    private RenderScheduler.Ticket baseTicket;
+    private BaseKey baseTicketKey;
+    private BaseKey baseFailedKey; // su render falló: aviso en vez de reintentar en cada paint
+
+    // Marca con la que se generan las miniaturas: se actualiza cuando se deja de mover un control
+    private WatermarkEngine.Spec thumbStyle;
+    private final Timer thumbDebounce = new Timer(THUMB_DEBOUNCE_MS, e -> refreshThumbs());
+
+    // Miniaturas en segundo plano (1 hilo: comparten el documento con la vista previa). Solo en
+    // memoria: cada ajuste de la marca genera claves nuevas que no vale la pena guardar en disco.
+    private final AsyncThumbLoader<ThumbKey> thumbLoader = new AsyncThumbLoader<>(
+            k -> ImageThumbCache.key(this, k.page(), THUMB_W, 0, k.style().toString()),
+            this::renderThumb, 1, "watermark-thumbs", THUMB_W, (int) (THUMB_W * 1.3));
 
     public WatermarkPreviewDialog(MainWindow mw, File pdfIn) {
         super(mw, "Marca de agua (vista previa)", true);
@@ -171,15 +200,37 @@ public class WatermarkPreviewDialog extends JDialog {
         btnPrint.addActionListener(e -> doPrint());
         btnSave.addActionListener(e -> saveResult());
 
+        thumbStyle = currentStyle();
+        thumbDebounce.setRepeats(false);
+
         loadDoc();
     }
 
+    /**
+     * La vista previa solo recompone la marca sobre la página ya rasterizada; las miniaturas se
+     * regeneran {@code THUMB_DEBOUNCE_MS} después del último cambio.
+     */
     private void onChange() {
         preview.repaint();
-        thumbCache.clear();
+        thumbDebounce.restart();
+    }
+
+    private void refreshThumbs() {
+        thumbStyle = currentStyle();
+        thumbLoader.clear();
         lstPages.repaint();
     }
 
+    /**
+     * Parámetros de la marca leídos de los controles (llamar en el EDT). En pantalla Y va desde
+     * arriba y el ángulo es horario; el punto es el inicio de la línea base del texto.
+     */
+    private WatermarkEngine.Spec currentStyle() {
+        return new WatermarkEngine.Spec(txtText.getText(), ((Number) spFont.getValue()).floatValue(),
+                -sAngle.getValue(), sX.getValue() / 100f, 1f - sY.getValue() / 100f,
+                color, sOpacity.getValue() / 100f, false);
+    }
+
     private void loadDoc() {
         try {
             doc = Loader.loadPDF(pdfIn);
@@ -207,6 +258,7 @@ public class WatermarkPreviewDialog extends JDialog {
     }
 
     private void saveResult() {
+        if (doc == null) return;
         try {
             String baseName = pdfIn.getName().replaceAll("(?i)\\.pdf$","");
             File out = FxFileDialogs.pickSave(
@@ -218,14 +270,7 @@ public class WatermarkPreviewDialog extends JDialog {
             );
             if (out == null) return;
 
-            final String text = txtText.getText();
-            final float fontSizePt = ((Number)spFont.getValue()).floatValue();
-            final float anglePreviewRad = (float) Math.toRadians(sAngle.getValue());
-            final float op = sOpacity.getValue()/100f;
-            final Color c = color;
-
-            final float nx = sX.getValue()/100f;
-            final float nyTop = sY.getValue()/100f;
+            final WatermarkEngine.Spec style = currentStyle();
 
             final int from, to;
             if (rbOne.isSelected()) {
@@ -237,35 +282,18 @@ public class WatermarkPreviewDialog extends JDialog {
 
             mw.runAsync(() -> {
                 try {
-                    for (int i = from; i <= to; i++) {
-                        PDPage page = doc.getPage(i);
-                        PDRectangle mb = page.getMediaBox();
-
-                        float px = nx * mb.getWidth();
-                        float py = (1f - nyTop) * mb.getHeight(); // invertir Y respecto al preview
-                        float anglePdf = -anglePreviewRad;        // signo invertido respecto al preview
-
-                        // Estado gráfico (opacidad)
-                        PDExtendedGraphicsState gs = new PDExtendedGraphicsState();
-                        gs.setNonStrokingAlphaConstant(op);
-
-                        try (PDPageContentStream cs =
-                                     new PDPageContentStream(doc, page, PDPageContentStream.AppendMode.APPEND, true, true)) {
-                            cs.setNonStrokingColor(c);
-                            // PDFBox se encarga de registrar el ExtGState en los resources del page
-                            cs.setGraphicsStateParameters(gs);
-                            cs.beginText();
-                            cs.setFont(new PDType1Font(Standard14Fonts.FontName.HELVETICA_BOLD), fontSizePt);
-                            cs.setTextMatrix(Matrix.getRotateInstance(anglePdf, px, py));
-                            cs.showText(text);
-                            cs.endText();
+                    synchronized (docLock) {
+                        try {
+                            WatermarkEngine.apply(doc, style, from, to);
+                            PdfUpdater.save(doc, pdfIn, out, PdfUpdater.defaultIncremental());
+                        } finally {
+                            // Guardado sobre el original: save ya lo cerró y no se puede volver a usar
+                            if (doc.getDocument().isClosed()) { doc = null; renderer = null; }
                         }
                     }
-
-                    doc.save(out);
                     SwingUtilities.invokeLater(() -> {
                         mw.ok("PDF con marca guardado: " + out.getAbsolutePath());
-                        mw.getHistory().add("Marca de agua (preview)", List.of(pdfIn.getAbsolutePath()), out.getAbsolutePath());
+                        mw.addHistory("Marca de agua (preview)", List.of(pdfIn.getAbsolutePath()), out.getAbsolutePath());
                         mw.openIfWanted(out);
                         dispose();
                     });
@@ -280,6 +308,7 @@ public class WatermarkPreviewDialog extends JDialog {
     }
 
     private void doPrint() {
+        if (doc == null) return;
         try {
             final List<BufferedImage> imgs = new ArrayList<>();
             final int from, to;
@@ -290,11 +319,16 @@ public class WatermarkPreviewDialog extends JDialog {
                 from = sel; to = sel;
             }
 
+            final WatermarkEngine.Spec style = currentStyle();
             mw.runAsync(() -> {
                 try {
                     for (int i = from; i <= to; i++) {
-                        BufferedImage base = renderer.renderImageWithDPI(i, PREVIEW_DPI, ImageType.RGB);
-                        BufferedImage withWM = drawWatermarkOn(base, PREVIEW_DPI);
+                        BufferedImage base;
+                        synchronized (docLock) {
+                            if (renderer == null) return; // el diálogo se cerró mientras tanto
+                            base = renderer.renderImageWithDPI(i, PREVIEW_DPI, ImageType.RGB);
+                        }
+                        BufferedImage withWM = WatermarkEngine.drawOn(base, PREVIEW_DPI, style);
                         imgs.add(withWM);
                     }
                     PrintUtils.printThumbnails(imgs);
@@ -336,41 +370,78 @@ public class WatermarkPreviewDialog extends JDialog {
             setBackground(list.getBackground());
             setBorder(isSelected ? selBorder : noSelBorder);
 
-            previewLbl.setIcon(getThumbIcon(pageIndex));
+            previewLbl.setIcon(thumbLoader.get(list, new ThumbKey(pageIndex, thumbStyle), index));
             caption.setText("Página " + (index + 1));
             return this;
         }
     }
 
-    private ImageIcon getThumbIcon(int pageIndex) {
-        ImageIcon icon = thumbCache.get(pageIndex);
-        if (icon != null) return icon;
-
-        try {
-            final int BASE_DPI = 110;
-            BufferedImage page = renderer.renderImageWithDPI(pageIndex, BASE_DPI, ImageType.RGB);
-            BufferedImage withWM = drawWatermarkOn(page, BASE_DPI);
-
-            int w = THUMB_W;
-            int h = withWM.getHeight() * w / withWM.getWidth();
-            BufferedImage thumb = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
-            Graphics2D g2 = thumb.createGraphics();
-            g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-            g2.drawImage(withWM, 0, 0, w, h, null);
-            g2.dispose();
+    /** Miniatura con marca: la página reducida sale de la caché y solo se le pinta la marca encima. */
+    private BufferedImage renderThumb(ThumbKey k) throws Exception {
+        BufferedImage base = ImageThumbCache.get(
+                ImageThumbCache.key(this, k.page(), THUMB_W, 0, "base"), () -> renderThumbBase(k.page()));
+        if (base == null) return null;
+        float widthPt;
+        synchronized (docLock) {
+            if (doc == null) return null;
+            PDPage p = doc.getPage(k.page());
+            PDRectangle crop = p.getCropBox();
+            widthPt = (p.getRotation() % 180 == 0) ? crop.getWidth() : crop.getHeight();
+        }
+        return WatermarkEngine.drawOn(base, 72f * base.getWidth() / widthPt, k.style());
+    }
 
-            icon = new ImageIcon(thumb);
-            thumbCache.put(pageIndex, icon);
-            return icon;
-        } catch (Exception ex) {
-            BufferedImage blank = new BufferedImage(THUMB_W, (int)(THUMB_W*1.3), BufferedImage.TYPE_INT_ARGB);
-            return new ImageIcon(blank);
+    /** Página sin marca a {@code THUMB_DPI}, reducida a {@code THUMB_W} de ancho. */
+    private BufferedImage renderThumbBase(int pageIndex) throws Exception {
+        BufferedImage page;
+        synchronized (docLock) {
+            if (renderer == null) return null;
+            page = renderer.renderImageWithDPI(pageIndex, THUMB_DPI, ImageType.RGB);
         }
+        return scaleTo(page, THUMB_W, page.getHeight() * THUMB_W / page.getWidth());
+    }
+
+    /**
+     * Página sin marca a {@code PREVIEW_DPI}. Si no está, la renderiza en segundo plano, devuelve
+     * null y repinta al terminar. Si el render falla queda anotado y no se vuelve a pedir hasta que
+     * se mire otra página. Llamar en el EDT.
+     */
+    private BufferedImage previewBase(int pageIndex) {
+        BaseKey key = new BaseKey(pageIndex, PREVIEW_DPI);
+        BufferedImage img = bases.get(key);
+        if (img != null || key.equals(baseTicketKey) || key.equals(baseFailedKey)) return img;
+        baseFailedKey = null;
+        // La página que se miraba antes ya no hace falta
+        if (baseTicket != null) baseTicket.cancel();
+        baseTicketKey = key;
+        baseTicket = RenderScheduler.shared().submit(RenderScheduler.Lane.VISIBLE, this, pageIndex, PREVIEW_DPI, () -> {
+            synchronized (docLock) {
+                if (renderer == null) return null;
+                return renderer.renderImageWithDPI(pageIndex, PREVIEW_DPI, ImageType.RGB);
+            }
+        }, r -> {
+            baseTicketKey = null;
+            if (doc == null) return;
+            if (r != null) bases.put(key, r);
+            else baseFailedKey = key;
+            preview.repaint();
+        });
+        return null;
+    }
+
+    private static BufferedImage scaleTo(BufferedImage src, int w, int h) {
+        BufferedImage out = new BufferedImage(Math.max(1, w), Math.max(1, h), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = out.createGraphics();
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g2.drawImage(src, 0, 0, out.getWidth(), out.getHeight(), null);
+        g2.dispose();
+        return out;
     }
 
     private class Preview extends JPanel {
         private Rectangle lastDraw = new Rectangle();
+        private BufferedImage shownBase, scaled, scaledFrom;
 
         Preview(){
             setBackground(new Color(40,40,40));
@@ -400,56 +471,61 @@ public class WatermarkPreviewDialog extends JDialog {
             return true;
         }
 
+        /**
+         * La página se escala una vez por tamaño y zoom; cada repintado (p. ej. al arrastrar la
+         * marca) solo copia esa imagen y dibuja el texto encima.
+         */
         @Override protected void paintComponent(Graphics g) {
             super.paintComponent(g);
             if (doc == null) return;
             int sel = lstPages.getSelectedIndex();
             int pageIndex = Math.max(0, sel < 0 ? 0 : sel);
-            try {
-                BufferedImage base = renderer.renderImageWithDPI(pageIndex, PREVIEW_DPI, ImageType.RGB);
-                BufferedImage withWM = drawWatermarkOn(base, PREVIEW_DPI);
-
-                int availW = getWidth() - 40, availH = getHeight() - 40;
-                int w = (int) (base.getWidth() * zoom);
-                int h = (int) (base.getHeight()* zoom);
-                if (w > availW || h > availH) {
-                    double s = Math.min(availW/(double)w, availH/(double)h);
-                    w = (int) (w * s);
-                    h = (int) (h * s);
-                }
-                int x = (getWidth() - w)/2, y = (getHeight() - h)/2;
-                ((Graphics2D)g).setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-                g.drawImage(withWM, x, y, w, h, null);
-                lastDraw.setBounds(x, y, w, h);
-            } catch (Exception ignore) {}
-        }
-    }
 
-    private BufferedImage drawWatermarkOn(BufferedImage base, int dpi) {
-        BufferedImage copy = new BufferedImage(base.getWidth(), base.getHeight(), BufferedImage.TYPE_INT_RGB);
-        Graphics2D g2 = copy.createGraphics();
-        g2.drawImage(base, 0, 0, null);
-
-        g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
-        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-
-        String text = txtText.getText();
-        float fontSizePt = ((Number)spFont.getValue()).floatValue();
-        float fontSizePx = fontSizePt * dpi / 72f;
-        g2.setFont(g2.getFont().deriveFont(Font.BOLD, fontSizePx));
-        g2.setColor(color);
-        g2.setComposite(AlphaComposite.SrcOver.derive(sOpacity.getValue()/100f));
+            // Mientras se renderiza otra página se sigue mostrando la anterior
+            BufferedImage base = previewBase(pageIndex);
+            if (base == null && new BaseKey(pageIndex, PREVIEW_DPI).equals(baseFailedKey)) {
+                paintFailed(g, pageIndex);
+                return;
+            }
+            if (base == null) base = shownBase;
+            if (base == null) return;
+            shownBase = base;
+
+            int availW = getWidth() - 40, availH = getHeight() - 40;
+            int w = (int) (base.getWidth() * zoom);
+            int h = (int) (base.getHeight()* zoom);
+            if (w > availW || h > availH) {
+                double s = Math.min(availW/(double)w, availH/(double)h);
+                w = (int) (w * s);
+                h = (int) (h * s);
+            }
+            if (w <= 0 || h <= 0) return;
+            int x = (getWidth() - w)/2, y = (getHeight() - h)/2;
 
-        float px = (sX.getValue()/100f) * base.getWidth();
-        float py = (sY.getValue()/100f) * base.getHeight();
+            if (scaled == null || scaledFrom != base || scaled.getWidth() != w || scaled.getHeight() != h) {
+                scaled = scaleTo(base, w, h);
+                scaledFrom = base;
+            }
+            g.drawImage(scaled, x, y, null);
+            lastDraw.setBounds(x, y, w, h);
 
-        float angle = (float) Math.toRadians(sAngle.getValue());
-        g2.translate(px, py);
-        g2.rotate(angle);
-        g2.drawString(text, 0, 0);
+            Graphics2D g2 = (Graphics2D) g.create();
+            g2.translate(x, y);
+            WatermarkEngine.paint(g2, w, h, PREVIEW_DPI / 72f * w / base.getWidth(), currentStyle());
+            g2.dispose();
+        }
 
-        g2.dispose();
-        return copy;
+        /** Aviso en lugar de la página cuando su render falló. */
+        private void paintFailed(Graphics g, int pageIndex) {
+            Graphics2D g2 = (Graphics2D) g.create();
+            g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g2.setColor(new Color(130,130,130));
+            g2.setFont(getFont().deriveFont(Font.PLAIN, 14f));
+            String msg = "No se pudo renderizar la página " + (pageIndex + 1);
+            FontMetrics fm = g2.getFontMetrics();
+            g2.drawString(msg, (getWidth() - fm.stringWidth(msg)) / 2, getHeight() / 2);
+            g2.dispose();
+        }
     }
 
     private static class SimpleDocListener implements javax.swing.event.DocumentListener {
@@ -461,7 +537,13 @@ public class WatermarkPreviewDialog extends JDialog {
     }
 
     private void closeDoc() {
-        try { if (doc != null) doc.close(); } catch (Exception ignore) {}
-        doc = null; renderer = null;
+        thumbDebounce.stop();
+        bases.clear();
+        RenderScheduler.shared().cancelAll(this);
+        ImageThumbCache.forget(this);
+        synchronized (docLock) {
+            try { if (doc != null) doc.close(); } catch (Exception ignore) {}
+            doc = null; renderer = null;
+        }
     }
 }
@@ -1,6 +1,5 @@
 package com.mycompany.programa_pdf.dialogs.images;
 
-import java.awt.image.BufferedImage;
 import java.io.File;
 
 /** Modelo de ítem en la lista: puede ser una página del PDF o una imagen nueva. */
@@ -12,7 +11,6 @@ public class PageItem {
     public final int pdfPageIndex;    // si es página del PDF
     public final File imageFile;      // si es imagen externa
     public int rotation = 0;          // solo aplica a IMAGE_PAGE
-    public BufferedImage thumb, thumbRot; // cache de miniatura
 
     public PageItem(int pdfIndex) { this.kind = Kind.PDF_PAGE; this.pdfPageIndex = pdfIndex; this.imageFile = null; }
     public PageItem(File img)     { this.kind = Kind.IMAGE_PAGE; this.imageFile = img; this.pdfPageIndex = -1; }
@@ -21,6 +19,5 @@ public class PageItem {
     public void rotate(int delta) {
         if (kind != Kind.IMAGE_PAGE) return;
         rotation = ((rotation + delta) % 360 + 360) % 360;
-        thumbRot = null;
     }
 }
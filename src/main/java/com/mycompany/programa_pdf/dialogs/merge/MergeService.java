@@ -1,7 +1,7 @@
 package com.mycompany.programa_pdf.dialogs.merge;
 
-import org.apache.pdfbox.Loader;
-import org.apache.pdfbox.multipdf.PDFMergerUtility;
+import com.mycompany.programa_pdf.pdf.LazyMergedDocument;
+import com.mycompany.programa_pdf.pdf.PdfMerger;
 import org.apache.pdfbox.pdmodel.PDDocument;
 
 import java.io.File;
@@ -11,20 +11,17 @@ import java.util.List;
 /** Servicio para unir PDFs (en memoria o a archivo). */
 public final class MergeService {
 
-    /** Une los PDFs en un PDDocument en memoria. Debe cerrarse por el caller. */
+    /**
+     * Une los PDFs en un PDDocument sin copiar páginas (ver {@link LazyMergedDocument}): abre al
+     * instante aunque las entradas sean grandes. Debe cerrarse por el caller (cierra los orígenes).
+     */
     public PDDocument mergeInMemory(List<File> pdfs) throws IOException {
-        PDDocument target = new PDDocument();
-        PDFMergerUtility util = new PDFMergerUtility();
-        for (File f : pdfs) {
-            try (PDDocument src = Loader.loadPDF(f)) {
-                util.appendDocument(target, src);
-            }
-        }
-        return target;
+        return LazyMergedDocument.open(pdfs);
     }
 
     /** Une y guarda directamente en archivo. Devuelve el mismo File. */
     public File mergeToFile(List<File> pdfs, File out) throws IOException {
+        if (PdfMerger.isLarge(pdfs)) return PdfMerger.mergeStreaming(pdfs, out);
         try (PDDocument merged = mergeInMemory(pdfs)) {
             merged.save(out);
         }
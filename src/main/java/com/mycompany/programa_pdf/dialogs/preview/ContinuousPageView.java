@@ -0,0 +1,369 @@
+package com.mycompany.programa_pdf.dialogs.preview;
+
+import javax.swing.*;
+import javax.swing.event.ChangeListener;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+
+/**
+ * Vista continua: todas las páginas una debajo de otra, dentro de un {@link JScrollPane}.
+ *
+ * <p>Las páginas no son componentes: se calcula en qué posición cae cada una y solo se pintan las
+ * visibles. Se rasterizan las visibles y unas cuantas por delante en el sentido del scroll; cuántas
+ * depende de la velocidad (a más velocidad, más páginas por delante). Las imágenes de páginas que
+ * quedaron lejos se sueltan. Mientras una página no está, se muestra su miniatura si ya existe o
+ * un recuadro en blanco.</p>
+ *
+ * <p>Un solo hilo de render: el {@link Source} suele compartir el documento con otros usos.</p>
+ */
+public final class ContinuousPageView extends JComponent implements Scrollable {
+
+    private static final int GAP = 12;
+    private static final int MARGIN = 20;
+    private static final int MAX_FULL_PX = 2400;
+    private static final int KEEP_BEHIND = 1;    // páginas que se conservan detrás de la vista
+    private static final int MAX_AHEAD = 8;      // páginas por delante como máximo
+    private static final double LOOKAHEAD_S = 0.75;
+    private static final long VELOCITY_IDLE_MS = 300;
+
+    /** Renderiza la página completa (se llama fuera del EDT). */
+    @FunctionalInterface
+    public interface Source { BufferedImage render(int page, float dpi) throws IOException; }
+
+    private record Raster(BufferedImage img, int dpi) {}
+
+    private final Source source;
+    private final float[] widthPt, heightPt;
+    private final int screenDpi;
+    private final IntFunction<BufferedImage> placeholder;
+    private final IntConsumer onPageChange;
+
+    private float zoom = 1f;
+    private int[] top = new int[0];  // y de cada página
+    private int contentW, contentH;
+
+    // Solo EDT
+    private final Map<Integer, Raster> rasters = new HashMap<>();
+    private int currentPage = -1;
+    private int lastY = Integer.MIN_VALUE;
+    private long lastScrollNanos;
+    private double velocity; // px/s, positivo hacia abajo
+
+    // Compartido con el hilo de render
+    private final Map<Integer, Integer> pending = new LinkedHashMap<>(); // página -> dpi, en orden de prioridad
+    private long rendering = -1; // página * 1000 + dpi en curso
+    private final int[] generation;  // por página; cambia con pageChanged y descarta renders viejos
+    private Thread worker;
+    private boolean closed;
+
+    private final ChangeListener viewportListener = e -> onScroll();
+
+    /**
+     * @param widthPt      ancho visible de cada página en puntos (CropBox girado); se leen al
+     *                     maquetar, ver {@link #pageChanged}
+     * @param placeholder  imagen provisoria de una página (p. ej. su miniatura) o null
+     * @param onPageChange página que ocupa el centro de la vista (en el EDT)
+     */
+    public ContinuousPageView(Source source, float[] widthPt, float[] heightPt, int screenDpi,
+                              IntFunction<BufferedImage> placeholder, IntConsumer onPageChange) {
+        this.source = source;
+        this.widthPt = widthPt;
+        this.heightPt = heightPt;
+        this.screenDpi = screenDpi;
+        this.placeholder = placeholder;
+        this.onPageChange = onPageChange;
+        this.generation = new int[widthPt.length];
+        setOpaque(true);
+        setBackground(new Color(40, 40, 40));
+        layoutPages();
+    }
+
+    /* ============== API (EDT) ============== */
+
+    /** Cambia el zoom (1 = 100 %) manteniendo a la vista el mismo punto de la página actual. */
+    public void setZoom(float z) {
+        if (Math.abs(z - zoom) < 0.0005f && top.length == widthPt.length) return;
+        int anchor = Math.max(0, currentPage);
+        double frac = 0;
+        Rectangle vis = getVisibleRect();
+        if (anchor < top.length && pageHeightPx(anchor) > 0) {
+            frac = (vis.y - top[anchor]) / (double) pageHeightPx(anchor);
+        }
+        zoom = z;
+        layoutPages();
+        final double f = frac;
+        SwingUtilities.invokeLater(() ->
+                scrollToY(top[anchor] + (int) Math.round(f * pageHeightPx(anchor))));
+    }
+
+    public void scrollToPage(int page) {
+        if (page < 0 || page >= top.length) return;
+        scrollToY(top[page] - GAP);
+    }
+
+    /**
+     * La página cambió de tamaño o de contenido (p. ej. se rotó). Un render de esa página en curso
+     * se descarta al terminar.
+     */
+    public void pageChanged(int page) {
+        rasters.remove(page);
+        synchronized (this) {
+            if (page >= 0 && page < generation.length) generation[page]++;
+            pending.remove(page);
+            if (rendering / 1000 == page) rendering = -1; // que schedule() la vuelva a pedir
+        }
+        layoutPages();
+    }
+
+    public int getCurrentPage() { return Math.max(0, currentPage); }
+
+    /** Deja de renderizar y suelta las imágenes. */
+    public void close() {
+        rasters.clear();
+        synchronized (this) {
+            closed = true;
+            pending.clear();
+        }
+    }
+
+    @Override public void addNotify() {
+        super.addNotify();
+        if (getParent() instanceof JViewport vp) vp.addChangeListener(viewportListener);
+        SwingUtilities.invokeLater(this::schedule);
+    }
+
+    @Override public void removeNotify() {
+        if (getParent() instanceof JViewport vp) vp.removeChangeListener(viewportListener);
+        super.removeNotify();
+    }
+
+    /* ============== Maquetado ============== */
+
+    private float pxPerPt() { return screenDpi * zoom / 72f; }
+
+    private int pageWidthPx(int i)  { return Math.max(1, Math.round(widthPt[i] * pxPerPt())); }
+    private int pageHeightPx(int i) { return Math.max(1, Math.round(heightPt[i] * pxPerPt())); }
+
+    private void layoutPages() {
+        int n = widthPt.length;
+        top = new int[n];
+        int y = MARGIN, maxW = 1;
+        for (int i = 0; i < n; i++) {
+            top[i] = y;
+            y += pageHeightPx(i) + GAP;
+            maxW = Math.max(maxW, pageWidthPx(i));
+        }
+        contentW = maxW + 2 * MARGIN;
+        contentH = y - GAP + MARGIN;
+        setPreferredSize(new Dimension(contentW, contentH));
+        revalidate();
+        repaint();
+        SwingUtilities.invokeLater(this::schedule); // tras el revalidate, con la vista ya ubicada
+    }
+
+    /** Primera página cuyo borde inferior pasa de {@code y}. */
+    private int pageAt(int y) {
+        int lo = 0, hi = top.length - 1, ans = top.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (top[mid] + pageHeightPx(mid) >= y) { ans = mid; hi = mid - 1; }
+            else lo = mid + 1;
+        }
+        return Math.max(0, ans);
+    }
+
+    private void scrollToY(int y) {
+        if (!(getParent() instanceof JViewport vp)) return;
+        int maxY = Math.max(0, getHeight() - vp.getExtentSize().height);
+        Point p = vp.getViewPosition();
+        vp.setViewPosition(new Point(p.x, Math.max(0, Math.min(maxY, y))));
+    }
+
+    /** DPI de la imagen: el del zoom, redondeado, hasta 240 y sin pasar de {@code MAX_FULL_PX}. */
+    private int rasterDpi(int i) {
+        int snapped = Math.round(screenDpi * zoom / 12f) * 12;
+        int dpi = Math.max(24, Math.min(240, snapped));
+        int cap = (int) (MAX_FULL_PX * 72f / Math.max(1f, Math.max(widthPt[i], heightPt[i])));
+        return Math.max(12, Math.min(dpi, cap));
+    }
+
+    /* ============== Scroll y prefetch ============== */
+
+    private void onScroll() {
+        int y = getVisibleRect().y;
+        long now = System.nanoTime();
+        if (lastY != Integer.MIN_VALUE) {
+            double dt = (now - lastScrollNanos) / 1e9;
+            if (dt > 0) {
+                double v = (y - lastY) / dt;
+                // Suavizado; tras una pausa se parte de cero
+                velocity = (dt * 1000 > VELOCITY_IDLE_MS) ? v : 0.6 * velocity + 0.4 * v;
+            }
+        }
+        lastY = y;
+        lastScrollNanos = now;
+        schedule();
+    }
+
+    /**
+     * Encola las páginas visibles (del centro hacia afuera) y las de adelante en el sentido del
+     * scroll; suelta las imágenes que quedaron fuera de esa ventana. Se llama al hacer scroll,
+     * cambiar el tamaño de la vista o maquetar, nunca desde el pintado.
+     */
+    private void schedule() {
+        if (top.length == 0) return;
+        Rectangle vis = getVisibleRect();
+        if (vis.height <= 0) return;
+
+        int first = pageAt(vis.y);
+        int last = pageAt(vis.y + vis.height);
+        int center = pageAt(vis.y + vis.height / 2);
+        if (center != currentPage) {
+            currentPage = center;
+            if (onPageChange != null) onPageChange.accept(center);
+        }
+
+        boolean idle = (System.nanoTime() - lastScrollNanos) / 1_000_000 > VELOCITY_IDLE_MS;
+        double v = idle ? 0 : velocity;
+        int dir = (v < 0) ? -1 : 1;
+        double avgH = Math.max(1, (double) contentH / top.length);
+        int ahead = 1 + (int) Math.min(MAX_AHEAD - 1, Math.abs(v) * LOOKAHEAD_S / avgH);
+
+        LinkedHashMap<Integer, Integer> want = new LinkedHashMap<>();
+        want.put(center, rasterDpi(center));
+        for (int d = 1; center - d >= first || center + d <= last; d++) {
+            if (center + d <= last)  want.put(center + d, rasterDpi(center + d));
+            if (center - d >= first) want.put(center - d, rasterDpi(center - d));
+        }
+        int edge = (dir > 0) ? last : first;
+        for (int k = 1; k <= ahead; k++) {
+            int p = edge + dir * k;
+            if (p >= 0 && p < top.length) want.put(p, rasterDpi(p));
+        }
+        int back = (dir > 0) ? first - KEEP_BEHIND : last + KEEP_BEHIND;
+        if (back >= 0 && back < top.length) want.put(back, rasterDpi(back));
+
+        // Soltar lo que quedó lejos
+        rasters.keySet().removeIf(p -> !want.containsKey(p));
+
+        synchronized (this) {
+            pending.clear();
+            for (Map.Entry<Integer, Integer> e : want.entrySet()) {
+                Raster r = rasters.get(e.getKey());
+                boolean inFlight = rendering == e.getKey() * 1000L + e.getValue();
+                if (!inFlight && (r == null || r.dpi() != e.getValue())) pending.put(e.getKey(), e.getValue());
+            }
+            if (!pending.isEmpty() && worker == null && !closed) {
+                worker = new Thread(this::workLoop, "preview-pages");
+                worker.setDaemon(true);
+                worker.start();
+            }
+        }
+    }
+
+    private void workLoop() {
+        while (true) {
+            int page, dpi, gen;
+            synchronized (this) {
+                if (closed || pending.isEmpty()) { worker = null; return; }
+                Iterator<Map.Entry<Integer, Integer>> it = pending.entrySet().iterator();
+                Map.Entry<Integer, Integer> e = it.next();
+                it.remove();
+                page = e.getKey();
+                dpi = e.getValue();
+                rendering = page * 1000L + dpi;
+                gen = generation[page];
+            }
+
+            BufferedImage img;
+            try {
+                img = source.render(page, dpi);
+            } catch (Throwable ex) {
+                img = null; // se vuelve a pedir si sigue a la vista
+            }
+            if (img == null) {
+                synchronized (this) { rendering = -1; }
+                continue;
+            }
+
+            final BufferedImage done = img;
+            SwingUtilities.invokeLater(() -> {
+                synchronized (this) {
+                    if (rendering == page * 1000L + dpi) rendering = -1;
+                    if (closed || generation[page] != gen) return; // la página cambió mientras tanto
+                }
+                // Solo si todavía se quiere (no se soltó mientras se renderizaba)
+                if (page < top.length && rasterDpi(page) == dpi && isNearView(page)) {
+                    rasters.put(page, new Raster(done, dpi));
+                    repaint(pageBounds(page));
+                }
+            });
+        }
+    }
+
+    private boolean isNearView(int page) {
+        Rectangle vis = getVisibleRect();
+        int first = pageAt(vis.y), last = pageAt(vis.y + vis.height);
+        return page >= first - KEEP_BEHIND - MAX_AHEAD && page <= last + MAX_AHEAD;
+    }
+
+    private Rectangle pageBounds(int i) {
+        int w = pageWidthPx(i);
+        return new Rectangle((getWidth() - w) / 2, top[i], w, pageHeightPx(i));
+    }
+
+    /* ============== Pintado ============== */
+
+    @Override protected void paintComponent(Graphics g) {
+        Graphics2D g2 = (Graphics2D) g.create();
+        g2.setColor(getBackground());
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) clip = getVisibleRect();
+        g2.fillRect(clip.x, clip.y, clip.width, clip.height);
+        if (top.length == 0) { g2.dispose(); return; }
+
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        int first = pageAt(clip.y);
+        for (int i = first; i < top.length && top[i] <= clip.y + clip.height; i++) {
+            Rectangle b = pageBounds(i);
+            Raster r = rasters.get(i);
+            BufferedImage img = (r != null) ? r.img() : (placeholder != null ? placeholder.apply(i) : null);
+            if (img != null) {
+                g2.drawImage(img, b.x, b.y, b.width, b.height, null);
+            } else {
+                g2.setColor(Color.WHITE);
+                g2.fillRect(b.x, b.y, b.width, b.height);
+                g2.setColor(Color.GRAY);
+                g2.drawString("Página " + (i + 1), b.x + 12, b.y + 22);
+            }
+        }
+        g2.dispose();
+    }
+
+    /* ============== Scrollable ============== */
+
+    @Override public Dimension getPreferredScrollableViewportSize() { return getPreferredSize(); }
+
+    @Override public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return 32;
+    }
+
+    @Override public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return (orientation == SwingConstants.VERTICAL) ? visibleRect.height - 32 : visibleRect.width - 32;
+    }
+
+    @Override public boolean getScrollableTracksViewportWidth() {
+        return getParent() instanceof JViewport vp && vp.getWidth() > contentW;
+    }
+
+    @Override public boolean getScrollableTracksViewportHeight() {
+        return getParent() instanceof JViewport vp && vp.getHeight() > contentH;
+    }
+}
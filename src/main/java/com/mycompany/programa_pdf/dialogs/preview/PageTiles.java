@@ -0,0 +1,207 @@
+package com.mycompany.programa_pdf.dialogs.preview;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Render por mosaicos para zoom alto: solo se rasterizan los cuadros de {@code TILE} px que caen
+ * en la parte visible, al DPI exacto del zoom, y se guardan en una LRU acotada por bytes.
+ *
+ * <p>Uso desde {@code paintComponent}: con el Graphics trasladado al origen de la página,
+ * {@link #paint} dibuja los mosaicos que ya están y encola los que faltan (los del centro de la
+ * vista primero). Cada pedido reemplaza al anterior, así al hacer scroll o zoom no se siguen
+ * renderizando cuadros que ya no se ven. Al terminar un cuadro se llama a {@code onTileReady} en
+ * el EDT para repintar.</p>
+ *
+ * <p>Un solo hilo de render: el {@link Source} suele compartir el documento con otros usos.</p>
+ *
+ * <pre>
+ * programa_pdf.preview.tileMB   memoria para mosaicos   (por defecto 64)
+ * </pre>
+ */
+public final class PageTiles {
+
+    public static final int TILE = 256;
+
+    private static final long MB = 1024L * 1024;
+
+    /** Dibuja la página completa en {@code g} a {@code scale} (px por punto PDF). */
+    @FunctionalInterface
+    public interface Source { void render(int page, Graphics2D g, float scale) throws IOException; }
+
+    /** Mosaico de una página a un DPI (en centésimas, para que zooms casi iguales compartan). */
+    private record Key(int page, int dpiKey, int col, int row) {}
+
+    /** {@code gen}: generación de la página al encolar; si cambió, el resultado se descarta. */
+    private record Request(Key key, float dpi, int x, int y, int w, int h, int gen) {}
+
+    private final Source source;
+    private final Runnable onTileReady;
+    private final long maxBytes;
+
+    private final Map<Key, BufferedImage> tiles = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<Key, Request> pending = new LinkedHashMap<>();
+    private final Map<Integer, Integer> generations = new HashMap<>(); // página -> invalidaciones
+    private long bytes;
+    private Key rendering;
+    private Thread worker;
+    private boolean closed;
+
+    public PageTiles(Source source, Runnable onTileReady) {
+        this.source = source;
+        this.onTileReady = onTileReady;
+        long mb;
+        try { mb = Math.max(8, Long.parseLong(System.getProperty("programa_pdf.preview.tileMB", "").trim())); }
+        catch (NumberFormatException e) { mb = 64; }
+        this.maxBytes = mb * MB;
+    }
+
+    /**
+     * Dibuja los mosaicos disponibles de la página (de {@code pageW}x{@code pageH} px a {@code dpi})
+     * que tocan {@code visible}, en coordenadas de página, y encola los que faltan.
+     *
+     * @return true si estaban todos
+     */
+    public boolean paint(Graphics2D g, int page, float dpi, int pageW, int pageH, Rectangle visible) {
+        Rectangle area = visible.intersection(new Rectangle(0, 0, pageW, pageH));
+        if (area.isEmpty()) return true;
+
+        int dpiKey = Math.round(dpi * 100);
+        int c0 = area.x / TILE, c1 = (area.x + area.width - 1) / TILE;
+        int r0 = area.y / TILE, r1 = (area.y + area.height - 1) / TILE;
+
+        List<Request> missing = new ArrayList<>();
+        synchronized (this) {
+            int gen = generations.getOrDefault(page, 0);
+            for (int r = r0; r <= r1; r++) {
+                for (int c = c0; c <= c1; c++) {
+                    Key k = new Key(page, dpiKey, c, r);
+                    BufferedImage img = tiles.get(k);
+                    int x = c * TILE, y = r * TILE;
+                    if (img != null) {
+                        g.drawImage(img, x, y, null);
+                    } else {
+                        missing.add(new Request(k, dpi, x, y, Math.min(TILE, pageW - x), Math.min(TILE, pageH - y), gen));
+                    }
+                }
+            }
+
+            // Del centro de la vista hacia afuera
+            double cx = area.getCenterX(), cy = area.getCenterY();
+            missing.sort(Comparator.comparingDouble(q ->
+                    Math.hypot(q.x() + q.w() / 2.0 - cx, q.y() + q.h() / 2.0 - cy)));
+            pending.clear();
+            for (Request q : missing) {
+                if (!q.key().equals(rendering)) pending.put(q.key(), q);
+            }
+            if (!pending.isEmpty()) startWorker();
+        }
+        return missing.isEmpty();
+    }
+
+    /**
+     * Descarta los mosaicos de una página (p. ej. al rotarla). Un mosaico de esa página que se esté
+     * renderizando se tira al terminar.
+     */
+    public synchronized void invalidate(int page) {
+        generations.merge(page, 1, Integer::sum);
+        if (rendering != null && rendering.page() == page) rendering = null; // que se pueda volver a pedir
+        pending.keySet().removeIf(k -> k.page() == page);
+        for (Iterator<Map.Entry<Key, BufferedImage>> it = tiles.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Key, BufferedImage> e = it.next();
+            if (e.getKey().page() == page) {
+                bytes -= sizeOf(e.getValue());
+                it.remove();
+            }
+        }
+    }
+
+    /** Deja de renderizar y libera los mosaicos. */
+    public synchronized void close() {
+        closed = true;
+        pending.clear();
+        tiles.clear();
+        bytes = 0;
+    }
+
+    /* ============== Hilo ============== */
+
+    private void startWorker() {
+        if (worker != null || closed) return;
+        worker = new Thread(this::workLoop, "preview-tiles");
+        worker.setDaemon(true);
+        worker.setPriority(Thread.NORM_PRIORITY - 1);
+        worker.start();
+    }
+
+    private void workLoop() {
+        while (true) {
+            Request q;
+            synchronized (this) {
+                if (closed || pending.isEmpty()) { worker = null; return; }
+                Iterator<Request> it = pending.values().iterator();
+                q = it.next();
+                it.remove();
+                rendering = q.key();
+            }
+
+            BufferedImage img;
+            try {
+                img = renderTile(q);
+            } catch (Throwable ex) {
+                synchronized (this) { if (q.key().equals(rendering)) rendering = null; }
+                continue; // se volverá a pedir en el próximo repintado
+            }
+
+            synchronized (this) {
+                if (q.key().equals(rendering)) rendering = null;
+                if (closed) { worker = null; return; }
+                if (generations.getOrDefault(q.key().page(), 0) != q.gen()) continue; // página cambiada
+                BufferedImage old = tiles.put(q.key(), img);
+                if (old != null) bytes -= sizeOf(old);
+                bytes += sizeOf(img);
+                evict();
+            }
+            SwingUtilities.invokeLater(onTileReady);
+        }
+    }
+
+    private BufferedImage renderTile(Request q) throws IOException {
+        BufferedImage img = new BufferedImage(Math.max(1, q.w()), Math.max(1, q.h()), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        try {
+            // PDFBox limpia la página con el color de fondo del Graphics (negro por defecto)
+            g.setBackground(Color.WHITE);
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, img.getWidth(), img.getHeight());
+            g.clipRect(0, 0, img.getWidth(), img.getHeight());
+            g.translate(-q.x(), -q.y());
+            source.render(q.key().page(), g, q.dpi() / 72f);
+        } finally {
+            g.dispose();
+        }
+        return img;
+    }
+
+    /** Quita los menos usados hasta entrar en el tope. Llamar con el candado. */
+    private void evict() {
+        Iterator<Map.Entry<Key, BufferedImage>> it = tiles.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            bytes -= sizeOf(it.next().getValue());
+            it.remove();
+        }
+    }
+
+    private static long sizeOf(BufferedImage img) {
+        return 4L * img.getWidth() * img.getHeight();
+    }
+}
@@ -0,0 +1,172 @@
+package com.mycompany.programa_pdf.images;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Lee solo la cabecera de una imagen: tamaño, formato y orientación EXIF, sin decodificar píxeles.
+ *
+ * <p>Los JPEG se resuelven recorriendo sus marcadores (APP1/EXIF y SOF); el resto con
+ * {@link ImageReader#getWidth(int)}/{@link ImageReader#getHeight(int)}. Los resultados se
+ * guardan por ruta + fecha de modificación + tamaño, así un archivo editado se vuelve a leer.</p>
+ */
+public final class ImageProbe {
+
+    /**
+     * @param orientation       valor EXIF 1..8 (1 = normal; 1 si no hay EXIF)
+     * @param components        componentes de color del JPEG (0 si no se conoce)
+     * @param bitsPerComponent  precisión del JPEG (0 si no se conoce)
+     * @param dctPassThrough    true si el JPEG puede insertarse tal cual en un PDF (DCTDecode)
+     */
+    public record Info(int width, int height, String format, int orientation,
+                       int components, int bitsPerComponent, boolean dctPassThrough) {
+
+        /** Rotación en grados (horaria) que indica la orientación EXIF; los espejos se ignoran. */
+        public int exifRotation() {
+            return switch (orientation) {
+                case 3, 4 -> 180;
+                case 5, 6 -> 90;
+                case 7, 8 -> 270;
+                default -> 0;
+            };
+        }
+
+        /** Ancho tras aplicar una rotación de múltiplos de 90°. */
+        public int rotatedWidth(int rotation)  { return swaps(rotation) ? height : width; }
+        public int rotatedHeight(int rotation) { return swaps(rotation) ? width : height; }
+
+        private static boolean swaps(int rotation) { return ((rotation % 180) + 180) % 180 == 90; }
+    }
+
+    private record Key(String path, long modified, long length) {}
+
+    private static final int MAX_ENTRIES = 4096;
+
+    private static final Map<Key, Info> CACHE = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<Key, Info> e) { return size() > MAX_ENTRIES; }
+    };
+
+    private ImageProbe() {}
+
+    public static Info probe(File file) throws IOException {
+        if (file == null || !file.isFile()) throw new IOException("Imagen no encontrada: " + file);
+        Key key = new Key(file.getAbsolutePath(), file.lastModified(), file.length());
+        synchronized (CACHE) {
+            Info hit = CACHE.get(key);
+            if (hit != null) return hit;
+        }
+
+        Info info = probeJpeg(file);
+        if (info == null) info = probeWithReader(file);
+
+        synchronized (CACHE) { CACHE.put(key, info); }
+        return info;
+    }
+
+    /* ============== ImageReader (cualquier formato) ============== */
+
+    private static Info probeWithReader(File file) throws IOException {
+        try (ImageInputStream iis = ImageIO.createImageInputStream(file)) {
+            if (iis == null) throw new IOException("No se pudo abrir: " + file.getAbsolutePath());
+            Iterator<ImageReader> it = ImageIO.getImageReaders(iis);
+            if (!it.hasNext()) throw new IOException("Formato de imagen no soportado: " + file.getName());
+            ImageReader reader = it.next();
+            try {
+                reader.setInput(iis, true, true);
+                String fmt = reader.getFormatName().toLowerCase(Locale.ROOT);
+                if (fmt.equals("jpg")) fmt = "jpeg";
+                return new Info(reader.getWidth(0), reader.getHeight(0), fmt, 1, 0, 0, false);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /* ============== JPEG (marcadores) ============== */
+
+    /**
+     * Recorre los marcadores hasta el SOF. Devuelve null si no es JPEG o si el SOF no es de los
+     * habituales (en ese caso se usa ImageReader).
+     */
+    private static Info probeJpeg(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath()), 8192))) {
+            if (in.readUnsignedByte() != 0xFF || in.readUnsignedByte() != 0xD8) return null;
+            int orientation = 1;
+            while (true) {
+                if (in.readUnsignedByte() != 0xFF) return null;
+                int marker = in.readUnsignedByte();
+                while (marker == 0xFF) marker = in.readUnsignedByte(); // relleno
+                if (marker == 0xD8 || (marker >= 0xD0 && marker <= 0xD7) || marker == 0x01) continue;
+                if (marker == 0xD9 || marker == 0xDA) return null;     // fin / datos sin SOF
+
+                int len = in.readUnsignedShort();
+                if (len < 2) return null;
+
+                if (marker == 0xE1) {
+                    byte[] seg = new byte[len - 2];
+                    in.readFully(seg);
+                    int o = exifOrientation(seg);
+                    if (o > 0) orientation = o;
+                } else if (marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+                    int precision = in.readUnsignedByte();
+                    int height = in.readUnsignedShort();
+                    int width = in.readUnsignedShort();
+                    int comps = in.readUnsignedByte();
+                    if (width <= 0 || height <= 0) return null; // altura en DNL: poco común
+                    // Solo baseline, extendido y progresivo con Huffman van tal cual a DCTDecode
+                    boolean dct = marker <= 0xC2 && precision == 8 && (comps == 1 || comps == 3);
+                    return new Info(width, height, "jpeg", orientation, comps, precision, dct);
+                } else {
+                    in.skipNBytes(len - 2);
+                }
+            }
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    /** Busca la etiqueta 0x0112 (Orientation) en el IFD0 de un segmento APP1 "Exif". Devuelve 0 si no está. */
+    private static int exifOrientation(byte[] seg) {
+        if (seg.length < 14 || seg[0] != 'E' || seg[1] != 'x' || seg[2] != 'i' || seg[3] != 'f') return 0;
+        int t = 6; // inicio de la cabecera TIFF
+        boolean le;
+        if (seg[t] == 'I' && seg[t + 1] == 'I') le = true;
+        else if (seg[t] == 'M' && seg[t + 1] == 'M') le = false;
+        else return 0;
+
+        int ifd = t + u32(seg, t + 4, le);
+        if (ifd < t || ifd + 2 > seg.length) return 0;
+        int count = u16(seg, ifd, le);
+        for (int i = 0; i < count; i++) {
+            int e = ifd + 2 + i * 12;
+            if (e + 12 > seg.length) return 0;
+            if (u16(seg, e, le) == 0x0112) {
+                int v = u16(seg, e + 8, le);
+                return (v >= 1 && v <= 8) ? v : 0;
+            }
+        }
+        return 0;
+    }
+
+    private static int u16(byte[] b, int off, boolean le) {
+        int a = b[off] & 0xFF, c = b[off + 1] & 0xFF;
+        return le ? (a | c << 8) : (a << 8 | c);
+    }
+
+    private static int u32(byte[] b, int off, boolean le) {
+        if (off + 4 > b.length) return Integer.MAX_VALUE / 2;
+        return le ? (u16(b, off, true) | u16(b, off + 2, true) << 16)
+                  : (u16(b, off, false) << 16 | u16(b, off + 2, false));
+    }
+}
@@ -4,25 +4,346 @@ import org.apache.pdfbox.rendering.ImageType;
 import org.apache.pdfbox.rendering.PDFRenderer;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.prefs.Preferences;
 
-/** Utilidades para miniaturas y rotaciones de imágenes y páginas PDF. */
+/**
+ * Miniaturas de imágenes y páginas PDF: generación, rotación y la caché común de la aplicación.
+ *
+ * <p><b>Caché en memoria:</b> LRU acotada por bytes de píxeles (no por cantidad), compartida por
+ * todas las listas y diálogos. La clave es {@link Key}: origen + fecha/tamaño del archivo + página
+ * + caja de destino + variante (rotación, estilo...). Un archivo editado cambia de clave solo.
+ * Para documentos que solo existen en memoria la clave usa la identidad del objeto.</p>
+ *
+ * <p><b>Caché en disco (opcional):</b> PNG bajo {@code ~/.programa_pdf/thumbs}, solo para claves
+ * de archivo, así reabrir los mismos PDF no vuelve a renderizar. Se activa desde el menú Ver o con
+ * {@code -Dprograma_pdf.thumbs.disk=true}.</p>
+ *
+ * <pre>
+ * programa_pdf.thumbs.memMB   memoria máxima para miniaturas     (por defecto 64)
+ * programa_pdf.thumbs.diskMB  espacio máximo en disco            (por defecto 256)
+ * programa_pdf.thumbs.disk    true/false: fuerza la caché en disco (por defecto, la preferencia)
+ * </pre>
+ */
 public final class ImageThumbCache {
 
     private ImageThumbCache() {}
 
+    /* ============== Caché ============== */
+
+    /**
+     * Clave de una miniatura.
+     *
+     * @param source   ruta absoluta ({@code file:...}) o identidad de un documento en memoria ({@code mem:...})
+     * @param modified fecha de modificación del archivo (0 en memoria)
+     * @param length   tamaño del archivo en bytes (0 en memoria)
+     * @param page     página (0-based) o -1 si es una imagen
+     * @param width    ancho de la caja de destino
+     * @param height   alto de la caja de destino
+     * @param variant  todo lo demás que cambia el resultado (rotación, marca de agua...)
+     */
+    public record Key(String source, long modified, long length, int page, int width, int height, String variant) {
+        boolean onDisk() { return source.startsWith("file:"); }
+    }
+
+    /** Genera la miniatura cuando no está en ninguna caché. */
+    @FunctionalInterface
+    public interface Source { BufferedImage load() throws Exception; }
+
+    private static final String PROP = "programa_pdf.thumbs.";
+    private static final String PREF_NODE = "com.mycompany.programa_pdf";
+    private static final String PREF_DISK = "thumbs.disk";
+    private static final File DISK_DIR = new File(System.getProperty("user.home"), ".programa_pdf/thumbs");
+    private static final int TRIM_EVERY = 64; // escrituras entre recortes del directorio
+
+    private static final long MAX_BYTES = longProp("memMB", 64) * 1024 * 1024;
+    private static final long MAX_DISK_BYTES = longProp("diskMB", 256) * 1024 * 1024;
+
+    private static final LinkedHashMap<Key, BufferedImage> MEMORY = new LinkedHashMap<>(256, 0.75f, true);
+    private static long memoryBytes = 0;
+
+    private static final Map<Object, Long> DOC_IDS = new WeakHashMap<>();
+    private static long nextDocId = 1;
+
+    private static volatile Boolean diskEnabled;
+    private static int writesSinceTrim = TRIM_EVERY; // recortar en la primera escritura
+
+    /** Clave para una página ({@code page >= 0}) o imagen ({@code page = -1}) de un archivo. */
+    public static Key key(File file, int page, int width, int height, String variant) {
+        return new Key("file:" + file.getAbsolutePath(), file.lastModified(), file.length(),
+                page, width, height, variant);
+    }
+
+    /** Clave para un documento abierto solo en memoria (nunca va a disco). */
+    public static Key key(Object document, int page, int width, int height, String variant) {
+        long id;
+        synchronized (DOC_IDS) {
+            id = DOC_IDS.computeIfAbsent(document, d -> nextDocId++);
+        }
+        return new Key("mem:" + id, 0, 0, page, width, height, variant);
+    }
+
+    /** Solo memoria; no bloquea (apto para el EDT). */
+    public static BufferedImage peek(Key key) {
+        synchronized (MEMORY) { return MEMORY.get(key); }
+    }
+
+    /** Busca en memoria, luego en disco y si no, genera con {@code source}. Llamar fuera del EDT. */
+    public static BufferedImage get(Key key, Source source) throws Exception {
+        BufferedImage img = peek(key);
+        if (img != null) return img;
+
+        if (key.onDisk() && isDiskEnabled()) {
+            img = readDisk(key);
+            if (img != null) { put(key, img); return img; }
+        }
+
+        img = source.load();
+        if (img == null) return null;
+        put(key, img);
+        if (key.onDisk() && isDiskEnabled()) writeDisk(key, img);
+        return img;
+    }
+
+    public static void put(Key key, BufferedImage img) {
+        long size = bytes(img);
+        if (size > MAX_BYTES) return;
+        synchronized (MEMORY) {
+            BufferedImage old = MEMORY.put(key, img);
+            if (old != null) memoryBytes -= bytes(old);
+            memoryBytes += size;
+            for (Iterator<BufferedImage> it = MEMORY.values().iterator(); memoryBytes > MAX_BYTES && it.hasNext(); ) {
+                memoryBytes -= bytes(it.next());
+                it.remove();
+            }
+        }
+    }
+
+    /** Saca de memoria todas las miniaturas de un archivo (las de disco quedan: su clave incluye la fecha). */
+    public static void forget(File file) {
+        removeSource("file:" + file.getAbsolutePath());
+    }
+
+    /** Saca de memoria las miniaturas de un documento en memoria (p. ej. al cerrarlo). */
+    public static void forget(Object document) {
+        Long id;
+        synchronized (DOC_IDS) { id = DOC_IDS.remove(document); }
+        if (id != null) removeSource("mem:" + id);
+    }
+
+    private static void removeSource(String source) {
+        synchronized (MEMORY) {
+            for (Iterator<Map.Entry<Key, BufferedImage>> it = MEMORY.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<Key, BufferedImage> e = it.next();
+                if (e.getKey().source().equals(source)) {
+                    memoryBytes -= bytes(e.getValue());
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private static long bytes(BufferedImage img) {
+        int bpp = img.getColorModel().getPixelSize();
+        return (long) img.getWidth() * img.getHeight() * Math.max(1, (bpp + 7) / 8);
+    }
+
+    /* ============== Caché en disco ============== */
+
+    public static boolean isDiskEnabled() {
+        Boolean b = diskEnabled;
+        if (b == null) {
+            String forced = System.getProperty(PROP + "disk");
+            b = (forced != null && !forced.isBlank())
+                    ? Boolean.parseBoolean(forced.trim())
+                    : Preferences.userRoot().node(PREF_NODE).getBoolean(PREF_DISK, false);
+            diskEnabled = b;
+        }
+        return b;
+    }
+
+    /** Activa o desactiva la caché en disco y lo recuerda en las preferencias. */
+    public static void setDiskEnabled(boolean enabled) {
+        diskEnabled = enabled;
+        Preferences.userRoot().node(PREF_NODE).putBoolean(PREF_DISK, enabled);
+    }
+
+    /** Borra todas las miniaturas guardadas en disco. */
+    public static void clearDisk() {
+        File[] files = DISK_DIR.listFiles();
+        if (files != null) for (File f : files) f.delete();
+    }
+
+    private static BufferedImage readDisk(Key key) {
+        File f = diskFile(key);
+        if (!f.isFile()) return null;
+        try {
+            BufferedImage img = ImageIO.read(f);
+            if (img != null) f.setLastModified(System.currentTimeMillis()); // LRU también en disco
+            return img;
+        } catch (Exception ex) {
+            f.delete();
+            return null;
+        }
+    }
+
+    private static void writeDisk(Key key, BufferedImage img) {
+        try {
+            Files.createDirectories(DISK_DIR.toPath());
+            File dst = diskFile(key);
+            File tmp = File.createTempFile("thumb", ".tmp", DISK_DIR);
+            try {
+                if (!ImageIO.write(img, "png", tmp)) return;
+                Files.move(tmp.toPath(), dst.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                tmp.delete();
+            }
+        } catch (Exception ignore) {
+            return; // la caché en disco es opcional: sin permisos o sin espacio se sigue en memoria
+        }
+
+        boolean trim;
+        synchronized (DISK_DIR) {
+            trim = ++writesSinceTrim >= TRIM_EVERY;
+            if (trim) writesSinceTrim = 0;
+        }
+        if (trim) trimDisk();
+    }
+
+    /** Borra las miniaturas usadas hace más tiempo hasta quedar bajo {@code diskMB}. */
+    private static void trimDisk() {
+        File[] files = DISK_DIR.listFiles((d, n) -> n.endsWith(".png"));
+        if (files == null) return;
+        long total = 0;
+        for (File f : files) total += f.length();
+        if (total <= MAX_DISK_BYTES) return;
+
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File f : files) {
+            if (total <= MAX_DISK_BYTES) break;
+            long len = f.length();
+            if (f.delete()) total -= len;
+        }
+    }
+
+    private static File diskFile(Key key) {
+        String id = key.source() + '|' + key.modified() + '|' + key.length() + '|' + key.page() + '|'
+                + key.width() + 'x' + key.height() + '|' + key.variant();
+        try {
+            byte[] h = MessageDigest.getInstance("SHA-1").digest(id.getBytes(StandardCharsets.UTF_8));
+            return new File(DISK_DIR, HexFormat.of().formatHex(h) + ".png");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long longProp(String key, long def) {
+        try { return Math.max(1, Long.parseLong(System.getProperty(PROP + key, "").trim())); }
+        catch (NumberFormatException e) { return def; }
+    }
+
+    /* ============== Generación ============== */
+
     public static BufferedImage thumbForPdf(PDFRenderer renderer, int pageIndex, int targetW, int targetH) throws Exception {
         BufferedImage bim = renderer.renderImageWithDPI(pageIndex, 110, ImageType.RGB);
         return scale(bim, targetW, targetH);
     }
 
     public static BufferedImage thumbForImage(File file, int rotation, int targetW, int targetH) throws Exception {
-        BufferedImage img = ImageIO.read(file);
-        if (img == null) throw new Exception("No se pudo leer: " + file);
-        if (rotation != 0) img = rotate90s(img, rotation);
-        return scale(img, targetW, targetH);
+        ImageProbe.Info info = ImageProbe.probe(file);
+        double s = Math.min(targetW / (double) info.rotatedWidth(rotation), targetH / (double) info.rotatedHeight(rotation));
+        int w = Math.max(1, (int) Math.round(info.rotatedWidth(rotation) * s));
+        int h = Math.max(1, (int) Math.round(info.rotatedHeight(rotation) * s));
+        return loadScaled(file, rotation, w, h);
+    }
+
+    /**
+     * Lee la imagen ya reducida, rotada y escalada a exactamente w×h (tamaño final, ya rotado).
+     * Nunca se decodifica más resolución de la necesaria (ver {@link #readSubsampled}).
+     */
+    public static BufferedImage loadScaled(File file, int rotation, int w, int h) throws IOException {
+        boolean swap = ((rotation % 180) + 180) % 180 == 90;
+        BufferedImage src = readSubsampled(file, swap ? h : w, swap ? w : h);
+        return scaleRotated(src, rotation, w, h);
+    }
+
+    /**
+     * Decodifica la imagen con la menor resolución que siga cubriendo minW×minH: usa la miniatura
+     * embebida (EXIF/JFIF) si alcanza y tiene la misma proporción; si no, submuestreo con
+     * {@link ImageReadParam#setSourceSubsampling}, que descarta filas/columnas al decodificar.
+     */
+    public static BufferedImage readSubsampled(File file, int minW, int minH) throws IOException {
+        try (ImageInputStream iis = ImageIO.createImageInputStream(file)) {
+            if (iis == null) throw new IOException("No se pudo abrir: " + file);
+            Iterator<ImageReader> it = ImageIO.getImageReaders(iis);
+            if (!it.hasNext()) throw new IOException("Formato de imagen no soportado: " + file.getName());
+            ImageReader reader = it.next();
+            try {
+                reader.setInput(iis, true, false);
+                int w = reader.getWidth(0), h = reader.getHeight(0);
+
+                BufferedImage thumb = embeddedThumbnail(reader, w, h, minW, minH);
+                if (thumb != null) return thumb;
+
+                int step = Math.max(1, Math.min(w / Math.max(1, minW), h / Math.max(1, minH)));
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (step > 1) param.setSourceSubsampling(step, step, 0, 0);
+                BufferedImage img = reader.read(0, param);
+                if (img == null) throw new IOException("No se pudo leer: " + file);
+                return img;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static BufferedImage embeddedThumbnail(ImageReader reader, int w, int h, int minW, int minH) {
+        try {
+            if (!reader.readerSupportsThumbnails() || !reader.hasThumbnails(0)) return null;
+            double aspect = w / (double) h;
+            for (int i = 0; i < reader.getNumThumbnails(0); i++) {
+                int tw = reader.getThumbnailWidth(0, i), th = reader.getThumbnailHeight(0, i);
+                if (tw < minW || th < minH) continue;
+                // Las miniaturas EXIF a veces llevan bandas negras: exigir la misma proporción
+                if (Math.abs(tw / (double) th - aspect) > aspect * 0.02) continue;
+                return reader.readThumbnail(0, i);
+            }
+        } catch (Exception ignore) {}
+        return null;
+    }
+
+    /** Dibuja {@code src} girada {@code rotation} grados (horario, múltiplo de 90) dentro de w×h. */
+    public static BufferedImage scaleRotated(BufferedImage src, int rotation, int w, int h) {
+        int rot = ((rotation % 360) + 360) % 360;
+        BufferedImage out = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = out.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g.translate(w / 2.0, h / 2.0);
+        g.rotate(Math.toRadians(rot));
+        boolean swap = rot == 90 || rot == 270;
+        int dw = swap ? h : w, dh = swap ? w : h;
+        g.drawImage(src, -dw / 2, -dh / 2, dw, dh, null);
+        g.dispose();
+        return out;
     }
 
     public static BufferedImage rotate90s(BufferedImage src, int deg) {
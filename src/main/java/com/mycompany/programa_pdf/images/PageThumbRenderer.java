@@ -1,21 +1,34 @@
 package com.mycompany.programa_pdf.dialogs.images;
 
 import com.mycompany.programa_pdf.images.ImageThumbCache;
+import com.mycompany.programa_pdf.ui.AsyncThumbLoader;
 import org.apache.pdfbox.rendering.PDFRenderer;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
 
 /** Renderer de celdas para la lista de páginas/imagenes. */
 public class PageThumbRenderer extends JPanel implements ListCellRenderer<PageItem> {
 
     private final JLabel pic = new JLabel("", SwingConstants.CENTER);
     private final JLabel txt = new JLabel("", SwingConstants.CENTER);
+    private final File pdfFile;
     private final PDFRenderer renderer;
 
-    public PageThumbRenderer(PDFRenderer renderer) {
+    /** Clave de miniatura: página del PDF (image == null) o imagen con su rotación. */
+    private record ThumbKey(int pdfPage, File image, int rotation) {}
+
+    // Un solo hilo: las páginas comparten el PDFRenderer del diálogo
+    private final AsyncThumbLoader<ThumbKey> loader;
+
+    /** @param pdfFile archivo del que sale {@code renderer}: las páginas se cachean por archivo */
+    public PageThumbRenderer(File pdfFile, PDFRenderer renderer) {
+        this.pdfFile = pdfFile;
         this.renderer = renderer;
+        this.loader = new AsyncThumbLoader<>(this::cacheKey, this::loadThumb, 1, "page-thumbs", 150, 200);
         setLayout(new BorderLayout(4,4));
         setOpaque(true);
         setBackground(UIManager.getColor("Panel.background"));
@@ -29,31 +42,31 @@ public class PageThumbRenderer extends JPanel implements ListCellRenderer<PageIt
 
     @Override
     public Component getListCellRendererComponent(JList<? extends PageItem> list, PageItem value, int index, boolean isSelected, boolean cellHasFocus) {
-        try {
-            if (value.kind == PageItem.Kind.PDF_PAGE) {
-                if (value.thumb == null) value.thumb = ImageThumbCache.thumbForPdf(renderer, value.pdfPageIndex, 180, 230);
-                pic.setIcon(new ImageIcon(value.thumb));
-                txt.setText("Página " + (value.pdfPageIndex + 1));
-            } else {
-                if (value.thumb == null) {
-                    value.thumb = ImageThumbCache.thumbForImage(value.imageFile, 0, 180, 230);
-                    value.thumbRot = null;
-                }
-                if (value.rotation == 0) {
-                    pic.setIcon(new ImageIcon(value.thumb));
-                } else {
-                    if (value.thumbRot == null) value.thumbRot = ImageThumbCache.scale(ImageThumbCache.rotate90s(value.thumb, value.rotation), 180, 230);
-                    pic.setIcon(new ImageIcon(value.thumbRot));
-                }
-                txt.setText("Imagen" + (value.rotation != 0 ? (" (" + value.rotation + "°)") : ""));
-            }
-        } catch (Exception ex) {
-            pic.setIcon(null);
-            txt.setText("Error");
+        if (value.kind == PageItem.Kind.PDF_PAGE) {
+            pic.setIcon(loader.get(list, new ThumbKey(value.pdfPageIndex, null, 0), index));
+            txt.setText("Página " + (value.pdfPageIndex + 1));
+        } else {
+            pic.setIcon(loader.get(list, new ThumbKey(-1, value.imageFile, value.rotation), index));
+            txt.setText("Imagen" + (value.rotation != 0 ? (" (" + value.rotation + "°)") : ""));
         }
 
         setBackground(isSelected ? list.getSelectionBackground() : list.getBackground());
         setForeground(isSelected ? list.getSelectionForeground() : list.getForeground());
         return this;
     }
+
+    private ImageThumbCache.Key cacheKey(ThumbKey k) {
+        return (k.image() == null)
+                ? ImageThumbCache.key(pdfFile, k.pdfPage(), 180, 230, "pdf")
+                : ImageThumbCache.key(k.image(), -1, 180, 230, "rot" + k.rotation());
+    }
+
+    private BufferedImage loadThumb(ThumbKey k) throws Exception {
+        if (k.image() == null) {
+            synchronized (renderer) {
+                return ImageThumbCache.thumbForPdf(renderer, k.pdfPage(), 180, 230);
+            }
+        }
+        return ImageThumbCache.thumbForImage(k.image(), k.rotation(), 180, 230);
+    }
 }
@@ -0,0 +1,217 @@
+package com.mycompany.programa_pdf.pdf;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PDFs abiertos compartidos entre diálogos y servicios, para no volver a parsear xref y árbol de
+ * objetos en cada miniatura, cambio de página o unión.
+ *
+ * <p>Uso: {@code try (DocumentCache.Handle h = DocumentCache.open(pdf)) { h.render(i, 144); }}.
+ * Cada documento se abre una vez por ruta + fecha de modificación + tamaño (un archivo editado se
+ * abre de nuevo) y se cuenta cuántos lo usan. Al soltarlo queda abierto un rato por si se vuelve a
+ * pedir; se cierra al pasar {@code idleMs} sin uso o cuando hay más de {@code max} abiertos en total
+ * (primero los usados hace más tiempo). Los que están en uso no se cierran: si todos lo están, el
+ * tope se supera hasta que se suelten.</p>
+ *
+ * <p>PDFBox no admite usar un mismo {@link PDDocument} desde varios hilos a la vez: todo acceso
+ * (render, lectura de páginas, copia al unir) debe hacerse con {@link Handle#lock()} tomado;
+ * {@link Handle#render} ya lo hace.</p>
+ *
+ * <pre>
+ * programa_pdf.docs.max     documentos abiertos como máximo           (por defecto 8)
+ * programa_pdf.docs.idleMs  ms sin uso antes de cerrar un documento   (por defecto 60000)
+ * </pre>
+ */
+public final class DocumentCache {
+
+    private static final String PROP = "programa_pdf.docs.";
+    private static final int MAX_OPEN = Math.max(1, intProp("max", 8));
+    private static final long IDLE_MS = Math.max(1000, intProp("idleMs", 60_000));
+
+    private record Key(String path, long modified, long length) {}
+
+    /** Documento abierto; {@code this} es además el candado de render. */
+    private static final class Entry {
+        final Key key;
+        PDDocument doc;
+        PDFRenderer renderer;
+        int refs;
+        long lastUsed;
+        boolean stale; // el archivo cambió: cerrar en cuanto nadie lo use
+
+        Entry(Key key) { this.key = key; }
+    }
+
+    /** Préstamo de un documento abierto. Cerrarlo lo devuelve a la caché (no cierra el PDF). */
+    public static final class Handle implements AutoCloseable {
+        private final Entry entry;
+        private boolean released;
+
+        private Handle(Entry entry) { this.entry = entry; }
+
+        public PDDocument document()  { return entry.doc; }
+        public PDFRenderer renderer() { return entry.renderer; }
+
+        /** Candado a tomar para cualquier acceso al documento. */
+        public Object lock() { return entry; }
+
+        public int pageCount() {
+            synchronized (entry) { return entry.doc.getNumberOfPages(); }
+        }
+
+        public BufferedImage render(int pageIndex, float dpi) throws IOException {
+            synchronized (entry) { return entry.renderer.renderImageWithDPI(pageIndex, dpi, ImageType.RGB); }
+        }
+
+        @Override public void close() {
+            if (released) return;
+            released = true;
+            release(entry);
+        }
+    }
+
+    private static final Map<Key, Entry> OPEN = new HashMap<>();
+    private static ScheduledExecutorService reaper;
+
+    private DocumentCache() {}
+
+    /** Abre (o reutiliza) el PDF. El handle debe cerrarse; idealmente con try-with-resources. */
+    public static Handle open(File pdf) throws IOException {
+        if (pdf == null || !pdf.isFile()) throw new IOException("PDF no encontrado: " + pdf);
+        Key key = new Key(pdf.getAbsolutePath(), pdf.lastModified(), pdf.length());
+
+        Entry e;
+        boolean added = false;
+        synchronized (OPEN) {
+            e = OPEN.get(key);
+            if (e == null) {
+                markStale(key.path());
+                e = new Entry(key);
+                OPEN.put(key, e);
+                added = true;
+            }
+            e.refs++;
+            e.lastUsed = System.currentTimeMillis();
+        }
+
+        // La carga va fuera del candado global: abrir un PDF grande no frena a los demás
+        synchronized (e) {
+            if (e.doc == null) {
+                try {
+                    e.doc = Loader.loadPDF(pdf);
+                    e.renderer = new PDFRenderer(e.doc);
+                } catch (IOException | RuntimeException ex) {
+                    synchronized (OPEN) {
+                        e.refs--;
+                        if (e.refs == 0) OPEN.remove(key, e);
+                    }
+                    throw ex;
+                }
+            }
+        }
+        if (added) trim(); // uno más abierto: cerrar los sin uso que pasen del tope
+        return new Handle(e);
+    }
+
+    /** Nº de páginas sin dejar el documento tomado. */
+    public static int pageCount(File pdf) throws IOException {
+        try (Handle h = open(pdf)) {
+            return h.pageCount();
+        }
+    }
+
+    /** Cierra todos los documentos que nadie está usando. */
+    public static void clear() {
+        List<Entry> toClose = new ArrayList<>();
+        synchronized (OPEN) {
+            OPEN.values().removeIf(e -> {
+                if (e.refs > 0) return false;
+                toClose.add(e);
+                return true;
+            });
+        }
+        toClose.forEach(DocumentCache::closeEntry);
+    }
+
+    /* ============== Interno ============== */
+
+    /** Versiones anteriores del mismo archivo: ya no se reutilizan. Llamar con {@code OPEN}. */
+    private static void markStale(String path) {
+        for (Entry e : OPEN.values()) {
+            if (e.key.path().equals(path)) e.stale = true;
+        }
+    }
+
+    private static void release(Entry e) {
+        synchronized (OPEN) {
+            e.refs--;
+            e.lastUsed = System.currentTimeMillis();
+        }
+        trim();
+    }
+
+    /**
+     * Cierra los documentos sin uso vencidos o desactualizados, y los sin uso más viejos mientras
+     * el total de abiertos pase de {@code max}.
+     */
+    private static void trim() {
+        List<Entry> toClose = new ArrayList<>();
+        boolean idleLeft;
+        synchronized (OPEN) {
+            long now = System.currentTimeMillis();
+            List<Entry> idle = new ArrayList<>();
+            for (Entry e : OPEN.values()) if (e.refs == 0) idle.add(e);
+            idle.sort(Comparator.comparingLong(e -> e.lastUsed));
+
+            int excess = OPEN.size() - MAX_OPEN;
+            for (Entry e : idle) {
+                if (excess > 0 || e.stale || now - e.lastUsed >= IDLE_MS) {
+                    toClose.add(e);
+                    OPEN.remove(e.key, e);
+                    excess--;
+                }
+            }
+            idleLeft = idle.size() > toClose.size();
+        }
+        toClose.forEach(DocumentCache::closeEntry);
+        if (idleLeft) scheduleReaper();
+    }
+
+    private static void closeEntry(Entry e) {
+        synchronized (e) {
+            try { if (e.doc != null) e.doc.close(); } catch (Exception ignore) {}
+            e.doc = null;
+            e.renderer = null;
+        }
+    }
+
+    private static synchronized void scheduleReaper() {
+        if (reaper != null) return;
+        reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "pdf-docs-reaper");
+            t.setDaemon(true);
+            return t;
+        });
+        reaper.scheduleWithFixedDelay(DocumentCache::trim, IDLE_MS / 2, IDLE_MS / 2, TimeUnit.MILLISECONDS);
+    }
+
+    private static int intProp(String key, int def) {
+        try { return Integer.parseInt(System.getProperty(PROP + key, "").trim()); }
+        catch (NumberFormatException e) { return def; }
+    }
+}
@@ -0,0 +1,107 @@
+package com.mycompany.programa_pdf.pdf;
+
+import com.mycompany.programa_pdf.images.ImageProbe;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.util.Matrix;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+
+/**
+ * Inserta archivos de imagen en un PDF.
+ *
+ * <p>Los JPEG (baseline/progresivos, 8 bits, gris o RGB) se copian tal cual como stream
+ * {@code DCTDecode}: la cabecera la resuelve {@link ImageProbe}, sin decodificar píxeles.
+ * El resto (PNG, CMYK, 12 bits, WebP...) pasa por PDFBox/ImageIO.</p>
+ */
+public final class ImageEmbedder {
+
+    private ImageEmbedder() {}
+
+    /** Devuelve la imagen lista para dibujar; su ancho/alto en píxeles salen de la propia XObject. */
+    public static PDImageXObject embed(PDDocument doc, File image) throws IOException {
+        ImageProbe.Info info = ImageProbe.probe(image);
+        if (info.dctPassThrough()) return passThroughJpeg(doc, image, info);
+
+        try {
+            return PDImageXObject.createFromFileByContent(image, doc);
+        } catch (IllegalArgumentException unsupported) {
+            // Formatos que PDFBox no reconoce por contenido (p. ej. WebP vía ImageIO)
+            BufferedImage img = ImageIO.read(image);
+            if (img == null) throw new IOException("No se pudo leer la imagen: " + image.getAbsolutePath());
+            return LosslessFactory.createFromImage(doc, img);
+        }
+    }
+
+    /**
+     * Agrega una página del tamaño de la imagen ya rotada, con la imagen dentro de un margen
+     * ({@code marginFraction} del ancho/alto de página por lado). La rotación se aplica con una
+     * transformación en el content stream, sin rotar píxeles.
+     *
+     * @param rotation grados horarios, múltiplo de 90
+     */
+    public static PDPage addImagePage(PDDocument doc, File image, int rotation, float marginFraction) throws IOException {
+        PDImageXObject pdImg = embed(doc, image);
+        int rot = ((rotation % 360) + 360) % 360;
+        boolean swap = rot == 90 || rot == 270;
+
+        float pageW = swap ? pdImg.getHeight() : pdImg.getWidth();
+        float pageH = swap ? pdImg.getWidth() : pdImg.getHeight();
+        PDPage page = new PDPage(new PDRectangle(pageW, pageH));
+        doc.addPage(page);
+
+        float mx = pageW * marginFraction, my = pageH * marginFraction;
+        float boxW = pageW - 2 * mx, boxH = pageH - 2 * my;
+        // Tamaño de la imagen sin rotar que, rotada, ocupa la caja
+        float w = swap ? boxH : boxW;
+        float h = swap ? boxW : boxH;
+
+        try (PDPageContentStream cs = new PDPageContentStream(doc, page)) {
+            if (rot == 0) {
+                cs.drawImage(pdImg, mx, my, w, h);
+            } else {
+                // Giro horario visto en pantalla (eje Y del PDF hacia arriba)
+                Matrix m = switch (rot) {
+                    case 90  -> new Matrix(0, -1, 1, 0, mx, my + w);
+                    case 180 -> new Matrix(-1, 0, 0, -1, mx + w, my + h);
+                    default  -> new Matrix(0, 1, -1, 0, mx + h, my);
+                };
+                cs.saveGraphicsState();
+                cs.transform(m);
+                cs.drawImage(pdImg, 0, 0, w, h);
+                cs.restoreGraphicsState();
+            }
+        }
+        return page;
+    }
+
+    /** Copia los bytes del JPEG al PDF sin recomprimir. */
+    private static PDImageXObject passThroughJpeg(PDDocument doc, File image, ImageProbe.Info info) throws IOException {
+        COSStream stream = doc.getDocument().createCOSStream();
+        try (InputStream in = Files.newInputStream(image.toPath());
+             OutputStream out = stream.createRawOutputStream()) {
+            in.transferTo(out);
+        }
+        stream.setItem(COSName.TYPE, COSName.XOBJECT);
+        stream.setItem(COSName.SUBTYPE, COSName.IMAGE);
+        stream.setItem(COSName.FILTER, COSName.DCT_DECODE);
+        stream.setInt(COSName.WIDTH, info.width());
+        stream.setInt(COSName.HEIGHT, info.height());
+        stream.setInt(COSName.BITS_PER_COMPONENT, 8);
+        stream.setItem(COSName.COLORSPACE, info.components() == 1 ? COSName.DEVICEGRAY : COSName.DEVICERGB);
+        return new PDImageXObject(new PDStream(stream), null);
+    }
+}
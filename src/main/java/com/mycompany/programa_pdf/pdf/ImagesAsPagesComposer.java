@@ -1,15 +1,8 @@
 package com.mycompany.programa_pdf.pdf;
 
 import com.mycompany.programa_pdf.dialogs.images.PageItem;
-import com.mycompany.programa_pdf.images.ImageThumbCache;
 import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.pdmodel.PDPage;
-import org.apache.pdfbox.pdmodel.PDPageContentStream;
-import org.apache.pdfbox.pdmodel.common.PDRectangle;
-import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
 import java.util.List;
 
 /** Crea un nuevo PDDocument combinando páginas del PDF original + imágenes. */
@@ -26,22 +19,12 @@ public class ImagesAsPagesComposer {
             if (it.kind == PageItem.Kind.PDF_PAGE) {
                 out.importPage(src.getPage(it.pdfPageIndex));
             } else {
-                BufferedImage img = ImageIO.read(it.imageFile);
-                if (img == null) continue;
-                if (it.rotation != 0) img = ImageThumbCache.rotate90s(img, it.rotation);
-
-                PDPage page = new PDPage(new PDRectangle(img.getWidth(), img.getHeight()));
-                out.addPage(page);
-
-                var pdImg = LosslessFactory.createFromImage(out, img);
-                float marginX = (float) (img.getWidth() * 0.05);
-                float marginY = (float) (img.getHeight() * 0.05);
-                float w = img.getWidth() - 2 * marginX;
-                float h = img.getHeight() - 2 * marginY;
-
-                try (PDPageContentStream cs = new PDPageContentStream(out, page)) {
-                    cs.drawImage(pdImg, marginX, marginY, w, h);
-                }
+                if (!it.imageFile.isFile()) continue;
+                // JPEG tal cual y rotación por transformación: sin decodificar la imagen.
+                // Una imagen dañada o sin lector se salta (la página no llega a agregarse)
+                try {
+                    ImageEmbedder.addImagePage(out, it.imageFile, it.rotation, 0.05f);
+                } catch (Exception ignore) {}
             }
         }
         return out;
@@ -0,0 +1,87 @@
+package com.mycompany.programa_pdf.pdf;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdfwriter.compress.CompressParameters;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Documento unido "perezoso": las páginas de los PDF de origen se enlazan tal cual (mismos objetos,
+ * mismos recursos compartidos), sin copiar streams. Los orígenes quedan abiertos mientras viva
+ * este documento y se cierran con él.
+ *
+ * <p>Abrir es casi instantáneo aunque las entradas pesen cientos de MB: solo se lee la tabla xref
+ * de cada archivo. Renderizar, imprimir o guardar leen los streams directamente de los archivos
+ * de origen a medida que hacen falta.</p>
+ *
+ * <p>Pensado para vista previa, impresión y guardado simple: no combina formularios, marcadores
+ * ni árbol de estructura (para eso está {@link PdfMerger}). Cada entrada se abre por separado,
+ * así un mismo archivo puede repetirse en la lista.</p>
+ */
+public final class LazyMergedDocument extends PDDocument {
+
+    private final List<PDDocument> sources = new ArrayList<>();
+    private final List<File> sourceFiles;
+
+    private LazyMergedDocument(List<File> sourceFiles) {
+        this.sourceFiles = List.copyOf(sourceFiles);
+    }
+
+    /** Abre los orígenes y enlaza sus páginas en orden. El caller debe cerrar el resultado. */
+    public static LazyMergedDocument open(List<File> pdfs) throws IOException {
+        LazyMergedDocument out = new LazyMergedDocument(pdfs);
+        try {
+            for (File f : pdfs) {
+                if (f == null || !f.isFile()) throw new IOException("PDF no encontrado: " + f);
+                PDDocument src = Loader.loadPDF(f);
+                out.sources.add(src);
+                for (PDPage page : src.getPages()) out.link(page);
+            }
+            return out;
+        } catch (IOException | RuntimeException e) {
+            try { out.close(); } catch (Exception ignore) {}
+            throw e;
+        }
+    }
+
+    /**
+     * Agrega la página al árbol de este documento. Al cambiar de padre perdería lo heredado del
+     * árbol de origen, así que antes se fija en la propia página (por referencia, sin copiar).
+     */
+    private void link(PDPage page) {
+        page.setResources(page.getResources());
+        page.setMediaBox(page.getMediaBox());
+        page.setCropBox(page.getCropBox());
+        page.setRotation(page.getRotation());
+        addPage(page);
+    }
+
+    /** Guardar sobre uno de los orígenes lo truncaría mientras todavía se lee de él. */
+    @Override
+    public void save(File file, CompressParameters compressParameters) throws IOException {
+        File target = file.getCanonicalFile();
+        for (File f : sourceFiles) {
+            if (f.getCanonicalFile().equals(target)) {
+                throw new IOException("No se puede guardar sobre un PDF de origen: " + file.getName());
+            }
+        }
+        super.save(file, compressParameters);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            for (PDDocument src : sources) {
+                try { src.close(); } catch (Exception ignore) {}
+            }
+            sources.clear();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.mycompany.programa_pdf.pdf;
+
+import org.jodconverter.core.DocumentConverter;
+import org.jodconverter.core.office.OfficeException;
+import org.jodconverter.local.LocalConverter;
+import org.jodconverter.local.office.LocalOfficeManager;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Pool compartido de procesos LibreOffice (soffice) para las conversiones Office -> PDF.
+ *
+ * <p>Se arranca una sola vez (al primer uso) y queda caliente para todas las conversiones
+ * siguientes: cada instancia escucha en un puerto o pipe propio y JODConverter reparte las
+ * tareas entre ellas. Una instancia se reinicia sola al llegar a {@code maxTasks} conversiones
+ * o si el proceso muere. Se detiene al cerrar la JVM.</p>
+ *
+ * <p>Configuración (propiedades del sistema, opcionales):</p>
+ * <pre>
+ * programa_pdf.office.ports      lista de puertos, p. ej. "2002,2003"   (por defecto: según instances)
+ * programa_pdf.office.pipes      lista de pipes, p. ej. "pdf_a,pdf_b"   (reemplaza a los puertos)
+ * programa_pdf.office.instances  nº de procesos si no se dan puertos    (por defecto 1)
+ * programa_pdf.office.maxTasks   conversiones por proceso antes de reiniciarlo (por defecto 200)
+ * programa_pdf.office.timeout    ms máximos por conversión              (por defecto 120000)
+ * programa_pdf.office.queueTimeout ms que una conversión espera un proceso libre (por defecto 300000)
+ * </pre>
+ */
+public final class OfficePool {
+
+    private static final String PROP = "programa_pdf.office.";
+    private static final int FIRST_PORT = 2002;
+
+    // Lectura: conversiones en curso. Escritura: arrancar o detener el pool, solo sin conversiones
+    private static final ReentrantReadWriteLock LOCK = new ReentrantReadWriteLock();
+    private static volatile LocalOfficeManager manager;
+    private static DocumentConverter converter;
+    private static File currentHome;
+    private static boolean hookInstalled;
+
+    private OfficePool() {}
+
+    /**
+     * Convierte usando el pool (lo arranca si hace falta). Seguro para varios hilos: si otra llamada
+     * pide otra instalación de LibreOffice, el pool se reinicia recién cuando terminan las
+     * conversiones en curso.
+     */
+    public static void convert(File in, File out, File libreOfficeHomeOrNull) throws OfficeException {
+        while (true) {
+            LOCK.readLock().lock();
+            try {
+                if (isReadyFor(libreOfficeHomeOrNull)) {
+                    converter.convert(in).to(out).execute();
+                    return;
+                }
+            } finally {
+                LOCK.readLock().unlock();
+            }
+            LOCK.writeLock().lock();
+            try {
+                if (!isReadyFor(libreOfficeHomeOrNull)) start(libreOfficeHomeOrNull);
+            } finally {
+                LOCK.writeLock().unlock();
+            }
+        }
+    }
+
+    /** true si ya hay procesos LibreOffice arrancados (la próxima conversión no paga el arranque). */
+    public static boolean isRunning() {
+        LocalOfficeManager m = manager; // sin candado: se llama desde el EDT
+        return m != null && m.isRunning();
+    }
+
+    /**
+     * Detiene todos los procesos del pool, después de las conversiones en curso. El próximo uso lo
+     * vuelve a arrancar.
+     */
+    public static void shutdown() {
+        LOCK.writeLock().lock();
+        try {
+            stopLocked();
+        } finally {
+            LOCK.writeLock().unlock();
+        }
+    }
+
+    /** Llamar con algún candado. */
+    private static boolean isReadyFor(File home) {
+        return manager != null && manager.isRunning() && Objects.equals(currentHome, home);
+    }
+
+    /** Llamar con el candado de escritura. */
+    private static void stopLocked() {
+        if (manager == null) return;
+        try { manager.stop(); } catch (Exception ignore) {}
+        manager = null;
+        converter = null;
+        currentHome = null;
+    }
+
+    /** (Re)arranca el pool para {@code home}. Llamar con el candado de escritura. */
+    private static void start(File home) throws OfficeException {
+        // Cambió la instalación elegida o el pool quedó detenido: reiniciar
+        stopLocked();
+
+        LocalOfficeManager.Builder b = LocalOfficeManager.builder();
+        if (home != null) b.officeHome(home);
+
+        String[] pipes = listProp("pipes");
+        if (pipes.length > 0) b.pipeNames(pipes);
+        else b.portNumbers(ports());
+
+        b.maxTasksPerProcess(intProp("maxTasks", 200));
+        b.taskExecutionTimeout(longProp("timeout", 120_000L));
+        b.taskQueueTimeout(longProp("queueTimeout", 300_000L));
+
+        LocalOfficeManager m = b.build();
+        m.start();
+        manager = m;
+        converter = LocalConverter.make(m);
+        currentHome = home;
+        installHook();
+    }
+
+    private static void installHook() {
+        if (hookInstalled) return;
+        Runtime.getRuntime().addShutdownHook(new Thread(OfficePool::shutdown, "office-pool-stop"));
+        hookInstalled = true;
+    }
+
+    /* ============== Configuración ============== */
+
+    private static int[] ports() {
+        String[] list = listProp("ports");
+        if (list.length > 0) {
+            int[] out = new int[list.length];
+            for (int i = 0; i < list.length; i++) {
+                try { out[i] = Integer.parseInt(list[i]); }
+                catch (NumberFormatException e) { out[i] = FIRST_PORT + i; }
+            }
+            return out;
+        }
+        int n = Math.max(1, intProp("instances", 1));
+        int[] out = new int[n];
+        for (int i = 0; i < n; i++) out[i] = FIRST_PORT + i;
+        return out;
+    }
+
+    private static String[] listProp(String key) {
+        String v = System.getProperty(PROP + key, "").trim();
+        if (v.isEmpty()) return new String[0];
+        List<String> out = new ArrayList<>();
+        for (String s : v.split(",")) if (!s.isBlank()) out.add(s.trim());
+        return out.toArray(new String[0]);
+    }
+
+    private static int intProp(String key, int def) {
+        try { return Integer.parseInt(System.getProperty(PROP + key, "").trim()); }
+        catch (NumberFormatException e) { return def; }
+    }
+
+    private static long longProp(String key, long def) {
+        try { return Long.parseLong(System.getProperty(PROP + key, "").trim()); }
+        catch (NumberFormatException e) { return def; }
+    }
+}
@@ -0,0 +1,77 @@
+package com.mycompany.programa_pdf.pdf;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.io.RandomAccessStreamCache.StreamCacheCreateFunction;
+import org.apache.pdfbox.multipdf.PDFMergerUtility;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Unión de PDFs con memoria acotada.
+ *
+ * <p>El documento resultante guarda los streams (imágenes, contenido de páginas) en una caché
+ * mixta: hasta {@code ramMB} en memoria y el resto en un archivo temporal que se borra al cerrarlo.
+ * La unión "por flujo" abre cada PDF de origen, copia sus páginas y lo cierra antes de pasar al
+ * siguiente (PDFBox copia los datos de los streams al documento destino), así en memoria solo
+ * queda el árbol de objetos del resultado y un origen a la vez.</p>
+ *
+ * <pre>
+ * programa_pdf.merge.ramMB        memoria para streams del resultado        (por defecto 64)
+ * programa_pdf.merge.thresholdMB  tamaño total de entrada a partir del cual
+ *                                 la interfaz usa la unión por flujo       (por defecto 256)
+ * </pre>
+ */
+public final class PdfMerger {
+
+    private static final String PROP = "programa_pdf.merge.";
+    private static final long MB = 1024L * 1024;
+
+    private PdfMerger() {}
+
+    /** Caché de streams RAM + archivo temporal con el tope configurado. */
+    public static StreamCacheCreateFunction mixedCache() {
+        return MemoryUsageSetting.setupMixed(longProp("ramMB", 64) * MB).streamCache;
+    }
+
+    /** true si el tamaño total de los PDF supera el umbral para unir por flujo. */
+    public static boolean isLarge(List<File> pdfs) {
+        long total = 0;
+        for (File f : pdfs) if (f != null) total += f.length();
+        return total > longProp("thresholdMB", 256) * MB;
+    }
+
+    /** Une por flujo y devuelve el documento (el caller debe cerrarlo: libera el temporal). */
+    public static PDDocument mergeStreaming(List<File> pdfs) throws IOException {
+        PDDocument target = new PDDocument(mixedCache());
+        try {
+            PDFMergerUtility util = new PDFMergerUtility();
+            for (File f : pdfs) {
+                if (f == null || !f.isFile()) throw new IOException("PDF no encontrado: " + f);
+                try (PDDocument src = Loader.loadPDF(f)) {
+                    util.appendDocument(target, src);
+                }
+            }
+            return target;
+        } catch (IOException | RuntimeException e) {
+            try { target.close(); } catch (Exception ignore) {}
+            throw e;
+        }
+    }
+
+    /** Une por flujo directamente a archivo. */
+    public static File mergeStreaming(List<File> pdfs, File out) throws IOException {
+        try (PDDocument merged = mergeStreaming(pdfs)) {
+            merged.save(out);
+        }
+        return out;
+    }
+
+    private static long longProp(String key, long def) {
+        try { return Math.max(1, Long.parseLong(System.getProperty(PROP + key, "").trim())); }
+        catch (NumberFormatException e) { return def; }
+    }
+}
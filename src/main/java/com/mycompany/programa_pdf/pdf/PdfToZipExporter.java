@@ -0,0 +1,207 @@
+package com.mycompany.programa_pdf.pdf;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Exportación PDF -> imágenes en ZIP.
+ *
+ * <p><b>Secuencial:</b> cada página se codifica directamente dentro de su entrada del ZIP, sin
+ * pasar por un arreglo de bytes con la página completa.</p>
+ *
+ * <p><b>Paralela:</b> PDFBox no permite renderizar un mismo {@link PDDocument} desde varios hilos,
+ * así que cada hilo abre su propia copia del PDF y va tomando el siguiente número de página libre.
+ * Un único escritor (el hilo que llama) agrega las entradas al ZIP en orden de página a medida que
+ * terminan. Como máximo hay {@code 2 × hilos} páginas codificadas esperando a ser escritas, así la
+ * memoria queda acotada aunque el PDF tenga cientos de páginas.</p>
+ *
+ * <p>Nivel de compresión del ZIP por formato (propiedades del sistema, 0-9):
+ * {@code programa_pdf.zip.level.png} (por defecto 1) y {@code programa_pdf.zip.level.jpg}
+ * (por defecto 0). PNG y JPG ya vienen comprimidos; volver a comprimirlos gasta CPU y casi no
+ * reduce el tamaño.</p>
+ */
+final class PdfToZipExporter {
+
+    private PdfToZipExporter() {}
+
+    /* ============== Secuencial ============== */
+
+    static void exportSequential(File pdf, File zipOut, String ext, float dpi, String baseName) throws IOException {
+        try (PDDocument doc = Loader.loadPDF(pdf);
+             ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(zipOut))) {
+
+            zos.setLevel(zipLevel(ext));
+            PDFRenderer renderer = new PDFRenderer(doc);
+
+            for (int i = 0; i < doc.getNumberOfPages(); i++) {
+                BufferedImage bim = renderer.renderImageWithDPI(i, dpi, ImageType.RGB);
+
+                // Nivel 0 = deflate sin comprimir. STORED de verdad exige conocer el CRC y el
+                // tamaño antes de escribir, lo que obligaría a tener la página entera en memoria.
+                zos.putNextEntry(new ZipEntry(entryName(baseName, i, ext)));
+                encode(bim, ext, zos);
+                zos.closeEntry();
+            }
+        }
+    }
+
+    /* ============== Paralela ============== */
+
+    static void exportParallel(File pdf, File zipOut, String ext, float dpi, int threads, String baseName)
+            throws IOException {
+
+        int pages;
+        try (PDDocument probe = Loader.loadPDF(pdf)) {
+            pages = probe.getNumberOfPages();
+        }
+        int workers = Math.max(1, Math.min(threads, pages));
+
+        List<CompletableFuture<ByteArrayOutputStream>> done = new ArrayList<>(pages);
+        for (int i = 0; i < pages; i++) done.add(new CompletableFuture<>());
+
+        Semaphore inFlight = new Semaphore(workers * 2);
+        AtomicInteger next = new AtomicInteger();
+
+        ExecutorService pool = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "pdf2zip-worker");
+            t.setDaemon(true);
+            return t;
+        });
+
+        try {
+            for (int w = 0; w < workers; w++) {
+                pool.execute(() -> {
+                    try (PDDocument doc = Loader.loadPDF(pdf)) {
+                        PDFRenderer renderer = new PDFRenderer(doc);
+                        while (true) {
+                            // El cupo se toma antes de elegir página: así la página que espera
+                            // el escritor nunca queda bloqueada detrás de otras más adelantadas.
+                            inFlight.acquire();
+                            int i = next.getAndIncrement();
+                            if (i >= pages) { inFlight.release(); return; }
+
+                            BufferedImage bim = renderer.renderImageWithDPI(i, dpi, ImageType.RGB);
+                            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                            encode(bim, ext, baos);
+                            done.get(i).complete(baos);
+                        }
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        abort(done, ex);
+                    } catch (Throwable ex) {
+                        abort(done, ex);
+                    }
+                });
+            }
+
+            int level = zipLevel(ext);
+            try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(zipOut))) {
+                zos.setLevel(level);
+                for (int i = 0; i < pages; i++) {
+                    ByteArrayOutputStream baos = done.get(i).get();
+                    done.set(i, null); // liberar la página apenas se escribe
+
+                    ZipEntry entry = new ZipEntry(entryName(baseName, i, ext));
+                    if (level == Deflater.NO_COMPRESSION) {
+                        // Aquí la página ya está completa en memoria: se puede guardar como STORED
+                        CRC32 crc = new CRC32();
+                        baos.writeTo(new CheckedOutputStream(OutputStream.nullOutputStream(), crc));
+                        entry.setMethod(ZipEntry.STORED);
+                        entry.setSize(baos.size());
+                        entry.setCompressedSize(baos.size());
+                        entry.setCrc(crc.getValue());
+                    }
+                    zos.putNextEntry(entry);
+                    baos.writeTo(zos);
+                    zos.closeEntry();
+                    inFlight.release();
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Exportación interrumpida.", ex);
+        } catch (ExecutionException ex) {
+            Throwable c = ex.getCause();
+            if (c instanceof IOException io) throw io;
+            throw new IOException("Error al renderizar páginas: " + c, c);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Un hilo falló: se propagan los errores a las páginas pendientes para que el escritor no espere. */
+    private static void abort(List<CompletableFuture<ByteArrayOutputStream>> done, Throwable ex) {
+        for (CompletableFuture<ByteArrayOutputStream> f : done) {
+            if (f != null) f.completeExceptionally(ex);
+        }
+    }
+
+    /* ============== Helpers ============== */
+
+    /**
+     * Codifica la imagen directamente sobre {@code out} (sin cerrarlo). Se usa un
+     * {@link MemoryCacheImageOutputStream} explícito en lugar de {@code ImageIO.write}, que según
+     * {@code ImageIO.getUseCache()} puede pasar antes por un archivo temporal.
+     */
+    private static void encode(BufferedImage img, String ext, OutputStream out) throws IOException {
+        Iterator<ImageWriter> it = ImageIO.getImageWritersByFormatName(ext);
+        if (!it.hasNext()) throw new IOException("No hay codificador para: " + ext);
+        ImageWriter writer = it.next();
+        try (ImageOutputStream ios = new MemoryCacheImageOutputStream(new NonClosing(out))) {
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(img, null, null), null);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private static String entryName(String baseName, int pageIndex, String ext) {
+        return "%s_page_%03d.%s".formatted(baseName, pageIndex + 1, ext);
+    }
+
+    static int zipLevel(String ext) {
+        int def = ext.equals("png") ? Deflater.BEST_SPEED : Deflater.NO_COMPRESSION;
+        try {
+            int v = Integer.parseInt(System.getProperty("programa_pdf.zip.level." + ext, "").trim());
+            return Math.max(Deflater.NO_COMPRESSION, Math.min(Deflater.BEST_COMPRESSION, v));
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+
+    /** Evita que cerrar el stream de ImageIO cierre la entrada del ZIP. */
+    private static final class NonClosing extends FilterOutputStream {
+        NonClosing(OutputStream out) { super(out); }
+        @Override public void write(byte[] b, int off, int len) throws IOException { out.write(b, off, len); }
+        @Override public void close() throws IOException { flush(); }
+    }
+}
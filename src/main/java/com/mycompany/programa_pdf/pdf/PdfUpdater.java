@@ -0,0 +1,132 @@
+package com.mycompany.programa_pdf.pdf;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Guarda un PDF modificado de forma completa o incremental.
+ *
+ * <p><b>Completo</b> ({@code doc.save}): reescribe todos los objetos; el archivo queda compacto
+ * pero el tiempo crece con el tamaño del documento.</p>
+ *
+ * <p><b>Incremental</b> ({@code doc.saveIncremental}): deja los bytes originales tal cual y agrega
+ * al final solo los objetos que cambiaron (PDFBox los detecta solo). Rotar 3 páginas de un escaneo
+ * de 1 GB escribe unos pocos KB. Si la salida es el mismo archivo de entrada, solo se anexa el
+ * incremento; si es otro archivo, se copian los bytes originales sin volver a serializarlos.</p>
+ *
+ * <p>Guardar completo sobre el mismo archivo pasa por un temporal: PDFBox sigue leyendo del
+ * original mientras escribe.</p>
+ *
+ * <p>Por defecto se guarda completo; {@code -Dprograma_pdf.save.incremental=true} cambia el modo
+ * por defecto de las operaciones que lo admiten (rotar y marca de agua).</p>
+ */
+public final class PdfUpdater {
+
+    /** Cambios a aplicar sobre el documento recién cargado. */
+    @FunctionalInterface
+    public interface Edit { void apply(PDDocument doc) throws IOException; }
+
+    private PdfUpdater() {}
+
+    public static boolean defaultIncremental() {
+        return Boolean.parseBoolean(System.getProperty("programa_pdf.save.incremental", "false").trim());
+    }
+
+    /** Carga {@code in}, aplica {@code edit} y guarda en {@code out} (puede ser el mismo archivo). */
+    public static File update(File in, File out, boolean incremental, Edit edit) throws IOException {
+        try (PDDocument doc = Loader.loadPDF(in)) {
+            edit.apply(doc);
+            save(doc, in, out, incremental);
+        }
+        return out;
+    }
+
+    /**
+     * Guarda un documento ya abierto que se cargó desde {@code source}. Para diálogos que editan el
+     * documento antes de decidir dónde guardarlo.
+     *
+     * <p>Si {@code out} es {@code source}, primero se arma el incremento (o el temporal) y después se
+     * cierra {@code doc} antes de anexar o reemplazar: PDFBox lee del original mientras el documento
+     * está abierto. En ese caso {@code doc} no se puede volver a usar.</p>
+     */
+    public static void save(PDDocument doc, File source, File out, boolean incremental) throws IOException {
+        if (!sameFile(source, out)) {
+            if (incremental) {
+                try (OutputStream os = new BufferedOutputStream(new FileOutputStream(out))) {
+                    doc.saveIncremental(os);
+                }
+            } else {
+                doc.save(out);
+            }
+            return;
+        }
+
+        byte[] increment = null;
+        File tmp = null;
+        try {
+            if (incremental) {
+                increment = incrementOf(doc, source.length());
+            } else {
+                tmp = tempNextTo(out);
+                doc.save(tmp);
+            }
+            doc.close();
+            if (increment != null) Files.write(source.toPath(), increment, StandardOpenOption.APPEND);
+            else Files.move(tmp.toPath(), out.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            if (tmp != null) tmp.delete();
+        }
+    }
+
+    /* ============== Helpers ============== */
+
+    /**
+     * Solo lo que {@code saveIncremental} agrega después de los bytes originales. El original se
+     * lee una vez de forma secuencial pero no se vuelve a escribir.
+     */
+    private static byte[] incrementOf(PDDocument doc, long originalLength) throws IOException {
+        SkipPrefix out = new SkipPrefix(originalLength);
+        doc.saveIncremental(out);
+        if (out.skipped < originalLength) throw new IOException("Guardado incremental incompleto.");
+        return out.tail.toByteArray();
+    }
+
+    private static boolean sameFile(File a, File b) throws IOException {
+        return a.getCanonicalFile().equals(b.getCanonicalFile());
+    }
+
+    private static File tempNextTo(File f) throws IOException {
+        File dir = f.getAbsoluteFile().getParentFile();
+        return File.createTempFile("pdf", ".tmp", dir);
+    }
+
+    /** Descarta los primeros {@code n} bytes (copia del original) y guarda el resto. */
+    private static final class SkipPrefix extends OutputStream {
+        final ByteArrayOutputStream tail = new ByteArrayOutputStream();
+        final long n;
+        long skipped;
+
+        SkipPrefix(long n) { this.n = n; }
+
+        @Override public void write(int b) {
+            if (skipped < n) skipped++;
+            else tail.write(b);
+        }
+
+        @Override public void write(byte[] b, int off, int len) {
+            int skip = (int) Math.min(len, n - skipped);
+            skipped += skip;
+            if (len > skip) tail.write(b, off + skip, len - skip);
+        }
+    }
+}
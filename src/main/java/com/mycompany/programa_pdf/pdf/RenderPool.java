@@ -0,0 +1,164 @@
+package com.mycompany.programa_pdf.pdf;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copias independientes de un PDF, solo para renderizar en paralelo.
+ *
+ * <p>PDFBox no admite usar un {@link PDDocument} desde varios hilos a la vez, así que con un solo
+ * documento la página visible, la precarga y las miniaturas se esperan entre sí. Aquí el mismo
+ * archivo se abre hasta {@code max} veces (cada copia con su {@link PDFRenderer}) y cada render toma
+ * una copia libre: una copia la usa un solo hilo a la vez. Las copias se abren a medida que hacen
+ * falta y quedan abiertas hasta {@link #close()}.</p>
+ *
+ * <p>Las copias leen el archivo tal como está en disco: los cambios hechos en memoria (p. ej. una
+ * página rotada en la vista previa) hay que renderizarlos desde el documento original.</p>
+ *
+ * <pre>
+ * programa_pdf.render.replicas   copias por documento   (por defecto núcleos - 1, hasta 3; con 1 no hay copias)
+ * </pre>
+ */
+public final class RenderPool implements AutoCloseable {
+
+    private static final class Replica {
+        final PDDocument doc;
+        final PDFRenderer renderer;
+
+        Replica(PDDocument doc) {
+            this.doc = doc;
+            this.renderer = new PDFRenderer(doc);
+        }
+    }
+
+    private final File file;
+    private final int max;
+
+    private final ArrayDeque<Replica> idle = new ArrayDeque<>();
+    private final List<Replica> all = new ArrayList<>();
+    private int opening;
+    private boolean failed;
+    private boolean closed;
+
+    /** Pool para {@code file}, o null si está configurada una sola copia (no habría paralelismo). */
+    public static RenderPool forFile(File file) {
+        int n = defaultReplicas();
+        return n > 1 ? new RenderPool(file, n) : null;
+    }
+
+    public RenderPool(File file, int max) {
+        this.file = file;
+        this.max = Math.max(1, max);
+    }
+
+    /** Cuántos renders pueden correr a la vez. */
+    public int size() {
+        return max;
+    }
+
+    /** El archivo no se pudo abrir (p. ej. tiene contraseña): usar el documento original. */
+    public synchronized boolean failed() {
+        return failed;
+    }
+
+    public BufferedImage render(int pageIndex, float dpi) throws IOException {
+        Replica r = borrow();
+        try {
+            return r.renderer.renderImageWithDPI(pageIndex, dpi, ImageType.RGB);
+        } finally {
+            giveBack(r);
+        }
+    }
+
+    /** La página completa dibujada sobre {@code g} a {@code scale} px por punto. */
+    public void render(int pageIndex, Graphics2D g, float scale) throws IOException {
+        Replica r = borrow();
+        try {
+            r.renderer.renderPageToGraphics(pageIndex, g, scale);
+        } finally {
+            giveBack(r);
+        }
+    }
+
+    /** Cierra las copias libres; las que están en uso se cierran al devolverlas. */
+    @Override public void close() {
+        List<Replica> toClose;
+        synchronized (this) {
+            closed = true;
+            toClose = new ArrayList<>(idle);
+            idle.clear();
+            notifyAll();
+        }
+        for (Replica r : toClose) closeQuietly(r);
+    }
+
+    /* ============== Copias ============== */
+
+    private Replica borrow() throws IOException {
+        synchronized (this) {
+            while (true) {
+                if (closed) throw new IOException("Documento cerrado");
+                if (failed) throw new IOException("No se pudo abrir " + file.getName());
+                Replica r = idle.poll();
+                if (r != null) return r;
+                if (all.size() + opening < max) { opening++; break; }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Render interrumpido", e);
+                }
+            }
+        }
+
+        // Abrir fuera del candado: los demás hilos siguen usando las copias abiertas
+        Replica r = null;
+        try {
+            r = new Replica(Loader.loadPDF(file));
+            return r;
+        } catch (IOException ex) {
+            synchronized (this) { if (all.isEmpty()) failed = true; }
+            throw ex;
+        } finally {
+            synchronized (this) {
+                opening--;
+                if (r != null) all.add(r);
+                notifyAll();
+            }
+        }
+    }
+
+    private void giveBack(Replica r) {
+        synchronized (this) {
+            if (!closed) {
+                idle.push(r);
+                notifyAll();
+                return;
+            }
+        }
+        closeQuietly(r);
+    }
+
+    private static void closeQuietly(Replica r) {
+        try { r.doc.close(); } catch (Exception ignore) {}
+    }
+
+    private static int defaultReplicas() {
+        int def = Math.max(1, Math.min(3, Runtime.getRuntime().availableProcessors() - 1));
+        try {
+            return Math.max(1, Integer.parseInt(System.getProperty("programa_pdf.render.replicas", "").trim()));
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.mycompany.programa_pdf.pdf;
+
+import javax.swing.SwingUtilities;
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Cola común de renders de página para las vistas previas, en lugar de un {@code SwingWorker} por
+ * pedido (que comparten el pool de 10 hilos de Swing sin prioridades y siguen corriendo aunque ya
+ * nadie espere el resultado).
+ *
+ * <p>Tres carriles por prioridad: {@link Lane#VISIBLE} (la página que se está mirando),
+ * {@link Lane#PREFETCH} (vecinas) y {@link Lane#THUMBNAIL}. Dentro de un carril sale primero el
+ * pedido más reciente: al pasar páginas rápido se renderiza la última pedida, no toda la cola.</p>
+ *
+ * <p>Pedidos iguales (mismo documento, página y DPI) se juntan en un solo render y el resultado se
+ * entrega a todos; si el nuevo es más urgente, el render sube de carril. Cada pedido devuelve un
+ * {@link Ticket}: cancelarlo lo saca de la cola si nadie más lo espera. Un render ya empezado no se
+ * interrumpe (PDFBox no lo admite), pero su resultado no se entrega.</p>
+ *
+ * <p>Un mismo documento no se renderiza en dos hilos a la vez: sus pedidos esperan y el hilo libre
+ * toma el de otro documento. Si {@code doc} es un {@link RenderPool}, corren a la vez tantos renders
+ * como copias tiene.</p>
+ *
+ * <pre>
+ * programa_pdf.render.threads   hilos de render   (por defecto la mitad de los núcleos, de 1 a 4)
+ * </pre>
+ */
+public final class RenderScheduler {
+
+    public enum Lane { VISIBLE, PREFETCH, THUMBNAIL }
+
+    /** Produce la imagen (se llama fuera del EDT). */
+    @FunctionalInterface
+    public interface Job { BufferedImage render() throws Exception; }
+
+    /** Un pedido. {@link #cancel()} se puede llamar desde cualquier hilo y más de una vez. */
+    public static final class Ticket {
+        private final RenderScheduler owner;
+        private final Task task;
+        private final Consumer<BufferedImage> onDone;
+        private volatile boolean cancelled;
+
+        private Ticket(RenderScheduler owner, Task task, Consumer<BufferedImage> onDone) {
+            this.owner = owner;
+            this.task = task;
+            this.onDone = onDone;
+        }
+
+        public void cancel() { owner.cancel(this); }
+
+        public boolean isCancelled() { return cancelled; }
+    }
+
+    private record Key(Object doc, int page, int dpiKey) {}
+
+    private static final class Task {
+        final Key key;
+        final Job job;
+        final List<Ticket> waiting = new ArrayList<>();
+        Lane lane;
+        boolean started;
+
+        Task(Key key, Job job, Lane lane) {
+            this.key = key;
+            this.job = job;
+            this.lane = lane;
+        }
+    }
+
+    private static final RenderScheduler SHARED = new RenderScheduler(defaultThreads(), "render");
+
+    private final int threads;
+    private final String threadName;
+
+    // Un deque por carril; las entradas que subieron de carril o se cancelaron se descartan al sacar
+    private final List<ArrayDeque<Task>> lanes = new ArrayList<>();
+    private final Map<Key, Task> queued = new HashMap<>();
+    private final Map<Key, Task> active = new HashMap<>();
+    private final Map<Object, Integer> busyDocs = new HashMap<>(); // renders en curso por documento
+    private int workers;
+
+    public RenderScheduler(int threads, String threadName) {
+        this.threads = Math.max(1, threads);
+        this.threadName = threadName;
+        for (int i = 0; i < Lane.values().length; i++) lanes.add(new ArrayDeque<>());
+    }
+
+    /** Instancia común a todos los diálogos. */
+    public static RenderScheduler shared() {
+        return SHARED;
+    }
+
+    /**
+     * Pide la página {@code page} de {@code doc} a {@code dpi}. {@code doc} identifica el documento
+     * para juntar pedidos y no renderizarlo en dos hilos (el {@code PDDocument} o el {@code File});
+     * {@code onDone} recibe la imagen en el EDT, o null si el render falló.
+     */
+    public synchronized Ticket submit(Lane lane, Object doc, int page, float dpi,
+                                      Job job, Consumer<BufferedImage> onDone) {
+        Key key = new Key(doc, page, Math.round(dpi * 100));
+
+        Task t = active.get(key);
+        if (t == null) t = queued.get(key);
+        if (t != null) {
+            if (!t.started && lane.ordinal() < t.lane.ordinal()) t.lane = lane;
+        } else {
+            t = new Task(key, job, lane);
+            queued.put(key, t);
+        }
+        if (!t.started) {
+            ArrayDeque<Task> q = lanes.get(t.lane.ordinal());
+            if (q.peekLast() != t) q.addLast(t); // el más reciente sale primero
+        }
+
+        Ticket tk = new Ticket(this, t, onDone);
+        t.waiting.add(tk);
+        startWorker();
+        return tk;
+    }
+
+    /** Cancela todos los pedidos de un documento (p. ej. al cerrar el diálogo que lo usa). */
+    public synchronized void cancelAll(Object doc) {
+        drop(k -> k.doc().equals(doc));
+    }
+
+    /**
+     * La página cambió (p. ej. se rotó): cancela sus pedidos y un render en curso ya no se junta
+     * con pedidos nuevos, que la vuelven a renderizar.
+     */
+    public synchronized void invalidate(Object doc, int page) {
+        drop(k -> k.doc().equals(doc) && k.page() == page);
+    }
+
+    /** Llamar con el candado. */
+    private void drop(Predicate<Key> which) {
+        List<Ticket> all = new ArrayList<>();
+        for (Task t : queued.values()) if (which.test(t.key)) all.addAll(t.waiting);
+        for (Task t : active.values()) if (which.test(t.key)) all.addAll(t.waiting);
+        for (Ticket tk : all) cancel(tk);
+        active.keySet().removeIf(which);
+    }
+
+    private synchronized void cancel(Ticket tk) {
+        if (tk.cancelled) return;
+        tk.cancelled = true;
+        Task t = tk.task;
+        t.waiting.remove(tk);
+        if (t.waiting.isEmpty() && !t.started) queued.remove(t.key);
+    }
+
+    /* ============== Hilos ============== */
+
+    /** Llamar con el candado. */
+    private void startWorker() {
+        if (workers >= threads) return;
+        workers++;
+        Thread th = new Thread(this::workLoop, threadName + "-" + workers);
+        th.setDaemon(true);
+        th.setPriority(Thread.NORM_PRIORITY - 1);
+        th.start();
+    }
+
+    private void workLoop() {
+        while (true) {
+            Task t;
+            synchronized (this) {
+                t = next();
+                if (t == null) { workers--; return; }
+                t.started = true;
+                queued.remove(t.key);
+                active.put(t.key, t);
+                busyDocs.merge(t.key.doc(), 1, Integer::sum);
+            }
+
+            BufferedImage img;
+            try {
+                img = t.job.render();
+            } catch (Throwable ex) {
+                img = null;
+            }
+
+            List<Ticket> deliver;
+            synchronized (this) {
+                active.remove(t.key, t);
+                busyDocs.computeIfPresent(t.key.doc(), (d, n) -> n > 1 ? n - 1 : null);
+                deliver = new ArrayList<>(t.waiting);
+            }
+            if (deliver.isEmpty()) continue;
+
+            BufferedImage result = img;
+            SwingUtilities.invokeLater(() -> {
+                for (Ticket tk : deliver) {
+                    if (!tk.cancelled) tk.onDone.accept(result);
+                }
+            });
+        }
+    }
+
+    /**
+     * Siguiente render: el carril más urgente primero y, dentro de él, el pedido más reciente cuyo
+     * documento no esté ya ocupado al máximo. Llamar con el candado.
+     */
+    private Task next() {
+        for (Lane lane : Lane.values()) {
+            for (Iterator<Task> it = lanes.get(lane.ordinal()).descendingIterator(); it.hasNext(); ) {
+                Task t = it.next();
+                if (t.lane != lane || queued.get(t.key) != t) { it.remove(); continue; } // subió o se canceló
+                if (busyDocs.getOrDefault(t.key.doc(), 0) >= parallelism(t.key.doc())) continue;
+                it.remove();
+                return t;
+            }
+        }
+        return null;
+    }
+
+    private static int parallelism(Object doc) {
+        return (doc instanceof RenderPool pool) ? pool.size() : 1;
+    }
+
+    private static int defaultThreads() {
+        int def = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+        try {
+            return Math.max(1, Integer.parseInt(System.getProperty("programa_pdf.render.threads", "").trim()));
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+}
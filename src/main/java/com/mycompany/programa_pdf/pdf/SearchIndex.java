@@ -0,0 +1,687 @@
+package com.mycompany.programa_pdf.pdf;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Índice invertido del texto de los PDF procesados: qué archivo y qué página contienen cada palabra.
+ * Buscar no abre ningún PDF; solo lee las listas de páginas de las palabras pedidas.
+ *
+ * <p>Las palabras se guardan en minúsculas y sin acentos ("Canción" = "cancion"). Una búsqueda de
+ * varias palabras devuelve las páginas que las tienen todas; la última vale también como prefijo,
+ * para buscar mientras se escribe.</p>
+ *
+ * <p><b>En disco</b>, bajo {@code ~/.programa_pdf/index}:</p>
+ * <ul>
+ *   <li>{@code index.bin}: los documentos (ruta, hash del contenido, páginas) y los segmentos vigentes.
+ *       Se reescribe entero en un temporal y se reemplaza.</li>
+ *   <li>{@code seg-N.seg}: un segmento inmutable. Diccionario de palabras ordenado (que se carga en
+ *       memoria) y, por palabra, sus pares documento/página ordenados y codificados como diferencias
+ *       en varint.</li>
+ * </ul>
+ *
+ * <p>Cada PDF indexado agrega un segmento pequeño; al pasar de {@code maxSegments} se funden todos en
+ * uno y se descartan los documentos reemplazados. Si un archivo cambia se vuelve a indexar y la
+ * versión anterior queda marcada como borrada. El texto sale de {@link TextCache}, así que indexar un
+ * PDF recién extraído no vuelve a leerlo.</p>
+ *
+ * <p>Se indexa en un hilo propio en segundo plano ({@link #submit}); las búsquedas pueden correr a la
+ * vez desde cualquier hilo.</p>
+ *
+ * <pre>
+ * programa_pdf.index.maxSegments   segmentos antes de fundirlos en uno   (por defecto 8)
+ * </pre>
+ */
+public final class SearchIndex {
+
+    /** Una página que contiene todas las palabras buscadas. */
+    public record Hit(File file, int page, String hash) {}
+
+    /** Hasta {@code limit} páginas, de los documentos indexados más recientes primero. */
+    public record Result(List<Hit> hits, int total) {}
+
+    private static final class Doc {
+        final int id;
+        final String path;
+        final String hash;
+        final int pages;
+        boolean deleted;
+
+        Doc(int id, String path, String hash, int pages) {
+            this.id = id;
+            this.path = path;
+            this.hash = hash;
+            this.pages = pages;
+        }
+    }
+
+    /** Segmento abierto: diccionario en memoria, listas leídas del archivo a pedido. */
+    private static final class Segment {
+        final File file;
+        final String[] terms;
+        final long[] offsets;   // terms.length + 1 posiciones absolutas en el archivo
+        RandomAccessFile raf;   // se abre al buscar por primera vez
+
+        Segment(File file, String[] terms, long[] offsets) {
+            this.file = file;
+            this.terms = terms;
+            this.offsets = offsets;
+        }
+
+        byte[] postings(int t) throws IOException {
+            if (raf == null) raf = new RandomAccessFile(file, "r");
+            byte[] b = new byte[(int) (offsets[t + 1] - offsets[t])];
+            raf.seek(offsets[t]);
+            raf.readFully(b);
+            return b;
+        }
+
+        void close() {
+            if (raf != null) try { raf.close(); } catch (IOException ignore) {}
+            raf = null;
+        }
+    }
+
+    private static final int MAGIC = 0x50495831;     // "PIX1"
+    private static final int SEG_MAGIC = 0x50495853; // "PIXS"
+    private static final int MIN_TERM = 2;
+    private static final int MAX_TERM = 40;
+    private static final int MAX_PREFIX_TERMS = 256; // palabras que puede abarcar un prefijo
+
+    private static volatile SearchIndex shared;
+
+    private final File dir;
+    private final int maxSegments;
+
+    // Con el candado de la instancia
+    private final Map<Integer, Doc> docs = new HashMap<>();
+    private final Map<String, Doc> byPath = new HashMap<>();
+    private final List<Segment> segments = new ArrayList<>();
+    private int nextDocId;
+    private int nextSeg;
+
+    // Una escritura a la vez: los segmentos quedan en orden de documento
+    private final Object writeLock = new Object();
+
+    // Cola del hilo indexador
+    private final Set<String> queue = new LinkedHashSet<>();
+    private Thread worker;
+    private boolean running;
+
+    public SearchIndex(File dir, int maxSegments) {
+        this.dir = dir;
+        this.maxSegments = Math.max(2, maxSegments);
+        load();
+    }
+
+    /** Índice común bajo {@code ~/.programa_pdf/index}; se carga la primera vez que se usa. */
+    public static SearchIndex shared() {
+        SearchIndex s = shared;
+        if (s == null) {
+            synchronized (SearchIndex.class) {
+                s = shared;
+                if (s == null) {
+                    s = new SearchIndex(new File(System.getProperty("user.home"), ".programa_pdf/index"),
+                            intProp("programa_pdf.index.maxSegments", 8));
+                    shared = s;
+                }
+            }
+        }
+        return s;
+    }
+
+    /* ============== Indexar ============== */
+
+    /** Encola un PDF para indexar en segundo plano (se ignora si no es PDF o ya está al día). */
+    public void submit(File pdf) {
+        if (pdf == null || !pdf.getName().toLowerCase(Locale.ROOT).endsWith(".pdf")) return;
+        synchronized (queue) {
+            if (!queue.add(pdf.getAbsolutePath()) || worker != null) return;
+            worker = new Thread(this::drain, "search-index");
+            worker.setDaemon(true);
+            worker.setPriority(Thread.MIN_PRIORITY);
+            worker.start();
+        }
+    }
+
+    /** Archivos esperando a ser indexados (incluido el que está en curso). */
+    public int pending() {
+        synchronized (queue) {
+            return queue.size() + (running ? 1 : 0);
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            String path;
+            synchronized (queue) {
+                if (queue.isEmpty()) { worker = null; return; }
+                path = queue.iterator().next();
+                queue.remove(path); // si se vuelve a pedir mientras tanto, se revisa de nuevo
+                running = true;
+            }
+            try {
+                index(new File(path));
+            } catch (Exception ignore) {
+                // con contraseña, dañado o borrado: queda sin indexar
+            } finally {
+                synchronized (queue) { running = false; }
+            }
+        }
+    }
+
+    /** Indexa {@code pdf} ya mismo en el hilo que llama (si cambió desde la última vez). */
+    public void index(File pdf) throws IOException {
+        synchronized (writeLock) {
+            indexLocked(pdf);
+        }
+    }
+
+    private void indexLocked(File pdf) throws IOException {
+        if (!pdf.isFile()) return;
+        String path = pdf.getAbsolutePath();
+        String hash = TextCache.hash(pdf);
+        synchronized (this) {
+            Doc old = byPath.get(path);
+            if (old != null && old.hash.equals(hash)) return;
+        }
+
+        Map<String, int[]> pagesByTerm = new HashMap<>(); // [0] = cantidad, luego las páginas
+        int[] pageCount = {0};
+        TextCache.pages(pdf, 0, Integer.MAX_VALUE, (i, text) -> {
+            pageCount[0] = i + 1;
+            tokenize(text, term -> {
+                int[] p = pagesByTerm.get(term);
+                if (p == null) pagesByTerm.put(term, p = new int[4]);
+                if (p[0] > 0 && p[p[0]] == i) return; // ya contada en esta página
+                if (p[0] + 1 == p.length) {
+                    p = Arrays.copyOf(p, p.length * 2);
+                    pagesByTerm.put(term, p);
+                }
+                p[++p[0]] = i;
+            });
+        }, null);
+
+        int id;
+        File segFile;
+        synchronized (this) {
+            id = nextDocId++;
+            segFile = new File(dir, "seg-" + (nextSeg++) + ".seg");
+        }
+
+        String[] terms = pagesByTerm.keySet().toArray(new String[0]);
+        Arrays.sort(terms);
+        Files.createDirectories(dir.toPath());
+        try (SegmentWriter w = new SegmentWriter(segFile)) {
+            for (String t : terms) {
+                int[] p = pagesByTerm.get(t);
+                long[] postings = new long[p[0]];
+                for (int k = 0; k < p[0]; k++) postings[k] = posting(id, p[k + 1]);
+                w.add(t, postings);
+            }
+        }
+        Segment seg = openSegment(segFile);
+
+        boolean compact;
+        synchronized (this) {
+            Doc old = byPath.get(path);
+            if (old != null) old.deleted = true;
+            Doc d = new Doc(id, path, hash, pageCount[0]);
+            docs.put(id, d);
+            byPath.put(path, d);
+            segments.add(seg);
+            writeManifest();
+            compact = segments.size() > maxSegments;
+        }
+        if (compact) compact();
+    }
+
+    /** Quita del índice todo lo indexado (los segmentos y la lista de documentos). */
+    public void clear() {
+        synchronized (writeLock) {
+            synchronized (this) { clearLocked(); }
+        }
+    }
+
+    private void clearLocked() {
+        for (Segment s : segments) s.close();
+        segments.clear();
+        docs.clear();
+        byPath.clear();
+        File[] files = dir.listFiles();
+        if (files != null) for (File f : files) f.delete();
+    }
+
+    /* ============== Buscar ============== */
+
+    /**
+     * Páginas que contienen todas las palabras de {@code query}. Los documentos que ya no existen
+     * en disco se omiten.
+     */
+    public Result search(String query, int limit) throws IOException {
+        List<String> words = new ArrayList<>();
+        tokenize(query, w -> { if (!words.contains(w)) words.add(w); });
+        boolean lastIsPrefix = !query.isEmpty() && !Character.isWhitespace(query.charAt(query.length() - 1));
+        if (words.isEmpty()) return new Result(List.of(), 0);
+
+        long[] found = null;
+        Map<Integer, Boolean> exists = new HashMap<>();
+        synchronized (this) {
+            for (int k = 0; k < words.size(); k++) {
+                long[] p = lookup(words.get(k), lastIsPrefix && k == words.size() - 1);
+                found = (found == null) ? p : intersect(found, p);
+                if (found.length == 0) break;
+            }
+
+            // Más recientes primero; la página en orden dentro de cada documento
+            List<Hit> hits = new ArrayList<>();
+            int total = 0;
+            for (int i = found.length - 1; i >= 0; ) {
+                int id = (int) (found[i] >>> 32);
+                int start = i;
+                while (start > 0 && (int) (found[start - 1] >>> 32) == id) start--;
+                Doc d = docs.get(id);
+                if (d != null && !d.deleted && exists.computeIfAbsent(id, x -> new File(d.path).isFile())) {
+                    for (int j = start; j <= i; j++) {
+                        if (hits.size() < limit) hits.add(new Hit(new File(d.path), (int) found[j], d.hash));
+                        total++;
+                    }
+                }
+                i = start - 1;
+            }
+            return new Result(hits, total);
+        }
+    }
+
+    /** Pares documento/página de una palabra (o de todas las que empiezan así), ordenados. */
+    private long[] lookup(String word, boolean prefix) throws IOException {
+        LongList out = new LongList();
+        boolean several = false;
+        for (Segment s : segments) {
+            int i = Arrays.binarySearch(s.terms, word);
+            if (!prefix) {
+                if (i >= 0) decode(s.postings(i), out);
+                continue;
+            }
+            int n = 0;
+            for (int t = (i >= 0) ? i : -i - 1; t < s.terms.length && s.terms[t].startsWith(word)
+                    && n < MAX_PREFIX_TERMS; t++, n++) {
+                decode(s.postings(t), out);
+            }
+            several |= n > 1;
+        }
+        // Cada segmento tiene sus propios documentos: solo un prefijo puede repetir o desordenar
+        return several ? out.sortedDistinct() : out.toArray();
+    }
+
+    private static long[] intersect(long[] a, long[] b) {
+        long[] out = new long[Math.min(a.length, b.length)];
+        int n = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] < b[j]) i++;
+            else if (a[i] > b[j]) j++;
+            else { out[n++] = a[i]; i++; j++; }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    /**
+     * Un fragmento de la página alrededor de la primera palabra buscada, si el texto está en
+     * {@link TextCache}; cadena vacía si no.
+     */
+    public static String snippet(Hit hit, String query, int width) {
+        String text = TextCache.page(hit.hash(), hit.page());
+        if (text == null || text.isEmpty()) return "";
+        List<String> words = new ArrayList<>();
+        tokenize(query, words::add);
+
+        char[] folded = new char[text.length()];
+        for (int i = 0; i < folded.length; i++) folded[i] = fold(text.charAt(i));
+        String haystack = new String(folded);
+        int at = -1;
+        for (String w : words) {
+            at = haystack.indexOf(w);
+            if (at >= 0) break;
+        }
+        int from = Math.max(0, at - width / 3);
+        int to = Math.min(text.length(), from + width);
+        String s = text.substring(from, to).replaceAll("\\s+", " ").trim();
+        return (from > 0 ? "…" : "") + s + (to < text.length() ? "…" : "");
+    }
+
+    /* ============== Palabras ============== */
+
+    private static final char[] FOLD = new char[Character.MAX_VALUE + 1]; // 0 = sin calcular
+
+    /** Minúscula sin acentos; cualquier otro carácter que no sea letra ni dígito, espacio. */
+    private static char fold(char c) {
+        if (c < 128) {
+            return Character.isLetterOrDigit(c) ? Character.toLowerCase(c) : ' ';
+        }
+        char f = FOLD[c];
+        if (f == 0) {
+            if (!Character.isLetterOrDigit(c)) {
+                f = ' ';
+            } else {
+                String d = Normalizer.normalize(String.valueOf(Character.toLowerCase(c)), Normalizer.Form.NFD);
+                f = d.isEmpty() ? c : d.charAt(0);
+            }
+            FOLD[c] = f;
+        }
+        return f;
+    }
+
+    private static void tokenize(String text, Consumer<String> out) {
+        StringBuilder cur = new StringBuilder();
+        int n = text.length();
+        for (int i = 0; i <= n; i++) {
+            char f = (i < n) ? fold(text.charAt(i)) : ' ';
+            if (f != ' ') {
+                cur.append(f);
+                continue;
+            }
+            int len = cur.length();
+            if (len >= MIN_TERM && len <= MAX_TERM) out.accept(cur.toString());
+            cur.setLength(0);
+        }
+    }
+
+    /* ============== Segmentos ============== */
+
+    private static long posting(int doc, int page) {
+        return ((long) doc << 32) | (page & 0xffffffffL);
+    }
+
+    /**
+     * Escribe un segmento: cabecera, diccionario y listas. El diccionario se arma en memoria para
+     * saber dónde empiezan las listas; las listas van a un temporal.
+     */
+    private static final class SegmentWriter implements AutoCloseable {
+        private final File target;
+        private final File tmpPostings;
+        private final DataOutputStream postings;
+        private final ByteArrayOutputStream dictBytes = new ByteArrayOutputStream();
+        private final DataOutputStream dict = new DataOutputStream(dictBytes);
+        private final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        private int terms;
+        private boolean failed = true;
+
+        SegmentWriter(File target) throws IOException {
+            this.target = target;
+            this.tmpPostings = File.createTempFile("seg", ".tmp", target.getParentFile());
+            this.postings = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpPostings), 64 * 1024));
+        }
+
+        /** {@code sorted} en orden ascendente; las palabras también en orden. */
+        void add(String term, long[] sorted) throws IOException {
+            buf.reset();
+            long prev = 0;
+            for (long p : sorted) {
+                int doc = (int) (p >>> 32), page = (int) p;
+                int prevDoc = (int) (prev >>> 32), prevPage = (int) prev;
+                int dd = doc - prevDoc;
+                writeVarInt(buf, dd);
+                writeVarInt(buf, (dd == 0) ? page - prevPage : page);
+                prev = p;
+            }
+            dict.writeUTF(term);
+            dict.writeInt(buf.size());
+            buf.writeTo(postings);
+            terms++;
+        }
+
+        @Override public void close() throws IOException {
+            File tmp = null;
+            try {
+                postings.close();
+                dict.flush();
+                tmp = File.createTempFile("seg", ".tmp", target.getParentFile());
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 64 * 1024));
+                     FileInputStream in = new FileInputStream(tmpPostings)) {
+                    out.writeInt(SEG_MAGIC);
+                    out.writeInt(terms);
+                    out.writeInt(dictBytes.size());
+                    dictBytes.writeTo(out);
+                    in.transferTo(out);
+                }
+                Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                failed = false;
+            } finally {
+                tmpPostings.delete();
+                if (tmp != null) tmp.delete();
+                if (failed) target.delete();
+            }
+        }
+    }
+
+    private static Segment openSegment(File f) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), 64 * 1024))) {
+            if (in.readInt() != SEG_MAGIC) throw new IOException("Segmento inválido: " + f.getName());
+            int n = in.readInt();
+            long pos = 12L + in.readInt();
+            String[] terms = new String[n];
+            long[] offsets = new long[n + 1];
+            for (int i = 0; i < n; i++) {
+                terms[i] = in.readUTF();
+                offsets[i] = pos;
+                pos += in.readInt();
+            }
+            offsets[n] = pos;
+            if (pos > f.length()) throw new IOException("Segmento incompleto: " + f.getName());
+            return new Segment(f, terms, offsets);
+        }
+    }
+
+    /**
+     * Funde todos los segmentos en uno, sin los documentos borrados. Corre con {@code writeLock}: los
+     * segmentos no cambian mientras tanto y las búsquedas siguen usando los viejos hasta el cambio.
+     */
+    private void compact() throws IOException {
+        List<Segment> old;
+        Set<Integer> dead = new HashSet<>();
+        File segFile;
+        synchronized (this) {
+            old = new ArrayList<>(segments);
+            for (Doc d : docs.values()) if (d.deleted) dead.add(d.id);
+            segFile = new File(dir, "seg-" + (nextSeg++) + ".seg");
+        }
+
+        // Lectores propios: el RandomAccessFile de cada segmento es de las búsquedas
+        RandomAccessFile[] rafs = new RandomAccessFile[old.size()];
+        int[] cursor = new int[old.size()];
+        try (SegmentWriter w = new SegmentWriter(segFile)) {
+            for (int i = 0; i < rafs.length; i++) rafs[i] = new RandomAccessFile(old.get(i).file, "r");
+            while (true) {
+                String term = null;
+                for (int i = 0; i < rafs.length; i++) {
+                    Segment s = old.get(i);
+                    if (cursor[i] < s.terms.length && (term == null || s.terms[cursor[i]].compareTo(term) < 0)) {
+                        term = s.terms[cursor[i]];
+                    }
+                }
+                if (term == null) break;
+
+                // Los segmentos están en orden de documento: concatenar mantiene el orden
+                LongList merged = new LongList();
+                for (int i = 0; i < rafs.length; i++) {
+                    Segment s = old.get(i);
+                    if (cursor[i] < s.terms.length && s.terms[cursor[i]].equals(term)) {
+                        int t = cursor[i]++;
+                        byte[] b = new byte[(int) (s.offsets[t + 1] - s.offsets[t])];
+                        rafs[i].seek(s.offsets[t]);
+                        rafs[i].readFully(b);
+                        decode(b, merged);
+                    }
+                }
+                long[] live = merged.without(dead);
+                if (live.length > 0) w.add(term, live);
+            }
+        } finally {
+            for (RandomAccessFile r : rafs) if (r != null) try { r.close(); } catch (IOException ignore) {}
+        }
+        Segment seg = openSegment(segFile);
+
+        synchronized (this) {
+            segments.removeAll(old);
+            segments.add(0, seg);
+            docs.values().removeIf(d -> dead.contains(d.id));
+            writeManifest();
+            for (Segment s : old) {
+                s.close();
+                s.file.delete();
+            }
+        }
+    }
+
+    /* ============== Manifiesto ============== */
+
+    /** Llamar con el candado. Sin disco el índice sigue en memoria hasta cerrar la aplicación. */
+    private void writeManifest() {
+        File tmp = null;
+        try {
+            tmp = File.createTempFile("index", ".tmp", dir);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(nextDocId);
+                out.writeInt(nextSeg);
+                out.writeInt(docs.size());
+                for (Doc d : docs.values()) {
+                    out.writeInt(d.id);
+                    out.writeUTF(d.path);
+                    out.writeUTF(d.hash);
+                    out.writeInt(d.pages);
+                    out.writeBoolean(d.deleted);
+                }
+                out.writeInt(segments.size());
+                for (Segment s : segments) out.writeUTF(s.file.getName());
+            }
+            Files.move(tmp.toPath(), new File(dir, "index.bin").toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ignore) {
+        } finally {
+            if (tmp != null) tmp.delete();
+        }
+    }
+
+    /** Lee el manifiesto; si falta o está dañado se empieza de cero. Borra lo que no figura en él. */
+    private synchronized void load() {
+        File manifest = new File(dir, "index.bin");
+        Set<String> live = new HashSet<>();
+        if (manifest.isFile()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(manifest)))) {
+                if (in.readInt() != MAGIC) throw new IOException("Índice inválido");
+                nextDocId = in.readInt();
+                nextSeg = in.readInt();
+                for (int n = in.readInt(); n > 0; n--) {
+                    Doc d = new Doc(in.readInt(), in.readUTF(), in.readUTF(), in.readInt());
+                    d.deleted = in.readBoolean();
+                    docs.put(d.id, d);
+                    if (!d.deleted) byPath.put(d.path, d);
+                }
+                for (int n = in.readInt(); n > 0; n--) {
+                    String name = in.readUTF();
+                    segments.add(openSegment(new File(dir, name)));
+                    live.add(name);
+                }
+            } catch (IOException ex) {
+                for (Segment s : segments) s.close();
+                segments.clear();
+                docs.clear();
+                byPath.clear();
+                live.clear();
+                nextDocId = 0;
+                nextSeg = 0;
+            }
+        }
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                if (!f.getName().equals("index.bin") && !live.contains(f.getName())) f.delete();
+            }
+        }
+    }
+
+    /* ============== Utilidades ============== */
+
+    private static void writeVarInt(ByteArrayOutputStream out, int v) {
+        while ((v & ~0x7f) != 0) {
+            out.write((v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        out.write(v);
+    }
+
+    private static void decode(byte[] b, LongList out) {
+        int pos = 0, doc = 0, page = 0;
+        int[] v = new int[2];
+        while (pos < b.length) {
+            for (int k = 0; k < 2; k++) {
+                int x, shift = 0;
+                v[k] = 0;
+                do {
+                    x = b[pos++];
+                    v[k] |= (x & 0x7f) << shift;
+                    shift += 7;
+                } while ((x & 0x80) != 0);
+            }
+            if (v[0] != 0) { doc += v[0]; page = v[1]; }
+            else page += v[1];
+            out.add(posting(doc, page));
+        }
+    }
+
+    /** Lista de {@code long} sin cajas. */
+    private static final class LongList {
+        long[] a = new long[16];
+        int n;
+
+        void add(long v) {
+            if (n == a.length) a = Arrays.copyOf(a, n * 2);
+            a[n++] = v;
+        }
+
+        long[] toArray() { return Arrays.copyOf(a, n); }
+
+        long[] sortedDistinct() {
+            long[] s = toArray();
+            Arrays.sort(s);
+            int k = 0;
+            for (int i = 0; i < s.length; i++) if (k == 0 || s[i] != s[k - 1]) s[k++] = s[i];
+            return Arrays.copyOf(s, k);
+        }
+
+        long[] without(Set<Integer> deadDocs) {
+            if (deadDocs.isEmpty()) return toArray();
+            long[] out = new long[n];
+            int k = 0;
+            for (int i = 0; i < n; i++) if (!deadDocs.contains((int) (a[i] >>> 32))) out[k++] = a[i];
+            return Arrays.copyOf(out, k);
+        }
+    }
+
+    private static int intProp(String key, int def) {
+        try { return Integer.parseInt(System.getProperty(key, "").trim()); }
+        catch (NumberFormatException e) { return def; }
+    }
+}
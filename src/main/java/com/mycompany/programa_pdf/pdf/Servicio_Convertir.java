@@ -4,32 +4,15 @@ import org.apache.pdfbox.Loader;
 import org.apache.pdfbox.multipdf.PDFMergerUtility;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
-import org.apache.pdfbox.pdmodel.PDPageContentStream;
-import org.apache.pdfbox.pdmodel.PDPageContentStream.AppendMode;
-import org.apache.pdfbox.pdmodel.PDResources;
-import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
-import org.apache.pdfbox.pdmodel.graphics.state.PDExtendedGraphicsState;
-import org.apache.pdfbox.pdmodel.font.PDType1Font;
-import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
-import org.apache.pdfbox.rendering.ImageType;
-import org.apache.pdfbox.rendering.PDFRenderer;
-import org.apache.pdfbox.text.PDFTextStripper;
-import org.apache.pdfbox.util.Matrix;
-
-import org.jodconverter.core.DocumentConverter;
+
 import org.jodconverter.core.office.OfficeException;
-import org.jodconverter.local.LocalConverter;
-import org.jodconverter.local.office.LocalOfficeManager;
 
-import javax.imageio.ImageIO;
 import java.awt.Color;
-import java.awt.image.BufferedImage;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 public class Servicio_Convertir {
 
@@ -54,17 +37,10 @@ public class Servicio_Convertir {
 
     /** Una imagen (png/jpg/webp/...) -> PDF (página del tamaño de la imagen). */
     public File imageToPdf(File image, File outPdf) throws IOException {
-        BufferedImage img = ImageIO.read(image);
-        if (img == null) throw new IOException("No se pudo leer la imagen: " + image.getAbsolutePath());
         requireParentExists(outPdf);
 
         try (PDDocument doc = new PDDocument()) {
-            PDPage page = new PDPage(new PDRectangle(img.getWidth(), img.getHeight()));
-            doc.addPage(page);
-            PDImageXObject pdImg = PDImageXObject.createFromFileByContent(image, doc);
-            try (PDPageContentStream cs = new PDPageContentStream(doc, page)) {
-                cs.drawImage(pdImg, 0, 0, img.getWidth(), img.getHeight());
-            }
+            addImagePage(doc, image);
             doc.save(outPdf);
         }
         return outPdf;
@@ -77,25 +53,24 @@ public class Servicio_Convertir {
         requireParentExists(outPdf);
 
         try (PDDocument doc = new PDDocument()) {
-            for (File imgFile : images) {
-                BufferedImage img = ImageIO.read(imgFile);
-                if (img == null) throw new IOException("No se pudo leer: " + imgFile.getAbsolutePath());
-                PDPage page = new PDPage(new PDRectangle(img.getWidth(), img.getHeight()));
-                doc.addPage(page);
-                PDImageXObject pdImg = PDImageXObject.createFromFileByContent(imgFile, doc);
-                try (PDPageContentStream cs = new PDPageContentStream(doc, page)) {
-                    cs.drawImage(pdImg, 0, 0, img.getWidth(), img.getHeight());
-                }
-            }
+            for (File imgFile : images) addImagePage(doc, imgFile);
             doc.save(outPdf);
         }
         return outPdf;
     }
 
+    /**
+     * Agrega una página del tamaño de la imagen. No decodifica píxeles para obtener el tamaño:
+     * los JPEG se insertan tal cual (ver {@link ImageEmbedder}).
+     */
+    private static void addImagePage(PDDocument doc, File imgFile) throws IOException {
+        ImageEmbedder.addImagePage(doc, imgFile, 0, 0f);
+    }
+
     /* ============== B) Office -> PDF (LibreOffice) ============== */
 
     /**
-     * DOC/DOCX/XLS/XLSX/PPT/PPTX -> PDF usando LibreOffice en modo headless.
+     * DOC/DOCX/XLS/XLSX/PPT/PPTX -> PDF usando LibreOffice en modo headless (vía {@link OfficePool}).
      * @param libreOfficeHomeOrNull Carpeta de instalación de LibreOffice (p. ej. "C:/Program Files/LibreOffice") o null para autodetectar.
      */
     public File officeToPdf(File officeFile, File outPdf, File libreOfficeHomeOrNull)
@@ -105,19 +80,9 @@ public class Servicio_Convertir {
             throw new IOException("Archivo de Office no encontrado: " + officeFile);
         requireParentExists(outPdf);
 
-        LocalOfficeManager.Builder builder = LocalOfficeManager.builder();
-        if (libreOfficeHomeOrNull != null) builder.officeHome(libreOfficeHomeOrNull);
-        builder.taskExecutionTimeout(120_000L);
-
-        LocalOfficeManager office = builder.build();
-        try {
-            office.start();
-            DocumentConverter conv = LocalConverter.make(office);
-            conv.convert(officeFile).to(outPdf).execute();
-            return outPdf;
-        } finally {
-            office.stop();
-        }
+        // Pool compartido: LibreOffice se arranca una vez y se reutiliza entre conversiones
+        OfficePool.convert(officeFile, outPdf, libreOfficeHomeOrNull);
+        return outPdf;
     }
 
     /* ============== C) PDF -> Imágenes en ZIP ============== */
@@ -129,41 +94,42 @@ public class Servicio_Convertir {
      * @param dpi    resolución de renderizado (150/200/300...)
      */
     public File pdfToImagesAsZip(File pdf, File zipOut, String format, float dpi) throws IOException {
+        return pdfToImagesAsZip(pdf, zipOut, format, dpi, 1);
+    }
+
+    /**
+     * Igual que {@link #pdfToImagesAsZip(File, File, String, float)} pero renderiza y codifica
+     * las páginas en {@code threads} hilos (cada uno con su propia copia del PDF). Las entradas
+     * del ZIP quedan en orden de página.
+     */
+    public File pdfToImagesAsZip(File pdf, File zipOut, String format, float dpi, int threads) throws IOException {
         String fmt = (format == null) ? "png" : format.toLowerCase();
         if (!fmt.equals("png") && !fmt.equals("jpg") && !fmt.equals("jpeg")) {
             throw new IOException("Formato no soportado: " + format + " (usa png/jpg)");
         }
         requireParentExists(zipOut);
 
-        try (PDDocument doc = Loader.loadPDF(pdf);
-             ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(zipOut))) {
-
-            PDFRenderer renderer = new PDFRenderer(doc);
-            String ext = fmt.equals("jpg") ? "jpg" : "png";
-
-            for (int i = 0; i < doc.getNumberOfPages(); i++) {
-                var bim = renderer.renderImageWithDPI(i, dpi, ImageType.RGB);
-
-                String entryName = "%s_page_%03d.%s".formatted(base(pdf.getName()), i + 1, ext);
-
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                ImageIO.write(bim, ext, baos);
-                baos.flush();
-
-                zos.putNextEntry(new ZipEntry(entryName));
-                zos.write(baos.toByteArray());
-                zos.closeEntry();
-                baos.close();
-            }
-        }
+        String ext = fmt.equals("png") ? "png" : "jpg";
+        if (threads > 1) PdfToZipExporter.exportParallel(pdf, zipOut, ext, dpi, threads, base(pdf.getName()));
+        else PdfToZipExporter.exportSequential(pdf, zipOut, ext, dpi, base(pdf.getName()));
         return zipOut;
     }
 
     /* ============== D) Unir PDFs ============== */
 
+    /** Une los PDFs; con entradas grandes elige sola la unión por flujo (ver {@link PdfMerger}). */
     public File mergePdfs(List<File> pdfs, File outPdf) throws IOException {
+        return mergePdfs(pdfs, outPdf, pdfs != null && PdfMerger.isLarge(pdfs));
+    }
+
+    /**
+     * @param lowMemory true: abre, copia y cierra cada origen de a uno (memoria acotada);
+     *                  false: PDFMergerUtility mantiene todos los orígenes abiertos hasta guardar
+     */
+    public File mergePdfs(List<File> pdfs, File outPdf, boolean lowMemory) throws IOException {
         if (pdfs == null || pdfs.isEmpty()) throw new IOException("No se recibieron PDFs.");
         requireParentExists(outPdf);
+        if (lowMemory) return PdfMerger.mergeStreaming(pdfs, outPdf);
 
         PDFMergerUtility mu = new PDFMergerUtility();
         for (File f : pdfs) {
@@ -171,7 +137,8 @@ public class Servicio_Convertir {
             mu.addSource(f);
         }
         mu.setDestinationFileName(outPdf.getAbsolutePath());
-        mu.mergeDocuments(null); // si usas PDFBox 3, puede aceptarte null sin problema
+        // Streams del resultado en RAM hasta el tope configurado; el resto a un temporal
+        mu.mergeDocuments(PdfMerger.mixedCache());
         return outPdf;
     }
 
@@ -202,84 +169,56 @@ public class Servicio_Convertir {
 
     /** Rota TODAS las páginas. degrees: 90, 180 o 270. */
     public File rotateAll(File inputPdf, File outPdf, int degrees) throws IOException {
+        return rotateAll(inputPdf, outPdf, degrees, PdfUpdater.defaultIncremental());
+    }
+
+    /** @param incremental anexar solo los cambios (ver {@link PdfUpdater}); outPdf puede ser inputPdf */
+    public File rotateAll(File inputPdf, File outPdf, int degrees, boolean incremental) throws IOException {
         requireParentExists(outPdf);
-        try (PDDocument doc = Loader.loadPDF(inputPdf)) {
+        return PdfUpdater.update(inputPdf, outPdf, incremental, doc -> {
             for (int i = 0; i < doc.getNumberOfPages(); i++) {
                 PDPage p = doc.getPage(i);
                 int rot = p.getRotation();
                 p.setRotation((rot + degrees) % 360);
             }
-            doc.save(outPdf);
-            return outPdf;
-        }
+        });
     }
 
     /** Rota un rango [fromPage..toPage] (1-based). */
     public File rotateRange(File inputPdf, File outPdf, int degrees, int fromPage, int toPage) throws IOException {
+        return rotateRange(inputPdf, outPdf, degrees, fromPage, toPage, PdfUpdater.defaultIncremental());
+    }
+
+    /** @param incremental anexar solo los cambios (ver {@link PdfUpdater}); outPdf puede ser inputPdf */
+    public File rotateRange(File inputPdf, File outPdf, int degrees, int fromPage, int toPage,
+                            boolean incremental) throws IOException {
         requireParentExists(outPdf);
-        try (PDDocument doc = Loader.loadPDF(inputPdf)) {
+        return PdfUpdater.update(inputPdf, outPdf, incremental, doc -> {
             int total = doc.getNumberOfPages();
-            if (fromPage < 1) fromPage = 1;
-            if (toPage > total) toPage = total;
-            for (int i = fromPage - 1; i <= toPage - 1; i++) {
+            int from = Math.max(1, fromPage);
+            int to = Math.min(total, toPage);
+            for (int i = from - 1; i <= to - 1; i++) {
                 PDPage p = doc.getPage(i);
                 int rot = p.getRotation();
                 p.setRotation((rot + degrees) % 360);
             }
-            doc.save(outPdf);
-            return outPdf;
-        }
+        });
     }
 
     /* ===================== G) Marca de agua de texto ===================== */
 
     public File watermarkText(File inputPdf, File outPdf, String text, float fontSize) throws IOException {
+        return watermarkText(inputPdf, outPdf, text, fontSize, PdfUpdater.defaultIncremental());
+    }
+
+    /** @param incremental anexar solo los cambios (ver {@link PdfUpdater}); outPdf puede ser inputPdf */
+    public File watermarkText(File inputPdf, File outPdf, String text, float fontSize,
+                              boolean incremental) throws IOException {
         requireParentExists(outPdf);
-        try (PDDocument doc = Loader.loadPDF(inputPdf)) {
-            for (PDPage page : doc.getPages()) {
-                PDRectangle media = page.getMediaBox();
-                float pw = media.getWidth();
-                float ph = media.getHeight();
-
-                // Transparencia (20%)
-                PDExtendedGraphicsState gs = new PDExtendedGraphicsState();
-                gs.setNonStrokingAlphaConstant(0.20f);
-
-                // Asegurar resources en la página (no necesitamos el nombre COS para setearlo)
-                PDResources res = page.getResources();
-                if (res == null) { res = new PDResources(); page.setResources(res); }
-                // res.add(gs); // opcional; no es necesario para aplicar con setGraphicsStateParameters
-
-                try (PDPageContentStream cs = new PDPageContentStream(
-                        doc, page, AppendMode.APPEND, true, true)) {
-
-                    // Aplica el estado extendido directamente
-                    cs.setGraphicsStateParameters(gs);
-
-                    // Color gris claro (opción A con java.awt.Color; opción B sería normalizar 0..1)
-                    cs.setNonStrokingColor(new Color(200, 200, 200));
-
-                    PDType1Font font = new PDType1Font(Standard14Fonts.FontName.HELVETICA_BOLD);
-
-                    // Ancho aproximado del texto para poder centrar
-                    float textWidth = font.getStringWidth(text) / 1000f * fontSize;
-
-                    // Matriz: centro de la página, rotación 45°, y desplazar medio ancho/alto
-                    Matrix m = new Matrix();
-                    m.translate(pw / 2f, ph / 2f);
-                    m.rotate((float) Math.toRadians(45));
-                    m.translate(-textWidth / 2f, -fontSize / 2f);
-
-                    cs.beginText();
-                    cs.setFont(font, fontSize);
-                    cs.setTextMatrix(m);
-                    cs.showText(text);
-                    cs.endText();
-                }
-            }
-            doc.save(outPdf);
-            return outPdf;
-        }
+        WatermarkEngine.Spec spec = new WatermarkEngine.Spec(
+                text, fontSize, 45f, 0.5f, 0.5f, new Color(200, 200, 200), 0.20f, true);
+        return PdfUpdater.update(inputPdf, outPdf, incremental, doc ->
+                WatermarkEngine.apply(doc, spec, 0, doc.getNumberOfPages() - 1));
     }
     // ===== Marca de agua avanzada (posición/ángulo/color/alpha, todos o rango) =====
 public File watermarkTextAdvanced(
@@ -290,93 +229,68 @@ public File watermarkTextAdvanced(
         java.awt.Color color, float opacity, // opacity 0..1
         boolean allPages, int fromPage, int toPage
 ) throws IOException {
+    return watermarkTextAdvanced(inputPdf, outPdf, text, fontSize, angleDeg, posRelX, posRelY,
+            color, opacity, allPages, fromPage, toPage, PdfUpdater.defaultIncremental());
+}
 
-    if (opacity < 0f) opacity = 0f;
-    if (opacity > 1f) opacity = 1f;
+/** @param incremental anexar solo los cambios (ver {@link PdfUpdater}); outPdf puede ser inputPdf */
+public File watermarkTextAdvanced(
+        File inputPdf, File outPdf,
+        String text, float fontSize,
+        float angleDeg,
+        float posRelX, float posRelY,
+        java.awt.Color color, float opacity,
+        boolean allPages, int fromPage, int toPage,
+        boolean incremental
+) throws IOException {
 
-    requireParentExists(outPdf);
-    try (PDDocument doc = Loader.loadPDF(inputPdf)) {
+    // posRelX/Y es el centro del texto (Y desde abajo); ángulo antihorario
+    WatermarkEngine.Spec spec = new WatermarkEngine.Spec(
+            text, fontSize, angleDeg, posRelX, posRelY, color, opacity, true);
 
+    requireParentExists(outPdf);
+    return PdfUpdater.update(inputPdf, outPdf, incremental, doc -> {
         int total = doc.getNumberOfPages();
         int start = allPages ? 1 : Math.max(1, fromPage);
         int end   = allPages ? total : Math.min(total, toPage);
-
-        for (int i = start-1; i <= end-1; i++) {
-            PDPage page = doc.getPage(i);
-            PDRectangle media = page.getMediaBox();
-            float pw = media.getWidth();
-            float ph = media.getHeight();
-
-            // transparencia
-            org.apache.pdfbox.pdmodel.graphics.state.PDExtendedGraphicsState gs =
-                    new org.apache.pdfbox.pdmodel.graphics.state.PDExtendedGraphicsState();
-            gs.setNonStrokingAlphaConstant(opacity);
-
-            org.apache.pdfbox.pdmodel.PDResources res = page.getResources();
-            if (res == null) { res = new org.apache.pdfbox.pdmodel.PDResources(); page.setResources(res); }
-
-            try (PDPageContentStream cs = new PDPageContentStream(
-                    doc, page, AppendMode.APPEND, true, true)) {
-
-                // aplica estado de transparencia
-                cs.setGraphicsStateParameters(gs);
-
-                // Color
-                cs.setNonStrokingColor(color);
-
-                // Fuente
-                var font = new org.apache.pdfbox.pdmodel.font.PDType1Font(
-                        org.apache.pdfbox.pdmodel.font.Standard14Fonts.FontName.HELVETICA_BOLD);
-
-                // calcular ancho para centrar si se desea (usamos posRelX/Y como centro)
-                float textWidth = font.getStringWidth(text) / 1000f * fontSize;
-
-                // posición absoluta en página (centro)
-                float cx = pw * posRelX;
-                float cy = ph * posRelY;
-
-                // Matriz: trasladar al punto, rotar, y desplazar media caja del texto
-                org.apache.pdfbox.util.Matrix m = new org.apache.pdfbox.util.Matrix();
-                m.translate(cx, cy);
-                m.rotate((float)Math.toRadians(angleDeg));
-                m.translate(-textWidth/2f, -fontSize/2f);
-
-                cs.beginText();
-                cs.setFont(font, fontSize);
-                cs.setTextMatrix(m);
-                cs.showText(text);
-                cs.endText();
-            }
-        }
-        doc.save(outPdf);
-        return outPdf;
-    }
+        WatermarkEngine.apply(doc, spec, start - 1, end - 1);
+    });
 }
 
 
     /* ===================== H) Extraer texto ===================== */
 
     public String extractText(File inputPdf) throws IOException {
-        try (PDDocument doc = Loader.loadPDF(inputPdf)) {
-            PDFTextStripper st = new PDFTextStripper();
-            return st.getText(doc);
+        StringWriter sw = new StringWriter();
+        TextCache.pages(inputPdf, 0, Integer.MAX_VALUE, (i, text) -> sw.write(text), null);
+        SearchIndex.shared().submit(inputPdf); // el texto ya está en caché: indexarlo es barato
+        return sw.toString();
+    }
+
+    /** Texto del PDF directo a {@code outTxt} (UTF-8), página por página, sin armarlo entero en memoria. */
+    public File extractTextToFile(File inputPdf, File outTxt) throws IOException {
+        return extractTextToFile(inputPdf, outTxt, 1);
+    }
+
+    /**
+     * Igual que {@link #extractTextToFile(File, File)} pero en {@code threads} hilos, por tramos de
+     * páginas (cada hilo con su propia copia del PDF). El texto queda en orden de página.
+     */
+    public File extractTextToFile(File inputPdf, File outTxt, int threads) throws IOException {
+        requireParentExists(outTxt);
+        try (Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outTxt), StandardCharsets.UTF_8))) {
+            // Ya extraído antes (misma huella de contenido): sale de la caché sin abrir el PDF
+            if (threads > 1 && !TextCache.isComplete(inputPdf)) TextExtractor.extractParallel(inputPdf, w, threads, null);
+            else TextCache.pages(inputPdf, 0, Integer.MAX_VALUE, (i, text) -> w.write(text), null);
         }
+        return outTxt;
     }
     // === I: construir PDDocument en memoria para preview ===
 public PDDocument imagesToPdfDoc(java.util.List<File> images) throws java.io.IOException {
     if (images == null || images.isEmpty()) throw new java.io.IOException("Sin imágenes.");
     PDDocument doc = new PDDocument();
     try {
-        for (File f : images) {
-            var img = javax.imageio.ImageIO.read(f);
-            if (img == null) throw new java.io.IOException("No se pudo leer: " + f);
-            var page = new PDPage(new PDRectangle(img.getWidth(), img.getHeight()));
-            doc.addPage(page);
-            var pdImg = org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject.createFromFileByContent(f, doc);
-            try (PDPageContentStream cs = new PDPageContentStream(doc, page)) {
-                cs.drawImage(pdImg, 0, 0, img.getWidth(), img.getHeight());
-            }
-        }
+        for (File f : images) addImagePage(doc, f);
         return doc; // el caller debe cerrar
     } catch (Exception e) {
         try { doc.close(); } catch (Exception ignore) {}
@@ -386,18 +300,8 @@ public PDDocument imagesToPdfDoc(java.util.List<File> images) throws java.io.IOE
 
 public PDDocument mergePdfsDoc(java.util.List<File> pdfs) throws java.io.IOException {
     if (pdfs == null || pdfs.size() < 2) throw new java.io.IOException("Selecciona al menos 2 PDFs.");
-    PDDocument out = new PDDocument();
-    try {
-        for (File f : pdfs) {
-            try (PDDocument in = Loader.loadPDF(f)) {
-                for (PDPage p : in.getPages()) out.addPage(p); // importa páginas
-            }
-        }
-        return out;
-    } catch (Exception e) {
-        try { out.close(); } catch (Exception ignore) {}
-        throw e;
-    }
+    // Los orígenes quedan abiertos mientras viva el resultado y se cierran con él
+    return LazyMergedDocument.open(pdfs); // el caller debe cerrar
 }
 
 }
@@ -0,0 +1,429 @@
+package com.mycompany.programa_pdf.pdf;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.prefs.Preferences;
+
+/**
+ * Texto extraído por página, para no volver a pasar {@code PDFTextStripper} por un PDF ya leído.
+ *
+ * <p>La clave es el hash SHA-256 del contenido del archivo + la página: un PDF copiado o renombrado
+ * usa la misma entrada y uno editado, otra. El hash se calcula una vez por ruta + fecha + tamaño.</p>
+ *
+ * <p><b>Memoria:</b> LRU por página acotada por bytes, común a toda la aplicación.</p>
+ *
+ * <p><b>Disco (opcional):</b> bajo {@code ~/.programa_pdf/text}, solo documentos extraídos enteros:
+ * {@code <hash>.txt} con el texto en orden y {@code <hash>.idx} con el desplazamiento de cada página,
+ * así una página se lee sin cargar el resto. Se activa desde el menú Ver o con
+ * {@code -Dprograma_pdf.text.disk=true}.</p>
+ *
+ * <pre>
+ * programa_pdf.text.memMB   memoria máxima para texto          (por defecto 32)
+ * programa_pdf.text.diskMB  espacio máximo en disco            (por defecto 256)
+ * programa_pdf.text.disk    true/false: fuerza la caché en disco (por defecto, la preferencia)
+ * </pre>
+ */
+public final class TextCache {
+
+    private TextCache() {}
+
+    private record Key(String hash, int page) {}
+
+    private static final String PROP = "programa_pdf.text.";
+    private static final String PREF_NODE = "com.mycompany.programa_pdf";
+    private static final String PREF_DISK = "text.disk";
+    private static final File DISK_DIR = new File(System.getProperty("user.home"), ".programa_pdf/text");
+    private static final int TRIM_EVERY = 16; // documentos escritos entre recortes del directorio
+
+    private static final long MAX_BYTES = longProp("memMB", 32) * 1024 * 1024;
+    private static final long MAX_DISK_BYTES = longProp("diskMB", 256) * 1024 * 1024;
+
+    private static final LinkedHashMap<Key, String> MEMORY = new LinkedHashMap<>(1024, 0.75f, true);
+    private static long memoryBytes = 0;
+
+    private static final Map<String, Integer> PAGE_COUNTS = new HashMap<>();   // hash -> páginas
+    private static final Map<String, long[]> DISK_OFFSETS = new HashMap<>();   // hash -> índice leído
+    private static final LinkedHashMap<String, String> HASHES = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<String, String> e) { return size() > 256; }
+    };
+
+    private static volatile Boolean diskEnabled;
+    private static int writesSinceTrim = TRIM_EVERY;
+
+    /* ============== Consulta ============== */
+
+    /** Hash del contenido (se recalcula solo si cambió la fecha o el tamaño). Fuera del EDT. */
+    public static String hash(File pdf) throws IOException {
+        String stamp = pdf.getAbsolutePath() + '|' + pdf.lastModified() + '|' + pdf.length();
+        synchronized (HASHES) {
+            String h = HASHES.get(stamp);
+            if (h != null) return h;
+        }
+        MessageDigest md = sha256();
+        try (InputStream in = new DigestInputStream(new FileInputStream(pdf), md)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        String h = HexFormat.of().formatHex(md.digest());
+        synchronized (HASHES) { HASHES.put(stamp, h); }
+        return h;
+    }
+
+    /** Texto de una página si está en memoria o en disco; null si no. */
+    public static String page(String hash, int pageIndex) {
+        synchronized (MEMORY) {
+            String t = MEMORY.get(new Key(hash, pageIndex));
+            if (t != null) return t;
+        }
+        long[] offsets = diskOffsets(hash);
+        if (offsets == null || pageIndex < 0 || pageIndex >= offsets.length - 1) return null;
+        try (RandomAccessFile raf = new RandomAccessFile(txtFile(hash), "r")) {
+            String t = readPage(raf, offsets, pageIndex);
+            put(hash, pageIndex, t);
+            return t;
+        } catch (IOException ex) {
+            dropDisk(hash);
+            return null;
+        }
+    }
+
+    public static void put(String hash, int pageIndex, String text) {
+        long size = 2L * text.length();
+        if (size > MAX_BYTES) return;
+        synchronized (MEMORY) {
+            String old = MEMORY.put(new Key(hash, pageIndex), text);
+            if (old != null) memoryBytes -= 2L * old.length();
+            memoryBytes += size;
+            for (Iterator<String> it = MEMORY.values().iterator(); memoryBytes > MAX_BYTES && it.hasNext(); ) {
+                memoryBytes -= 2L * it.next().length();
+                it.remove();
+            }
+        }
+    }
+
+    /** El texto de todo el PDF ya está guardado (en disco o completo en memoria). */
+    public static boolean isComplete(File pdf) throws IOException {
+        String h = hash(pdf);
+        int n = pageCount(h);
+        return n >= 0 && (diskOffsets(h) != null || fromMemory(h, 0, n - 1) != null);
+    }
+
+    /**
+     * Entrega a {@code sink} las páginas {@code from..to} (base 0; {@code to} se recorta al total).
+     * Si están todas guardadas no se abre el PDF; si no, se extraen y se guardan. Extraer el
+     * documento entero lo escribe además en disco si la caché en disco está activa (ver
+     * {@link #filler}).
+     */
+    public static void pages(File pdf, int from, int to, TextExtractor.Sink sink, BooleanSupplier cancelled)
+            throws IOException {
+        String h = hash(pdf);
+        int n = pageCount(h);
+        if (n >= 0) {
+            int first = Math.max(0, from), last = Math.min(n - 1, to);
+            long[] offsets = diskOffsets(h);
+            if (offsets != null) {
+                deliverFromDisk(h, offsets, first, last, sink, cancelled);
+                return;
+            }
+            String[] mem = fromMemory(h, first, last);
+            if (mem != null) {
+                for (int i = first; i <= last; i++) {
+                    checkCancelled(cancelled);
+                    sink.page(i, mem[i - first]);
+                }
+                return;
+            }
+        }
+
+        try (PDDocument doc = Loader.loadPDF(pdf)) {
+            // El hash se vuelve a tomar con el documento ya abierto: si el archivo cambió después de
+            // la consulta, el texto no queda guardado bajo el contenido anterior
+            int total = doc.getNumberOfPages();
+            Filler fill = filler(hash(pdf), total, from <= 0 && to >= total - 1);
+            try {
+                TextExtractor.extract(doc, from, to, (i, text) -> {
+                    fill.page(i, text);
+                    sink.page(i, text);
+                }, cancelled);
+                fill.commit();
+            } finally {
+                fill.discard();
+            }
+        }
+    }
+
+    /**
+     * Para quien extrae el texto por su cuenta ({@link TextExtractor#extractParallel}): guarda las
+     * páginas en memoria y, si {@code whole} y la caché en disco está activa, las escribe a disco.
+     * {@code hash} se calcula con el documento ya abierto. Las páginas deben llegar en orden.
+     */
+    static Filler filler(String hash, int total, boolean whole) {
+        synchronized (PAGE_COUNTS) { PAGE_COUNTS.put(hash, total); }
+        DiskWriter dw = (whole && isDiskEnabled() && diskOffsets(hash) == null) ? DiskWriter.open(hash, total) : null;
+        return new Filler(hash, dw);
+    }
+
+    static final class Filler {
+        private final String hash;
+        private final DiskWriter dw;
+
+        private Filler(String hash, DiskWriter dw) {
+            this.hash = hash;
+            this.dw = dw;
+        }
+
+        void page(int pageIndex, String text) throws IOException {
+            put(hash, pageIndex, text);
+            if (dw != null) dw.page(text);
+        }
+
+        void commit() { if (dw != null) dw.commit(); }
+
+        /** Cancelado o con error. No hace nada después de {@link #commit()}. */
+        void discard() { if (dw != null) dw.discard(); }
+    }
+
+    /** Las páginas {@code from..to} si están todas en memoria; null si falta alguna. */
+    private static String[] fromMemory(String h, int from, int to) {
+        String[] out = new String[Math.max(0, to - from + 1)];
+        synchronized (MEMORY) {
+            for (int i = from; i <= to; i++) {
+                String t = MEMORY.get(new Key(h, i));
+                if (t == null) return null;
+                out[i - from] = t;
+            }
+        }
+        return out;
+    }
+
+    /** Con un solo archivo abierto; las páginas que estén en memoria salen de ahí. */
+    private static void deliverFromDisk(String h, long[] offsets, int from, int to, TextExtractor.Sink sink,
+                                        BooleanSupplier cancelled) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(txtFile(h), "r")) {
+            for (int i = from; i <= to; i++) {
+                checkCancelled(cancelled);
+                String t;
+                synchronized (MEMORY) { t = MEMORY.get(new Key(h, i)); }
+                if (t == null) {
+                    t = readPage(raf, offsets, i);
+                    put(h, i, t);
+                }
+                sink.page(i, t);
+            }
+        }
+    }
+
+    private static void checkCancelled(BooleanSupplier cancelled) throws InterruptedIOException {
+        if (cancelled != null && cancelled.getAsBoolean()) throw new InterruptedIOException("Extracción cancelada");
+    }
+
+    /** Páginas del documento, o -1 si nunca se extrajo entero ni está en disco. */
+    private static int pageCount(String h) {
+        synchronized (PAGE_COUNTS) {
+            Integer n = PAGE_COUNTS.get(h);
+            if (n != null) return n;
+        }
+        long[] offsets = diskOffsets(h);
+        return (offsets != null) ? offsets.length - 1 : -1;
+    }
+
+    /* ============== Disco ============== */
+
+    public static boolean isDiskEnabled() {
+        Boolean b = diskEnabled;
+        if (b == null) {
+            String forced = System.getProperty(PROP + "disk");
+            b = (forced != null && !forced.isBlank())
+                    ? Boolean.parseBoolean(forced.trim())
+                    : Preferences.userRoot().node(PREF_NODE).getBoolean(PREF_DISK, false);
+            diskEnabled = b;
+        }
+        return b;
+    }
+
+    /** Activa o desactiva la caché en disco y lo recuerda en las preferencias. */
+    public static void setDiskEnabled(boolean enabled) {
+        diskEnabled = enabled;
+        Preferences.userRoot().node(PREF_NODE).putBoolean(PREF_DISK, enabled);
+    }
+
+    /** Borra todo el texto guardado en disco. */
+    public static void clearDisk() {
+        synchronized (DISK_OFFSETS) { DISK_OFFSETS.clear(); }
+        File[] files = DISK_DIR.listFiles();
+        if (files != null) for (File f : files) f.delete();
+    }
+
+    /** Índice de páginas del documento en disco (se lee una vez), o null si no está. */
+    private static long[] diskOffsets(String h) {
+        if (!isDiskEnabled()) return null;
+        synchronized (DISK_OFFSETS) {
+            if (DISK_OFFSETS.containsKey(h)) return DISK_OFFSETS.get(h);
+            long[] offsets = null;
+            File idx = idxFile(h);
+            if (idx.isFile() && txtFile(h).isFile()) {
+                try (DataInputStream in = new DataInputStream(new FileInputStream(idx))) {
+                    int n = in.readInt();
+                    offsets = new long[n + 1];
+                    for (int i = 0; i <= n; i++) offsets[i] = in.readLong();
+                    txtFile(h).setLastModified(System.currentTimeMillis()); // LRU también en disco
+                } catch (IOException ex) {
+                    offsets = null;
+                    idx.delete();
+                }
+            }
+            DISK_OFFSETS.put(h, offsets);
+            return offsets;
+        }
+    }
+
+    private static String readPage(RandomAccessFile raf, long[] offsets, int i) throws IOException {
+        byte[] b = new byte[(int) (offsets[i + 1] - offsets[i])];
+        raf.seek(offsets[i]);
+        raf.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private static void dropDisk(String h) {
+        synchronized (DISK_OFFSETS) { DISK_OFFSETS.remove(h); }
+        idxFile(h).delete();
+        txtFile(h).delete();
+    }
+
+    /**
+     * Escribe el texto a temporales mientras se extrae; al terminar los mueve a su nombre (el
+     * índice al final: sin índice el documento no cuenta como guardado).
+     */
+    private static final class DiskWriter {
+        private final String hash;
+        private final File tmpTxt;
+        private final OutputStream out;
+        private final long[] offsets;
+        private int pages;
+        private long pos;
+        private boolean done;
+
+        private DiskWriter(String hash, int total, File tmpTxt, OutputStream out) {
+            this.hash = hash;
+            this.tmpTxt = tmpTxt;
+            this.out = out;
+            this.offsets = new long[total + 1];
+        }
+
+        /** null si no se puede escribir (sin permisos, sin espacio): la caché en disco es opcional. */
+        static DiskWriter open(String hash, int total) {
+            try {
+                Files.createDirectories(DISK_DIR.toPath());
+                File tmp = File.createTempFile("text", ".tmp", DISK_DIR);
+                return new DiskWriter(hash, total, tmp, new BufferedOutputStream(new FileOutputStream(tmp), 64 * 1024));
+            } catch (IOException ex) {
+                return null;
+            }
+        }
+
+        void page(String text) throws IOException {
+            if (done || pages >= offsets.length - 1) return;
+            byte[] b = text.getBytes(StandardCharsets.UTF_8);
+            out.write(b);
+            pos += b.length;
+            offsets[++pages] = pos;
+        }
+
+        void commit() {
+            if (done) return;
+            done = true;
+            File tmpIdx = null;
+            try {
+                out.close();
+                if (pages != offsets.length - 1) return;
+                tmpIdx = File.createTempFile("text", ".tmp", DISK_DIR);
+                try (DataOutputStream d = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpIdx)))) {
+                    d.writeInt(pages);
+                    for (long o : offsets) d.writeLong(o);
+                }
+                Files.move(tmpTxt.toPath(), txtFile(hash).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                Files.move(tmpIdx.toPath(), idxFile(hash).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                synchronized (DISK_OFFSETS) { DISK_OFFSETS.remove(hash); }
+            } catch (IOException ignore) {
+                // sin disco se sigue en memoria
+            } finally {
+                tmpTxt.delete();
+                if (tmpIdx != null) tmpIdx.delete();
+            }
+
+            boolean trim;
+            synchronized (DISK_DIR) {
+                trim = ++writesSinceTrim >= TRIM_EVERY;
+                if (trim) writesSinceTrim = 0;
+            }
+            if (trim) trimDisk();
+        }
+
+        /** Cancelado o con error: descartar lo escrito. No hace nada después de {@link #commit()}. */
+        void discard() {
+            if (done) return;
+            done = true;
+            try { out.close(); } catch (IOException ignore) {}
+            tmpTxt.delete();
+        }
+    }
+
+    /** Borra los documentos usados hace más tiempo hasta quedar bajo {@code diskMB}. */
+    private static void trimDisk() {
+        File[] files = DISK_DIR.listFiles((d, n) -> n.endsWith(".txt"));
+        if (files == null) return;
+        long total = 0;
+        for (File f : files) total += f.length();
+        if (total <= MAX_DISK_BYTES) return;
+
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File f : files) {
+            if (total <= MAX_DISK_BYTES) break;
+            long len = f.length();
+            String h = f.getName().substring(0, f.getName().length() - 4);
+            dropDisk(h);
+            total -= len;
+        }
+    }
+
+    private static File txtFile(String h) { return new File(DISK_DIR, h + ".txt"); }
+    private static File idxFile(String h) { return new File(DISK_DIR, h + ".idx"); }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long longProp(String key, long def) {
+        try { return Math.max(1, Long.parseLong(System.getProperty(PROP + key, "").trim())); }
+        catch (NumberFormatException e) { return def; }
+    }
+}
@@ -0,0 +1,198 @@
+package com.mycompany.programa_pdf.pdf;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.text.PDFTextStripper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Extracción de texto página por página.
+ *
+ * <p>{@link PDFTextStripper#getText} arma un solo {@code String} con todo el documento: en un PDF
+ * de miles de páginas tarda minutos sin dar señales y ocupa cientos de MB. Aquí el mismo stripper
+ * recorre el documento una vez y entrega el texto de cada página a un {@link Sink} en cuanto la
+ * termina; en memoria queda solo la página en curso. El resultado concatenado es idéntico al de
+ * {@code getText}.</p>
+ *
+ * <p>{@code cancelled} se consulta antes de cada página; al cancelar se lanza
+ * {@link InterruptedIOException}.</p>
+ *
+ * <p><b>Paralela</b> ({@link #extractParallel}): el documento se parte en tramos de páginas
+ * consecutivas. Cada hilo abre su propia copia del PDF (PDFBox no admite un documento en varios
+ * hilos) y va tomando el siguiente tramo libre; el hilo que llama escribe los tramos en orden a
+ * medida que terminan. Como máximo hay {@code 2 × hilos} tramos extraídos esperando a ser
+ * escritos.</p>
+ */
+public final class TextExtractor {
+
+    /** Recibe el texto de cada página en orden (base 0), en el hilo que extrae. */
+    @FunctionalInterface
+    public interface Sink { void page(int pageIndex, String text) throws IOException; }
+
+    private static final BooleanSupplier NEVER = () -> false;
+
+    // Tramos: unos 4 por hilo para repartir bien, sin bajar de MIN ni pasar de MAX páginas
+    private static final int SHARD_MIN = 16;
+    private static final int SHARD_MAX = 256;
+
+    private TextExtractor() {}
+
+    /** Páginas {@code from..to} (base 0, inclusivo) de un documento ya abierto. */
+    public static void extract(PDDocument doc, int from, int to, Sink sink, BooleanSupplier cancelled)
+            throws IOException {
+        int total = doc.getNumberOfPages();
+        from = Math.max(0, from);
+        to = Math.min(total - 1, to);
+        if (from > to) return;
+
+        PageStripper st = new PageStripper(sink, cancelled != null ? cancelled : NEVER);
+        st.setStartPage(from + 1);
+        st.setEndPage(to + 1);
+        st.writeText(doc, st.buffer);
+    }
+
+    /* ============== Paralela ============== */
+
+    /**
+     * Todo el PDF escrito en {@code out} (no se cierra) a medida que se extrae, en {@code threads}
+     * hilos, cada uno con su copia del PDF. El texto sale en orden e igual al de una sola pasada, y
+     * queda en {@link TextCache} como si se hubiera extraído con {@link TextCache#pages}.
+     */
+    public static void extractParallel(File pdf, Writer out, int threads, BooleanSupplier cancelled)
+            throws IOException {
+        BooleanSupplier stop = (cancelled != null) ? cancelled : NEVER;
+        int pages;
+        TextCache.Filler cache;
+        try (PDDocument probe = Loader.loadPDF(pdf)) {
+            pages = probe.getNumberOfPages();
+            // Hash con el documento ya abierto (ver TextCache.pages)
+            cache = TextCache.filler(TextCache.hash(pdf), pages, true);
+            if (threads <= 1 || pages < 2 * SHARD_MIN) {
+                try {
+                    extract(probe, 0, pages - 1, (i, text) -> {
+                        cache.page(i, text);
+                        out.write(text);
+                    }, stop);
+                    cache.commit();
+                } finally {
+                    cache.discard();
+                }
+                out.flush();
+                return;
+            }
+        }
+
+        int shardSize = Math.max(SHARD_MIN, Math.min(SHARD_MAX, pages / (threads * 4)));
+        int shards = (pages + shardSize - 1) / shardSize;
+        int workers = Math.min(threads, shards);
+
+        List<CompletableFuture<String[]>> done = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) done.add(new CompletableFuture<>());
+
+        Semaphore inFlight = new Semaphore(workers * 2);
+        AtomicInteger next = new AtomicInteger();
+
+        ExecutorService pool = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "text-worker");
+            t.setDaemon(true);
+            return t;
+        });
+
+        try {
+            for (int w = 0; w < workers; w++) {
+                pool.execute(() -> {
+                    try (PDDocument doc = Loader.loadPDF(pdf)) {
+                        while (true) {
+                            // El cupo se toma antes de elegir tramo: el que espera el escritor
+                            // nunca queda detrás de otros más adelantados
+                            inFlight.acquire();
+                            int s = next.getAndIncrement();
+                            if (s >= shards) { inFlight.release(); return; }
+
+                            int from = s * shardSize;
+                            int to = Math.min(pages, from + shardSize) - 1;
+                            String[] texts = new String[to - from + 1];
+                            extract(doc, from, to, (i, text) -> texts[i - from] = text, stop);
+                            done.get(s).complete(texts);
+                        }
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        abort(done, ex);
+                    } catch (Throwable ex) {
+                        abort(done, ex);
+                    }
+                });
+            }
+
+            // Los tramos llegan en orden: el texto va a la caché (y al disco) igual que en secuencial
+            for (int s = 0; s < shards; s++) {
+                String[] texts = done.get(s).get();
+                done.set(s, null); // liberar el tramo apenas se escribe
+                for (int k = 0; k < texts.length; k++) {
+                    cache.page(s * shardSize + k, texts[k]);
+                    out.write(texts[k]);
+                }
+                inFlight.release();
+            }
+            cache.commit();
+            out.flush();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Extracción interrumpida");
+        } catch (ExecutionException ex) {
+            Throwable c = ex.getCause();
+            if (c instanceof IOException io) throw io;
+            throw new IOException("Error al extraer texto: " + c, c);
+        } finally {
+            pool.shutdownNow();
+            cache.discard();
+        }
+    }
+
+    /** Un hilo falló: se propaga el error a los tramos pendientes para que el escritor no espere. */
+    private static void abort(List<CompletableFuture<String[]>> done, Throwable ex) {
+        for (CompletableFuture<String[]> f : done) {
+            if (f != null) f.completeExceptionally(ex);
+        }
+    }
+
+    /** Stripper que vacía su salida al final de cada página. */
+    private static final class PageStripper extends PDFTextStripper {
+        final StringWriter buffer = new StringWriter();
+        private final Sink sink;
+        private final BooleanSupplier cancelled;
+
+        PageStripper(Sink sink, BooleanSupplier cancelled) {
+            this.sink = sink;
+            this.cancelled = cancelled;
+        }
+
+        @Override protected void startPage(PDPage page) throws IOException {
+            if (cancelled.getAsBoolean()) throw new InterruptedIOException("Extracción cancelada");
+            super.startPage(page);
+        }
+
+        @Override protected void endPage(PDPage page) throws IOException {
+            super.endPage(page);
+            StringBuffer sb = buffer.getBuffer();
+            String text = sb.toString();
+            sb.setLength(0);
+            sink.page(getCurrentPageNo() - 1, text);
+        }
+    }
+}
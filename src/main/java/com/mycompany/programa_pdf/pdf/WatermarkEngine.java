@@ -0,0 +1,219 @@
+package com.mycompany.programa_pdf.pdf;
+
+import org.apache.fontbox.util.BoundingBox;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDFormContentStream;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.graphics.state.PDExtendedGraphicsState;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Marca de agua de texto compartida por todas las páginas.
+ *
+ * <p>El texto se dibuja una sola vez en un Form XObject que lleva sus propios recursos (fuente
+ * Helvetica-Bold y ExtGState con la opacidad). Cada página solo suma a su {@code /Contents} un
+ * stream mínimo ({@code Q q <matriz> cm /Wm0 Do Q}) y una referencia en sus recursos; las páginas
+ * del mismo tamaño comparten además ese stream. En un documento de 2.000 páginas la marca agrega
+ * unas decenas de bytes por página en vez de un stream de contenido, una fuente y un ExtGState
+ * por página.</p>
+ *
+ * <p>Posición y ángulo en coordenadas PDF: {@code nx}/{@code ny} relativos al MediaBox con Y
+ * desde abajo, ángulo antihorario. {@link #drawOn} pinta lo mismo sobre una página ya
+ * renderizada, para vistas previas e impresión.</p>
+ */
+public final class WatermarkEngine {
+
+    /**
+     * Parámetros de la marca.
+     *
+     * @param centered true: el texto se centra en el punto; false: el punto es el inicio de la
+     *                 línea base
+     */
+    public record Spec(String text, float fontPt, float angleDeg, float nx, float ny,
+                       Color color, float opacity, boolean centered) {}
+
+    private static final String NAME_PREFIX = "Wm";
+
+    private WatermarkEngine() {}
+
+    /* ============== PDF ============== */
+
+    /** Estampa la marca en las páginas {@code from..to} (base 0, inclusivo). */
+    public static void apply(PDDocument doc, Spec spec, int from, int to) throws IOException {
+        int total = doc.getNumberOfPages();
+        from = Math.max(0, from);
+        to = Math.min(total - 1, to);
+        if (from > to || spec.text() == null || spec.text().isEmpty()) return;
+
+        PDFormXObject form = buildForm(doc, spec);
+
+        // "q" de apertura: guarda el estado gráfico del contenido original (uno para todo el documento)
+        PDStream open = rawStream(doc, "q\n");
+        Map<String, PDStream> shared = new HashMap<>();
+
+        for (int i = from; i <= to; i++) {
+            PDPage page = doc.getPage(i);
+            PDResources res = page.getResources();
+            if (res == null) { res = new PDResources(); page.setResources(res); }
+            COSName name = register(res, form);
+
+            PDRectangle mb = page.getMediaBox();
+            String ops = "Q\nq\n" + placement(spec, mb) + " cm\n/" + name.getName() + " Do\nQ\n";
+            PDStream stamp = shared.get(ops);
+            if (stamp == null) {
+                stamp = rawStream(doc, ops);
+                shared.put(ops, stamp);
+            }
+
+            List<PDStream> contents = new ArrayList<>();
+            contents.add(open);
+            for (Iterator<PDStream> it = page.getContentStreams(); it.hasNext(); ) contents.add(it.next());
+            contents.add(stamp);
+            page.setContents(contents);
+        }
+    }
+
+    /** Form con el texto en el origen según {@link Spec#centered}; fuente y opacidad en sus recursos. */
+    private static PDFormXObject buildForm(PDDocument doc, Spec spec) throws IOException {
+        PDType1Font font = new PDType1Font(Standard14Fonts.FontName.HELVETICA_BOLD);
+        float fs = spec.fontPt();
+        float width = font.getStringWidth(spec.text()) / 1000f * fs;
+        float tx = spec.centered() ? -width / 2f : 0f;
+        float ty = spec.centered() ? -fs / 2f : 0f;
+
+        BoundingBox glyphs = font.getBoundingBox();
+        float pad = fs * 0.25f;
+        PDFormXObject form = new PDFormXObject(doc);
+        form.setResources(new PDResources());
+        form.setBBox(new PDRectangle(
+                tx - pad, ty + glyphs.getLowerLeftY() / 1000f * fs,
+                width + 2 * pad, (glyphs.getUpperRightY() - glyphs.getLowerLeftY()) / 1000f * fs));
+
+        PDExtendedGraphicsState gs = new PDExtendedGraphicsState();
+        gs.setNonStrokingAlphaConstant(clamp01(spec.opacity()));
+
+        try (PDFormContentStream cs = new PDFormContentStream(form)) {
+            cs.setGraphicsStateParameters(gs);
+            cs.setNonStrokingColor(spec.color());
+            cs.beginText();
+            cs.setFont(font, fs);
+            cs.newLineAtOffset(tx, ty);
+            cs.showText(spec.text());
+            cs.endText();
+        }
+        return form;
+    }
+
+    /** Matriz {@code a b c d e f}: trasladar al punto de la página y rotar. */
+    private static String placement(Spec spec, PDRectangle mb) {
+        double rad = Math.toRadians(spec.angleDeg());
+        float cos = (float) Math.cos(rad), sin = (float) Math.sin(rad);
+        float px = mb.getLowerLeftX() + spec.nx() * mb.getWidth();
+        float py = mb.getLowerLeftY() + spec.ny() * mb.getHeight();
+        return num(cos) + " " + num(sin) + " " + num(-sin) + " " + num(cos) + " " + num(px) + " " + num(py);
+    }
+
+    /**
+     * Nombre del form en los recursos de la página. Los recursos suelen ser compartidos (heredados
+     * del árbol de páginas), así que se reutiliza el nombre si ya apunta al mismo form.
+     */
+    private static COSName register(PDResources res, PDFormXObject form) {
+        COSDictionary xobjects = res.getCOSObject().getCOSDictionary(COSName.XOBJECT);
+        for (int n = 0; ; n++) {
+            COSName name = COSName.getPDFName(NAME_PREFIX + n);
+            COSBase current = (xobjects == null) ? null : xobjects.getDictionaryObject(name);
+            if (current == form.getCOSObject()) return name;
+            if (current == null) {
+                res.put(name, form);
+                return name;
+            }
+        }
+    }
+
+    private static PDStream rawStream(PDDocument doc, String ops) throws IOException {
+        PDStream s = new PDStream(doc);
+        try (OutputStream os = s.createOutputStream()) {
+            os.write(ops.getBytes(StandardCharsets.US_ASCII));
+        }
+        return s;
+    }
+
+    private static String num(float v) {
+        String s = String.format(Locale.ROOT, "%.4f", v);
+        s = s.replaceAll("0+$", "");
+        if (s.endsWith(".")) s = s.substring(0, s.length() - 1);
+        return s.equals("-0") ? "0" : s;
+    }
+
+    private static float clamp01(float v) {
+        return Math.max(0f, Math.min(1f, v));
+    }
+
+    /* ============== Vista previa ============== */
+
+    /**
+     * Copia de {@code page} (renderizada a {@code dpi}) con la marca pintada encima, con la misma
+     * posición, ángulo y anclaje que {@link #apply}.
+     */
+    public static BufferedImage drawOn(BufferedImage page, float dpi, Spec spec) {
+        BufferedImage copy = new BufferedImage(page.getWidth(), page.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2 = copy.createGraphics();
+        g2.drawImage(page, 0, 0, null);
+        paint(g2, page.getWidth(), page.getHeight(), dpi / 72f, spec);
+        g2.dispose();
+        return copy;
+    }
+
+    /**
+     * Pinta solo la marca sobre una página que ocupa {@code (0,0)-(width,height)} en {@code g}, a
+     * {@code pxPerPt} píxeles por punto PDF. Para superponerla a una página ya rasterizada sin
+     * volver a renderizarla ni copiarla (p. ej. mientras se arrastra la marca).
+     */
+    public static void paint(Graphics2D g, int width, int height, float pxPerPt, Spec spec) {
+        if (spec.text() == null || spec.text().isEmpty()) return;
+        Graphics2D g2 = (Graphics2D) g.create();
+        g2.clipRect(0, 0, width, height);
+        g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+        float fontPx = spec.fontPt() * pxPerPt;
+        g2.setFont(new Font(Font.SANS_SERIF, Font.BOLD, 1).deriveFont(fontPx));
+        g2.setColor(spec.color());
+        g2.setComposite(AlphaComposite.SrcOver.derive(clamp01(spec.opacity())));
+
+        // Y de pantalla hacia abajo: se invierten la altura y el sentido del giro
+        g2.translate(spec.nx() * width, (1f - spec.ny()) * height);
+        g2.rotate(-Math.toRadians(spec.angleDeg()));
+        float tx = 0, ty = 0;
+        if (spec.centered()) {
+            tx = -g2.getFontMetrics().stringWidth(spec.text()) / 2f;
+            ty = fontPx / 2f;
+        }
+        g2.drawString(spec.text(), tx, ty);
+        g2.dispose();
+    }
+}
@@ -1,74 +1,619 @@
 package com.mycompany.programa_pdf.state;
 
 import java.io.*;
+import java.nio.channels.Channels;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
 
-/** Historial simple persistido en TSV: fecha | accion | entradas(semi) | salida */
+/**
+ * Historial persistido como registro binario de solo anexar, por segmentos, bajo
+ * {@code ~/.programa_pdf/history}. Abrirlo y mostrar una página no depende de cuántas entradas hay.
+ *
+ * <ul>
+ *   <li>{@code seg-N.log}: registros {@code [largo][crc32][id, fecha, acción, entradas, salida]}. Se
+ *       escribe solo al final del segmento activo; al pasar de {@code SEG_MAX_BYTES} se sella y se
+ *       empieza otro.</li>
+ *   <li>{@code seg-N.idx}: índice de un segmento sellado: cantidad de registros, primer y último id, y
+ *       el offset de uno de cada {@code STRIDE} registros. Para leer la entrada k se salta a la marca
+ *       anterior y se leen a lo sumo {@code STRIDE - 1} registros.</li>
+ *   <li>{@code deleted.bin}: ids borrados (lápidas), solo anexar. Borrar no reescribe nada.</li>
+ *   <li>{@code segments.bin}: segmentos vigentes en orden; se reemplaza entero.</li>
+ * </ul>
+ *
+ * <p>Cuando las lápidas pasan de {@code COMPACT_MIN} (o del 10 % del total) un hilo en segundo plano
+ * reescribe, uno a uno, los segmentos sellados que tienen entradas borradas.</p>
+ *
+ * <p>El {@code history.tsv} de versiones anteriores se importa la primera vez y queda como
+ * {@code history.tsv.bak}.</p>
+ */
 public class HistoryStore {
-    public static record Entry(String dateIso, String action, List<String> inputs, String output) {}
+    public static record Entry(long id, String dateIso, String action, List<String> inputs, String output) {}
+
+    /** Un segmento del registro; las marcas se agregan a medida que se anexan registros. */
+    private static final class Segment {
+        final int number;
+        int count;               // registros, incluidos los borrados
+        long firstId = -1, lastId = -1;
+        long bytes;
+        long[] ckOffset = new long[8];
+        long[] ckId = new long[8];
+        int checkpoints;
+        boolean sealed;
+
+        Segment(int number) { this.number = number; }
+
+        void addRecord(long id, long offset, int len) {
+            if (count % STRIDE == 0) {
+                if (checkpoints == ckOffset.length) {
+                    ckOffset = Arrays.copyOf(ckOffset, checkpoints * 2);
+                    ckId = Arrays.copyOf(ckId, checkpoints * 2);
+                }
+                ckOffset[checkpoints] = offset;
+                ckId[checkpoints++] = id;
+            }
+            if (firstId < 0) firstId = id;
+            lastId = id;
+            count++;
+            bytes = offset + len;
+        }
+    }
+
+    private static final int MAGIC = 0x48495331;     // "HIS1"
+    private static final int IDX_MAGIC = 0x48495849; // "HIXI"
+    private static final int STRIDE = 64;
+    private static final long SEG_MAX_BYTES = 4L * 1024 * 1024;
+    private static final int COMPACT_MIN = 256;
 
     private final Path dir = Path.of(System.getProperty("user.home"), ".programa_pdf");
-    private final Path file = dir.resolve("history.tsv");
+    private final Path legacy = dir.resolve("history.tsv");
+    private final Path logDir = dir.resolve("history");
     private static final DateTimeFormatter FMT = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
 
+    private final List<Segment> segments = new ArrayList<>();
+    private final TreeSet<Long> deleted = new TreeSet<>();
+    private int[] deletedPos = new int[0]; // posición física de cada borrado, en orden
+    private long nextId;
+    private int nextSeg;
+    private OutputStream activeOut;
+    private boolean compacting;
+
     public HistoryStore() {
-        try { if (!Files.exists(dir)) Files.createDirectories(dir); }
+        try { if (!Files.exists(logDir)) Files.createDirectories(logDir); }
         catch (IOException ignored) {}
+        synchronized (this) { open(); }
     }
 
     public synchronized void add(String action, List<String> inputs, String output) {
         String date = LocalDateTime.now().format(FMT);
-        String inJoined = String.join(";", inputs);
-        String line = escape(date) + "\t" + escape(action) + "\t" + escape(inJoined) + "\t" + escape(output) + "\n";
+        append(date, action, inputs, output);
+        flushActive();
+    }
+
+    /* ============== Lectura ============== */
+
+    /** Entradas vigentes. */
+    public synchronized int size() {
+        return total() - deletedPos.length;
+    }
+
+    /** Hasta {@code count} entradas desde la {@code from} (0 = la más antigua). */
+    public synchronized List<Entry> page(int from, int count) {
+        List<Entry> out = new ArrayList<>(Math.max(0, Math.min(count, 1024)));
+        if (from < 0 || from >= size() || count <= 0) return out;
+
+        int[] starts = starts();
+        int p = physical(from);
+        int s = Arrays.binarySearch(starts, p);
+        if (s < 0) s = -s - 2;
+        while (s + 1 < starts.length && starts[s + 1] == p) s++; // saltar segmentos vacíos
+        int local = p - starts[s];
+
         try {
-            Files.writeString(file, line, StandardCharsets.UTF_8,
-                    Files.exists(file) ? StandardOpenOption.APPEND : StandardOpenOption.CREATE);
+            for (; s < segments.size() && out.size() < count; s++, local = 0) {
+                Segment seg = segments.get(s);
+                if (seg.count == 0) continue;
+                try (RandomAccessFile raf = new RandomAccessFile(logFile(seg.number).toFile(), "r")) {
+                    int ck = local / STRIDE;
+                    raf.seek(seg.ckOffset[ck]);
+                    DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(raf.getChannel()), 64 * 1024));
+                    for (int r = ck * STRIDE; r < seg.count && out.size() < count; r++) {
+                        Entry e = decode(readRecord(in));
+                        if (r >= local && !deleted.contains(e.id())) out.add(e);
+                    }
+                }
+            }
         } catch (IOException ignored) {}
+        return out;
+    }
+
+    /** Recorre todas las entradas de a páginas, sin cargarlas juntas. */
+    public void forEach(Consumer<Entry> action) {
+        final int chunk = 1000;
+        for (int from = 0; ; from += chunk) {
+            List<Entry> p = page(from, chunk);
+            p.forEach(action);
+            if (p.size() < chunk) return;
+        }
     }
 
     public synchronized List<Entry> loadAll() {
-        if (!Files.exists(file)) return new ArrayList<>();
-        List<Entry> list = new ArrayList<>();
-        try (BufferedReader br = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
-            String s;
-            while ((s = br.readLine()) != null) {
-                String[] p = split4(s);
-                String date = unescape(p[0]);
-                String action = unescape(p[1]);
-                String inputs = unescape(p[2]);
-                String output = unescape(p[3]);
-                list.add(new Entry(date, action, inputs.isBlank() ? List.of() : Arrays.asList(inputs.split(";")), output));
-            }
-        } catch (IOException ignored) {}
-        return list;
+        return page(0, size());
     }
 
+    /* ============== Borrado ============== */
+
     public synchronized void clearAll() {
-        try { Files.deleteIfExists(file); } catch (IOException ignored) {}
+        closeActive();
+        File[] files = logDir.toFile().listFiles();
+        if (files != null) for (File f : files) f.delete();
+        segments.clear();
+        deleted.clear();
+        deletedPos = new int[0];
+        writeManifest();
     }
 
     public synchronized void removeAt(int index) {
-        List<Entry> all = loadAll();
-        if (index < 0 || index >= all.size()) return;
-        all.remove(index);
-        rewrite(all);
-    }
-
-    private void rewrite(List<Entry> entries) {
-        try (BufferedWriter bw = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
-            for (Entry e : entries) {
-                String line = escape(e.dateIso()) + "\t" + escape(e.action()) + "\t" +
-                        escape(String.join(";", e.inputs())) + "\t" + escape(e.output()) + "\n";
-                bw.write(line);
+        List<Entry> e = page(index, 1);
+        if (!e.isEmpty()) remove(e.get(0).id());
+    }
+
+    /** Deja una lápida para {@code id}; la entrada desaparece al compactar su segmento. */
+    public synchronized void remove(long id) {
+        if (deleted.contains(id)) return;
+        int pos = locate(id);
+        if (pos < 0) return;
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(deletedFile().toFile(), true))) {
+            out.writeLong(id);
+        } catch (IOException ignored) {
+            return;
+        }
+        deleted.add(id);
+        int at = Arrays.binarySearch(deletedPos, pos);
+        at = -at - 1;
+        int[] np = new int[deletedPos.length + 1];
+        System.arraycopy(deletedPos, 0, np, 0, at);
+        np[at] = pos;
+        System.arraycopy(deletedPos, at, np, at + 1, deletedPos.length - at);
+        deletedPos = np;
+        maybeCompact();
+    }
+
+    /* ============== Registro ============== */
+
+    /** Llamar con el candado. */
+    private void append(String date, String action, List<String> inputs, String output) {
+        try {
+            byte[] rec = encode(nextId, date, action, inputs, output);
+            Segment act = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+            if (act == null || act.sealed || (act.bytes > 0 && act.bytes + rec.length > SEG_MAX_BYTES)) {
+                if (act != null && !act.sealed) seal(act);
+                act = new Segment(nextSeg++);
+                segments.add(act);
+                writeManifest();
+            }
+            if (activeOut == null) {
+                activeOut = new BufferedOutputStream(new FileOutputStream(logFile(act.number).toFile(), true), 64 * 1024);
+            }
+            activeOut.write(rec);
+            act.addRecord(nextId, act.bytes, rec.length);
+            nextId++;
+        } catch (IOException ignored) {
+            closeActive();
+        }
+    }
+
+    private void flushActive() {
+        if (activeOut == null) return;
+        try { activeOut.flush(); } catch (IOException ignored) { closeActive(); }
+    }
+
+    private void closeActive() {
+        if (activeOut != null) try { activeOut.close(); } catch (IOException ignored) {}
+        activeOut = null;
+    }
+
+    /** Cierra el segmento activo y escribe su índice; el próximo registro abre uno nuevo. */
+    private void seal(Segment s) throws IOException {
+        closeActive();
+        writeIndex(s);
+        s.sealed = true;
+    }
+
+    private static byte[] encode(long id, String date, String action, List<String> inputs, String output) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(256);
+        DataOutputStream d = new DataOutputStream(payload);
+        d.writeLong(id);
+        d.writeUTF(date);
+        d.writeUTF(action);
+        d.writeInt(inputs.size());
+        for (String in : inputs) d.writeUTF(in);
+        d.writeUTF(output == null ? "" : output);
+        byte[] p = payload.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(p);
+        ByteArrayOutputStream rec = new ByteArrayOutputStream(p.length + 8);
+        DataOutputStream r = new DataOutputStream(rec);
+        r.writeInt(p.length);
+        r.writeInt((int) crc.getValue());
+        r.write(p);
+        return rec.toByteArray();
+    }
+
+    /** El contenido de un registro, verificado; {@link EOFException} o {@link IOException} si está cortado o dañado. */
+    private static byte[] readRecord(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        int crc = in.readInt();
+        if (len < 8 || len > SEG_MAX_BYTES) throw new IOException("Registro inválido");
+        byte[] p = new byte[len];
+        in.readFully(p);
+        CRC32 c = new CRC32();
+        c.update(p);
+        if ((int) c.getValue() != crc) throw new IOException("Registro dañado");
+        return p;
+    }
+
+    private static long idOf(byte[] payload) {
+        long id = 0;
+        for (int i = 0; i < 8; i++) id = (id << 8) | (payload[i] & 0xff);
+        return id;
+    }
+
+    private static Entry decode(byte[] payload) throws IOException {
+        DataInputStream d = new DataInputStream(new ByteArrayInputStream(payload));
+        long id = d.readLong();
+        String date = d.readUTF();
+        String action = d.readUTF();
+        int n = d.readInt();
+        List<String> inputs = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) inputs.add(d.readUTF());
+        return new Entry(id, date, action, inputs, d.readUTF());
+    }
+
+    /* ============== Posiciones ============== */
+
+    /** Posición física del primer registro de cada segmento. */
+    private int[] starts() {
+        int[] st = new int[segments.size()];
+        int acc = 0;
+        for (int i = 0; i < st.length; i++) {
+            st[i] = acc;
+            acc += segments.get(i).count;
+        }
+        return st;
+    }
+
+    private int total() {
+        int n = 0;
+        for (Segment s : segments) n += s.count;
+        return n;
+    }
+
+    /** Posición física de la entrada vigente número {@code live}. */
+    private int physical(int live) {
+        int p = live;
+        for (int d : deletedPos) {
+            if (d <= p) p++;
+            else break;
+        }
+        return p;
+    }
+
+    /** Posición física del registro {@code id}, o -1 si no está. */
+    private int locate(long id) {
+        int[] starts = starts();
+        for (int s = 0; s < segments.size(); s++) {
+            Segment seg = segments.get(s);
+            if (seg.count == 0 || id < seg.firstId || id > seg.lastId) continue;
+            try (RandomAccessFile raf = new RandomAccessFile(logFile(seg.number).toFile(), "r")) {
+                int r = positionIn(raf, seg, id);
+                return (r < 0) ? -1 : starts[s] + r;
+            } catch (IOException ex) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /** Registro {@code id} dentro del segmento: desde la marca anterior, a lo sumo STRIDE lecturas. */
+    private static int positionIn(RandomAccessFile raf, Segment seg, long id) throws IOException {
+        int ck = Arrays.binarySearch(seg.ckId, 0, seg.checkpoints, id);
+        if (ck < 0) ck = -ck - 2;
+        if (ck < 0) return -1;
+        raf.seek(seg.ckOffset[ck]);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(raf.getChannel()), 4096));
+        for (int r = ck * STRIDE; r < seg.count && r < (ck + 1) * STRIDE; r++) {
+            long rid = idOf(readRecord(in));
+            if (rid == id) return r;
+            if (rid > id) return -1;
+        }
+        return -1;
+    }
+
+    /**
+     * Recalcula las posiciones de los borrados, abriendo cada segmento una vez. Los que ya no están
+     * en ningún segmento (compactados) se olvidan.
+     */
+    private void refreshDeleted() {
+        int[] pos = new int[deleted.size()];
+        int n = 0;
+        Set<Long> found = new HashSet<>();
+        int[] starts = starts();
+        for (int s = 0; s < segments.size(); s++) {
+            Segment seg = segments.get(s);
+            if (!hasDeleted(seg)) continue;
+            try (RandomAccessFile raf = new RandomAccessFile(logFile(seg.number).toFile(), "r")) {
+                for (long id : deleted.subSet(seg.firstId, true, seg.lastId, true)) {
+                    int r = positionIn(raf, seg, id);
+                    if (r < 0) continue;
+                    pos[n++] = starts[s] + r;
+                    found.add(id);
+                }
+            } catch (IOException ignored) {}
+        }
+        deleted.retainAll(found);
+        deletedPos = Arrays.copyOf(pos, n); // ids y posiciones crecen juntos: ya está ordenado
+    }
+
+    /* ============== Compactación ============== */
+
+    /** Llamar con el candado. */
+    private void maybeCompact() {
+        if (compacting || deleted.size() < Math.max(COMPACT_MIN, total() / 10)) return;
+        Segment act = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (act != null && !act.sealed && hasDeleted(act)) {
+            try { seal(act); } catch (IOException ignored) { return; }
+        }
+        compacting = true;
+        Thread t = new Thread(this::compact, "history-compact");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        t.start();
+    }
+
+    private boolean hasDeleted(Segment s) {
+        return s.count > 0 && !deleted.subSet(s.firstId, true, s.lastId, true).isEmpty();
+    }
+
+    /**
+     * Reescribe sin sus borrados cada segmento sellado que los tenga. El segmento viejo no cambia
+     * mientras se copia (está sellado), así que la copia va sin candado; el cambio de uno por otro,
+     * con él.
+     */
+    private void compact() {
+        try {
+            while (true) {
+                Segment src = null;
+                Set<Long> dead;
+                int number;
+                synchronized (this) {
+                    for (Segment s : segments) if (s.sealed && hasDeleted(s)) { src = s; break; }
+                    if (src == null) return;
+                    dead = new HashSet<>(deleted.subSet(src.firstId, true, src.lastId, true));
+                    number = nextSeg++;
+                }
+
+                Segment copy = rewrite(src, dead, number);
+
+                synchronized (this) {
+                    int i = segments.indexOf(src);
+                    if (i < 0) { // se vació el historial mientras tanto
+                        logFile(number).toFile().delete();
+                        idxFile(number).toFile().delete();
+                        continue;
+                    }
+                    if (copy.count > 0) segments.set(i, copy);
+                    else segments.remove(i);
+                    writeManifest();
+                    deleted.removeAll(dead);
+                    writeDeleted();
+                    refreshDeleted();
+                    logFile(src.number).toFile().delete();
+                    idxFile(src.number).toFile().delete();
+                }
+            }
+        } catch (IOException ignored) {
+            // queda sin compactar; se reintenta con el próximo borrado
+        } finally {
+            synchronized (this) { compacting = false; }
+        }
+    }
+
+    private Segment rewrite(Segment src, Set<Long> dead, int number) throws IOException {
+        Segment copy = new Segment(number);
+        copy.sealed = true;
+        Path tmp = Files.createTempFile(logDir, "seg", ".tmp");
+        try {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile(src.number).toFile()), 64 * 1024));
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp.toFile()), 64 * 1024))) {
+                for (int r = 0; r < src.count; r++) {
+                    byte[] p = readRecord(in);
+                    long id = idOf(p);
+                    if (dead.contains(id)) continue;
+                    CRC32 c = new CRC32();
+                    c.update(p);
+                    out.writeInt(p.length);
+                    out.writeInt((int) c.getValue());
+                    out.write(p);
+                    copy.addRecord(id, copy.bytes, p.length + 8);
+                }
+            }
+            writeIndex(copy);
+            Files.move(tmp, logFile(number), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return copy;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /* ============== Archivos ============== */
+
+    private Path logFile(int n) { return logDir.resolve(String.format("seg-%06d.log", n)); }
+    private Path idxFile(int n) { return logDir.resolve(String.format("seg-%06d.idx", n)); }
+    private Path manifestFile() { return logDir.resolve("segments.bin"); }
+    private Path deletedFile() { return logDir.resolve("deleted.bin"); }
+
+    /** Carga segmentos y lápidas; importa el TSV viejo si todavía no hay registro. */
+    private void open() {
+        List<Integer> listed = readManifest();
+        if (listed == null) {
+            listed = List.of();
+            if (Files.exists(legacy)) importLegacy();
+        }
+        for (int i = 0; i < listed.size(); i++) {
+            int n = listed.get(i);
+            boolean last = (i == listed.size() - 1);
+            Segment s = last ? null : readIndex(n);
+            if (s == null) s = scan(n, last);
+            if (s == null) continue;
+            s.sealed = !last;
+            segments.add(s);
+            if (s.count > 0) nextId = Math.max(nextId, s.lastId + 1);
+            nextSeg = Math.max(nextSeg, n + 1);
+        }
+
+        // Lo que no figura en el manifiesto quedó de una compactación cortada
+        Set<String> keep = new HashSet<>(List.of("segments.bin", "deleted.bin"));
+        for (Segment s : segments) {
+            keep.add(logFile(s.number).getFileName().toString());
+            keep.add(idxFile(s.number).getFileName().toString());
+        }
+        File[] files = logDir.toFile().listFiles();
+        if (files != null) for (File f : files) if (!keep.contains(f.getName())) f.delete();
+
+        if (Files.exists(deletedFile())) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(deletedFile())))) {
+                while (true) deleted.add(in.readLong());
+            } catch (IOException ignored) {
+                // fin del archivo (o un id cortado al final)
+            }
+        }
+        refreshDeleted();
+    }
+
+    private List<Integer> readManifest() {
+        if (!Files.exists(manifestFile())) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(manifestFile())))) {
+            if (in.readInt() != MAGIC) return null;
+            nextId = in.readLong();
+            nextSeg = in.readInt();
+            List<Integer> list = new ArrayList<>();
+            for (int n = in.readInt(); n > 0; n--) list.add(in.readInt());
+            return list;
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    private void writeManifest() {
+        try {
+            Path tmp = Files.createTempFile(logDir, "segments", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeLong(nextId);
+                out.writeInt(nextSeg);
+                out.writeInt(segments.size());
+                for (Segment s : segments) out.writeInt(s.number);
+            }
+            Files.move(tmp, manifestFile(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ignored) {}
+    }
+
+    private void writeDeleted() throws IOException {
+        Path tmp = Files.createTempFile(logDir, "deleted", ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            for (long id : deleted) out.writeLong(id);
+        }
+        Files.move(tmp, deletedFile(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void writeIndex(Segment s) throws IOException {
+        Path tmp = Files.createTempFile(logDir, "idx", ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(IDX_MAGIC);
+            out.writeInt(s.count);
+            out.writeLong(s.firstId);
+            out.writeLong(s.lastId);
+            out.writeLong(s.bytes);
+            out.writeInt(s.checkpoints);
+            for (int i = 0; i < s.checkpoints; i++) {
+                out.writeLong(s.ckId[i]);
+                out.writeLong(s.ckOffset[i]);
+            }
+        }
+        Files.move(tmp, idxFile(s.number), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Índice de un segmento sellado, o null si falta o no coincide con el archivo. */
+    private Segment readIndex(int n) {
+        Path idx = idxFile(n);
+        if (!Files.exists(idx)) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(idx)))) {
+            if (in.readInt() != IDX_MAGIC) return null;
+            Segment s = new Segment(n);
+            s.count = in.readInt();
+            s.firstId = in.readLong();
+            s.lastId = in.readLong();
+            s.bytes = in.readLong();
+            s.checkpoints = in.readInt();
+            s.ckId = new long[Math.max(1, s.checkpoints)];
+            s.ckOffset = new long[Math.max(1, s.checkpoints)];
+            for (int i = 0; i < s.checkpoints; i++) {
+                s.ckId[i] = in.readLong();
+                s.ckOffset[i] = in.readLong();
+            }
+            return (Files.size(logFile(n)) == s.bytes) ? s : null;
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Recorre un segmento registro por registro para armar su índice. En el activo, un registro
+     * cortado al final (cierre a mitad de escritura) se descarta truncando el archivo.
+     */
+    private Segment scan(int n, boolean active) {
+        Path log = logFile(n);
+        if (!Files.exists(log)) return active ? new Segment(n) : null;
+        Segment s = new Segment(n);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(log), 64 * 1024))) {
+            while (true) {
+                byte[] p = readRecord(in);
+                s.addRecord(idOf(p), s.bytes, p.length + 8);
+            }
+        } catch (IOException endOrTorn) {
+            // fin del segmento o registro incompleto
+        }
+        try {
+            if (Files.size(log) > s.bytes) {
+                try (RandomAccessFile raf = new RandomAccessFile(log.toFile(), "rw")) { raf.setLength(s.bytes); }
+            }
+            if (!active) writeIndex(s);
+        } catch (IOException ignored) {}
+        return s;
+    }
+
+    /** Pasa el {@code history.tsv} de versiones anteriores al registro, en el mismo orden. */
+    private void importLegacy() {
+        try (BufferedReader br = Files.newBufferedReader(legacy, StandardCharsets.UTF_8)) {
+            String s;
+            while ((s = br.readLine()) != null) {
+                String[] p = split4(s);
+                String inputs = unescape(p[2]);
+                append(unescape(p[0]), unescape(p[1]),
+                        inputs.isBlank() ? List.of() : Arrays.asList(inputs.split(";")), unescape(p[3]));
             }
+            flushActive();
+            writeManifest();
+            Files.move(legacy, legacy.resolveSibling("history.tsv.bak"), StandardCopyOption.REPLACE_EXISTING);
         } catch (IOException ignored) {}
     }
 
-    private static String escape(String s) { return s.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n"); }
     private static String unescape(String s) { return s.replace("\\t", "\t").replace("\\n", "\n").replace("\\\\", "\\"); }
 
     private static String[] split4(String s) {
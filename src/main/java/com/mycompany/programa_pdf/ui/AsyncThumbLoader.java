@@ -0,0 +1,220 @@
+package com.mycompany.programa_pdf.ui;
+
+import com.mycompany.programa_pdf.images.ImageThumbCache;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Carga miniaturas de una {@link JList} en segundo plano.
+ *
+ * <p>Uso desde un cell renderer: {@code label.setIcon(loader.get(list, clave, index))}. Si la
+ * miniatura aún no está, devuelve un marcador al instante y la encola; al terminar se repinta
+ * solo esa celda. Las filas visibles van primero y las que salieron de la vista se descartan
+ * (se vuelven a pedir si se pintan otra vez).</p>
+ *
+ * <p>Las imágenes viven en {@link ImageThumbCache} (memoria acotada por bytes y disco opcional);
+ * aquí solo se guarda qué falta cargar.</p>
+ *
+ * <p>Para listas que renderizan un mismo PDFRenderer conviene 1 hilo: PDFBox no admite render
+ * concurrente sobre el mismo documento.</p>
+ *
+ * @param <K> clave de la fila; {@code cacheKey} la traduce a la clave de la caché común, que debe
+ *            incluir todo lo que cambia la imagen (p. ej. rotación)
+ */
+public class AsyncThumbLoader<K> {
+
+    /** Genera la miniatura (se llama fuera del EDT). */
+    @FunctionalInterface
+    public interface Loader<K> { BufferedImage load(K key) throws Exception; }
+
+    private final Function<K, ImageThumbCache.Key> cacheKey;
+    private final Loader<K> loader;
+    private final int threads;
+    private final String threadName;
+    private final Icon placeholder;
+    private final Icon errorIcon;
+
+    private record Request(int row, ImageThumbCache.Key cacheKey) {}
+
+    private final Map<K, Request> pending = new LinkedHashMap<>(); // clave -> fila pedida
+    private final Set<ImageThumbCache.Key> loading = new HashSet<>();
+    private final Set<ImageThumbCache.Key> failed = new HashSet<>(); // no reintentar en cada repintado
+    private final Map<K, Integer> lastRow = new HashMap<>();       // fila donde se pintó por última vez
+    private final Object lock = new Object();
+
+    private JList<?> list;
+    private int running = 0;
+    private long generation = 0;
+    private volatile int firstVisible = 0, lastVisible = -1;
+
+    public AsyncThumbLoader(Function<K, ImageThumbCache.Key> cacheKey, Loader<K> loader,
+                            int threads, String threadName, int thumbW, int thumbH) {
+        this.cacheKey = cacheKey;
+        this.loader = loader;
+        this.threads = Math.max(1, threads);
+        this.threadName = threadName;
+        this.placeholder = boxIcon(thumbW, thumbH, false);
+        this.errorIcon = boxIcon(thumbW, thumbH, true);
+    }
+
+    /** Devuelve la miniatura si ya está; si no, el marcador y encola la carga. Llamar en el EDT. */
+    public Icon get(JList<?> list, K key, int row) {
+        bind(list);
+        updateVisibleRange();
+        ImageThumbCache.Key ck = cacheKey.apply(key);
+        BufferedImage img = ImageThumbCache.peek(ck);
+        if (img != null) return imageIcon(img);
+        synchronized (lock) {
+            lastRow.put(key, row);
+            if (failed.contains(ck)) return errorIcon;
+            if (loading.contains(ck)) return placeholder;
+            pending.put(key, new Request(row, ck));
+            if (running < threads) {
+                running++;
+                Thread t = new Thread(this::workLoop, threadName);
+                t.setDaemon(true);
+                t.setPriority(Thread.NORM_PRIORITY - 1);
+                t.start();
+            }
+        }
+        return placeholder;
+    }
+
+    /** Deja de esperar una miniatura (p. ej. la fila se quitó de la lista). */
+    public void invalidate(K key) {
+        synchronized (lock) {
+            pending.remove(key);
+            lastRow.remove(key);
+        }
+    }
+
+    /** Vacía la cola y los errores; las cargas en curso terminan pero no repintan. */
+    public void clear() {
+        synchronized (lock) {
+            pending.clear();
+            failed.clear();
+            lastRow.clear();
+            generation++;
+        }
+    }
+
+    /* ============== Hilos ============== */
+
+    private void workLoop() {
+        while (true) {
+            K key;
+            ImageThumbCache.Key ck;
+            long gen;
+            synchronized (lock) {
+                key = nextTask();
+                if (key == null) { running--; return; }
+                ck = pending.remove(key).cacheKey();
+                loading.add(ck);
+                gen = generation;
+            }
+
+            BufferedImage img;
+            try {
+                img = ImageThumbCache.get(ck, () -> loader.load(key));
+            } catch (Throwable ex) {
+                img = null;
+            }
+            synchronized (lock) {
+                loading.remove(ck);
+                if (gen != generation) continue;     // se vació mientras cargaba
+                if (img == null) failed.add(ck);
+            }
+
+            SwingUtilities.invokeLater(() -> {
+                Integer row;
+                synchronized (lock) { row = lastRow.get(key); }
+                repaintRow(row);
+            });
+        }
+    }
+
+    /**
+     * Elige la siguiente clave: primero las filas visibles (de arriba a abajo), luego las más
+     * cercanas a la vista. Las que quedaron lejos se descartan. Llamar con {@code lock}.
+     */
+    private K nextTask() {
+        int first = firstVisible, last = lastVisible;
+        int span = Math.max(1, last - first + 1);
+        K best = null;
+        long bestScore = Long.MAX_VALUE;
+
+        for (Iterator<Map.Entry<K, Request>> it = pending.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<K, Request> e = it.next();
+            int row = e.getValue().row();
+            long score;
+            if (first < 0 || last < first) {
+                score = row;                                     // lista aún sin mostrar
+            } else if (row >= first && row <= last) {
+                score = row - first;                             // visible
+            } else {
+                int dist = (row < first) ? first - row : row - last;
+                if (dist > span) { it.remove(); continue; }      // salió de la vista
+                score = 1_000_000L + dist;
+            }
+            if (score < bestScore) { bestScore = score; best = e.getKey(); }
+        }
+        return best;
+    }
+
+    /* ============== EDT ============== */
+
+    private void bind(JList<?> l) {
+        if (list == l) return;
+        list = l;
+        updateVisibleRange();
+    }
+
+    private void updateVisibleRange() {
+        if (list == null) return;
+        firstVisible = list.getFirstVisibleIndex();
+        lastVisible = list.getLastVisibleIndex();
+    }
+
+    private void repaintRow(Integer row) {
+        if (list == null || row == null) return;
+        if (row < 0 || row >= list.getModel().getSize()) return;
+        Rectangle r = list.getCellBounds(row, row);
+        if (r != null) list.repaint(r);
+    }
+
+    /** Icono liviano sobre la imagen de la caché (sin copiarla ni pasar por MediaTracker). */
+    private static Icon imageIcon(BufferedImage img) {
+        return new Icon() {
+            @Override public void paintIcon(Component c, Graphics g, int x, int y) { g.drawImage(img, x, y, null); }
+            @Override public int getIconWidth()  { return img.getWidth(); }
+            @Override public int getIconHeight() { return img.getHeight(); }
+        };
+    }
+
+    private static Icon boxIcon(int w, int h, boolean error) {
+        return new Icon() {
+            @Override public void paintIcon(Component c, Graphics g, int x, int y) {
+                Graphics2D g2 = (Graphics2D) g.create();
+                g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+                g2.setColor(error ? new Color(200, 80, 80, 60) : new Color(128, 128, 128, 40));
+                g2.fillRoundRect(x, y, w, h, 12, 12);
+                g2.setColor(error ? new Color(200, 80, 80) : new Color(128, 128, 128, 140));
+                String s = error ? "Error" : "…";
+                FontMetrics fm = g2.getFontMetrics();
+                g2.drawString(s, x + (w - fm.stringWidth(s)) / 2, y + h / 2 + fm.getAscent() / 2);
+                g2.dispose();
+            }
+            @Override public int getIconWidth()  { return w; }
+            @Override public int getIconHeight() { return h; }
+        };
+    }
+}